@@ -0,0 +1,257 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+public class Benchmarks {
+
+	/*
+	 * This class is a small benchmark harness for the Game Of Life, so that every change to the engine can be
+	 * compared against a baseline. Each benchmark is run for every combination of board size, density and pattern
+	 * that is asked for. It is first warmed up (so the JIT has compiled it), then run for a fixed amount of time,
+	 * and the result is printed as one line with the time per operation, cells per second, bytes allocated per
+	 * operation and the garbage collections that happened while it ran.
+	 *
+	 * A benchmark must measure the board it was given, not whatever that board has turned into, so the starting
+	 * board is kept and put back every BATCH operations (soups burn out and still lifes stop being worked out at
+	 * all after one generation). Putting it back, and anything else done between operations, is not timed. For
+	 * nextGen the cells per second are the cells actually worked out (see GameOfLife.getCellsWorkedOut()), so a
+	 * board whose tiles are skipped is not credited with them; every other benchmark looks at every cell of the
+	 * board, and is credited with all of them. The board is stepped between paints, so that paint redraws what
+	 * changed the way it does when the game is running.
+	 *
+	 * Run it with "java Benchmarks" for the defaults, or pass any of these to choose what is run:
+	 *
+	 *     benchmarks=nextGen,countNeighbors,willLive,toString,randomize,paint
+	 *     sizes=50,256,1024,8192
+	 *     densities=0.1,0.5
+	 *     patterns=soup,gun,still
+	 *     seconds=2
+	 *
+	 * Some benchmarks work one cell at a time and would take minutes on the biggest boards, so each one has a
+	 * largest board size above which it is skipped.
+	 */
+	private static final String[] ALL_BENCHMARKS = {"nextGen", "countNeighbors", "willLive", "toString", "randomize", "paint"};
+	private static final int[] MAX_SIZES = {Integer.MAX_VALUE, 2048, 2048, 256, Integer.MAX_VALUE, 2048};
+	private static final int BATCH = 16;
+
+	private static long sink;
+
+	/*
+	 * This class only has static methods and is not meant to be instantiated.
+	 */
+	private Benchmarks() {
+	}
+
+	/*
+	 * Runs the benchmarks chosen on the command line.
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		String[] benchmarks = ALL_BENCHMARKS;
+		int[] sizes = {50, 256, 1024, 8192};
+		double[] densities = {0.5};
+		String[] patterns = {"soup", "gun", "still"};
+		double seconds = 1;
+		for (int i = 0; i < args.length; i++) {
+			String[] parts = args[i].split("=", 2);
+			if (parts.length != 2) throw new IllegalArgumentException("Expected key=value but got " + args[i]);
+			if (parts[0].equals("benchmarks")) benchmarks = parts[1].split(",");
+			else if (parts[0].equals("sizes")) sizes = parseInts(parts[1]);
+			else if (parts[0].equals("densities")) densities = parseDoubles(parts[1]);
+			else if (parts[0].equals("patterns")) patterns = parts[1].split(",");
+			else if (parts[0].equals("seconds")) seconds = Double.parseDouble(parts[1]);
+			else throw new IllegalArgumentException("Unknown option " + parts[0]);
+		}
+
+		System.out.println(String.format("%-15s %6s %8s %-6s %14s %16s %14s %10s", "benchmark", "size", "density", "pattern",
+				"ms/op", "cells/s", "bytes/op", "gc ms"));
+		for (int b = 0; b < benchmarks.length; b++) {
+			for (int s = 0; s < sizes.length; s++) {
+				for (int p = 0; p < patterns.length; p++) {
+					// The density only changes the random soup.
+					int densityCount = patterns[p].equals("soup") ? densities.length : 1;
+					for (int d = 0; d < densityCount; d++) {
+						run(benchmarks[b], sizes[s], densities[d], patterns[p], seconds);
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Warms up and then measures one benchmark on one board, and prints the result.
+	 */
+	private static void run(String benchmark, int size, double density, String pattern, double seconds) {
+		int index = indexOf(benchmark);
+		String densityText = pattern.equals("soup") ? String.format("%.2f", density) : "-";
+		String label = String.format("%-15s %6d %8s %-6s", benchmark, size, densityText, pattern);
+		if (size > MAX_SIZES[index]) {
+			System.out.println(label + "   skipped (largest size is " + MAX_SIZES[index] + ")");
+			return;
+		}
+		GameOfLife game = new GameOfLife(size);
+		fill(game, pattern, density, new Random(size));
+		BoardPanel panel = null;
+		BufferedImage image = null;
+		if (benchmark.equals("paint") || benchmark.equals("randomize")) {
+			panel = new BoardPanel(game);
+			fill(game, pattern, density, new Random(size));
+			panel.setSize(900, 800);
+			image = new BufferedImage(900, 800, BufferedImage.TYPE_INT_RGB);
+		}
+
+		BitBoard start = new BitBoard(size, size);
+		start.copyFrom(game.board);
+
+		long warmupEnd = System.nanoTime() + (long) (seconds * 0.5e9);
+		for (long i = 0; System.nanoTime() < warmupEnd; i++) timeOnce(i, index, game, start, panel, image);
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long gcBefore = gcMillis();
+		long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+		long end = System.nanoTime() + (long) (seconds * 1e9);
+		long ops = 0;
+		long elapsed = 0;
+		long cells = 0;
+		do {
+			elapsed += timeOnce(ops, index, game, start, panel, image);
+			cells += (index == 0) ? game.getCellsWorkedOut() : (long) size * size;
+			ops++;
+		} while (System.nanoTime() < end);
+		long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+		long gc = gcMillis() - gcBefore;
+
+		double msPerOp = elapsed / 1e6 / ops;
+		double cellsPerSecond = cells / (elapsed / 1e9);
+		System.out.println(String.format("%s %14.4f %16.3e %14d %10d", label, msPerOp, cellsPerSecond, allocated / ops, gc));
+	}
+
+	/*
+	 * Runs operation number "op" of the benchmark with the given index and returns the nanoseconds it took. Every
+	 * BATCH operations the game is first put back to the "start" board, and before every paint the game is
+	 * stepped; neither is timed.
+	 */
+	private static long timeOnce(long op, int index, GameOfLife game, BitBoard start, BoardPanel panel, BufferedImage image) {
+		if (op % BATCH == 0) {
+			game.board.copyFrom(start);
+			game.markAllChanged();
+		}
+		if (index == 5) game.nextGen();
+		long before = System.nanoTime();
+		once(index, game, panel, image);
+		return System.nanoTime() - before;
+	}
+
+	/*
+	 * Runs the benchmark with the given index once. Every benchmark except nextGen works over the whole board, so
+	 * one operation is always one update (or one look) per cell.
+	 */
+	private static void once(int index, GameOfLife game, BoardPanel panel, BufferedImage image) {
+		int height = game.getHeight(), width = game.getWidth();
+		switch (index) {
+		case 0:
+			game.nextGen();
+			break;
+		case 1:
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) sink += game.countNeighbors(x, y);
+			}
+			break;
+		case 2:
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) if (game.willLive(x, y)) sink++;
+			}
+			break;
+		case 3:
+			sink += game.toString().length();
+			break;
+		case 4:
+			panel.randomize();
+			break;
+		default:
+			Graphics2D g2 = image.createGraphics();
+			panel.paintComponent(g2);
+			g2.dispose();
+			break;
+		}
+	}
+
+	/*
+	 * Fills the game with the named pattern: a random soup of the given density, glider guns repeated across the
+	 * board, or a field of blocks and beehives that never change.
+	 */
+	private static void fill(GameOfLife game, String pattern, double density, Random random) {
+		game.clear();
+		int height = game.getHeight(), width = game.getWidth();
+		if (pattern.equals("soup")) {
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					if (random.nextDouble() < density) game.setStatus(x, y, Cell.ALIVE);
+				}
+			}
+		}
+		else if (pattern.equals("gun")) {
+			Pattern gun = PatternLibrary.get("gosper glider gun");
+			for (int top = 0; top + 12 <= height; top += 64) {
+				for (int left = 0; left + 40 <= width; left += 64) {
+					gun.stamp(game, left + 3, top + 3);
+				}
+			}
+		}
+		else if (pattern.equals("still")) {
+			Pattern block = PatternLibrary.get("block"), beehive = PatternLibrary.get("beehive");
+			for (int top = 1; top + 4 < height; top += 8) {
+				for (int left = 1; left + 5 < width; left += 8) {
+					if (((top + left) & 8) == 0) block.stamp(game, left, top);
+					else beehive.stamp(game, left, top);
+				}
+			}
+		}
+		else throw new IllegalArgumentException("Unknown pattern " + pattern);
+	}
+
+	/*
+	 * Returns the total time spent in garbage collection so far, in milliseconds.
+	 */
+	private static long gcMillis() {
+		long total = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			total += Math.max(collector.getCollectionTime(), 0);
+		}
+		return total;
+	}
+
+	/*
+	 * Returns the index of the named benchmark in ALL_BENCHMARKS.
+	 */
+	private static int indexOf(String benchmark) {
+		for (int i = 0; i < ALL_BENCHMARKS.length; i++) {
+			if (ALL_BENCHMARKS[i].equals(benchmark)) return i;
+		}
+		throw new IllegalArgumentException("Unknown benchmark " + benchmark);
+	}
+
+	/*
+	 * Parses a comma separated list of ints.
+	 */
+	private static int[] parseInts(String list) {
+		String[] parts = list.split(",");
+		int[] result = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) result[i] = Integer.parseInt(parts[i].trim());
+		return result;
+	}
+
+	/*
+	 * Parses a comma separated list of doubles.
+	 */
+	private static double[] parseDoubles(String list) {
+		String[] parts = list.split(",");
+		double[] result = new double[parts.length];
+		for (int i = 0; i < parts.length; i++) result[i] = Double.parseDouble(parts[i].trim());
+		return result;
+	}
+
+}
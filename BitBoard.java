@@ -0,0 +1,360 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class BitBoard {
+
+	/*
+	 * This class is a compact game board for the Game Of Life. Instead of holding one Cell object per location
+	 * like Board does, each row is packed into an array of longs where every bit is the status of one cell
+	 * (bit x % 64 of word x / 64 holds the cell in column x). A cell therefore costs a single bit instead of a
+	 * Cell object plus the reference to it, which is what lets very large boards fit in memory.
+	 *
+	 * Any bits past "width" in the last word of a row are always kept at 0, so whole words can be counted and
+	 * compared without masking.
+	 *
+	 * randomize() fills the board with random cells a whole word at a time. Every row gets its own SplittableRandom,
+	 * seeded from the board's seed and the row's number, so the rows can be filled in bands on a ForkJoinPool and
+	 * the board comes out the same for a given seed however many threads fill it.
+	 *
+	 * There are tests run at the end.
+	 */
+	private int height;
+	private int width;
+	private int wordsPerRow;
+	private long lastWordMask;
+	private long[][] rows;
+
+	/*
+	 * The number of bits of the density that randomize() uses, and the number of rows' worth of words below which
+	 * a band of rows is filled on one thread rather than split further.
+	 */
+	private static final int DENSITY_BITS = 16;
+	private static final int WORDS_PER_BAND = 4096;
+
+	/*
+	 * Constructs a BitBoard object given an integer for the height and integer for the width. Every cell starts dead.
+	 */
+	public BitBoard(int height, int width) {
+		if (height <= 0 || width <= 0) throw new IllegalArgumentException("Board dimensions must be positive: " + height + " x " + width);
+		this.height = height;
+		this.width = width;
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.lastWordMask = -1L >>> (wordsPerRow * 64 - width);
+		rows = new long[height][wordsPerRow];
+	}
+
+	/*
+	 * Constructs a square BitBoard object with equal width and height given an integer for the side length.
+	 */
+	public BitBoard(int side) {
+		this(side, side);
+	}
+
+	/*
+	 * Returns the status (Cell.ALIVE or Cell.DEAD) of the cell at the given location. Just like Board, a location
+	 * that is not on the board is treated as a dead cell.
+	 */
+	public int get(int x, int y) {
+		if (!isValidLoc(x, y)) return Cell.DEAD;
+		return (int) (rows[y][x >>> 6] >>> x) & 1;
+	}
+
+	/*
+	 * Sets the cell at the given location to the given status. Any status other than Cell.DEAD counts as alive.
+	 * Locations that are not on the board are ignored.
+	 */
+	public void set(int x, int y, int status) {
+		if (!isValidLoc(x, y)) return;
+		if (status == Cell.DEAD) rows[y][x >>> 6] &= ~(1L << x);
+		else rows[y][x >>> 6] |= 1L << x;
+	}
+
+	/*
+	 * Flips the cell at the given location between alive and dead. Locations that are not on the board are ignored.
+	 */
+	public void toggle(int x, int y) {
+		if (!isValidLoc(x, y)) return;
+		rows[y][x >>> 6] ^= 1L << x;
+	}
+
+	/*
+	 * Sets the cells of row y from column "fromX" up to (but not including) column "toX" to alive, a whole word at
+	 * a time. The part of the run that is not on the board is ignored.
+	 */
+	public void setRun(int y, int fromX, int toX) {
+		if (y < 0 || y >= height) return;
+		fromX = Math.max(fromX, 0);
+		toX = Math.min(toX, width);
+		if (fromX >= toX) return;
+		long[] row = rows[y];
+		int firstWord = fromX >>> 6, lastWord = (toX - 1) >>> 6;
+		long firstMask = -1L << fromX;
+		long lastMask = -1L >>> (63 - ((toX - 1) & 63));
+		if (firstWord == lastWord) {
+			row[firstWord] |= firstMask & lastMask;
+			return;
+		}
+		row[firstWord] |= firstMask;
+		for (int i = firstWord + 1; i < lastWord; i++) row[i] = -1L;
+		row[lastWord] |= lastMask;
+	}
+
+	/*
+	 * Sets every cell on the board to dead.
+	 */
+	public void clear() {
+		for (int i = 0; i < height; i++) {
+			Arrays.fill(rows[i], 0L);
+		}
+	}
+
+	/*
+	 * Copies the cells of another BitBoard with the same dimensions into this one.
+	 */
+	public void copyFrom(BitBoard other) {
+		if (other.height != height || other.width != width) throw new IllegalArgumentException("Board dimensions do not match");
+		for (int i = 0; i < height; i++) {
+			System.arraycopy(other.rows[i], 0, rows[i], 0, wordsPerRow);
+		}
+	}
+
+	/*
+	 * Returns the packed words of row y. The array is the board's own storage, not a copy, so writes to it change
+	 * the board. Callers must keep the bits past "width" at 0.
+	 */
+	public long[] getRow(int y) {
+		return rows[y];
+	}
+
+	/*
+	 * Writes row y mirrored into "into", so that column x of "into" is column width - 1 - x of the row. The bits
+	 * past "width" in "into" are left at 0.
+	 */
+	public void reverseRow(int y, long[] into) {
+		reverse(rows[y], width, into);
+	}
+
+	/*
+	 * Writes the given packed row of "width" cells mirrored into "into", the same way as reverseRow(). "into" must
+	 * not be "row" itself.
+	 */
+	static void reverse(long[] row, int width, long[] into) {
+		int words = (width + 63) >>> 6;
+		int padding = words * 64 - width;
+		for (int j = 0; j < words; j++) {
+			long low = Long.reverse(row[words - 1 - j]);
+			long high = (j + 1 < words) ? Long.reverse(row[words - 2 - j]) : 0;
+			into[j] = (padding == 0) ? low : (low >>> padding) | (high << (64 - padding));
+		}
+	}
+
+	/*
+	 * Sets every cell on the board to alive with the given chance (0 to 1, to 16 bits), using the common
+	 * ForkJoinPool. The same seed and density always give the same board.
+	 */
+	public void randomize(long seed, double density) {
+		randomize(seed, density, ForkJoinPool.commonPool());
+	}
+
+	/*
+	 * Sets every cell on the board to alive with the given chance, filling bands of rows at the same time on the
+	 * given pool, or all on the calling thread if it is null. The board does not depend on the pool.
+	 */
+	public void randomize(long seed, double density, ForkJoinPool pool) {
+		int threshold = (int) Math.round(Math.min(Math.max(density, 0), 1) * (1 << DENSITY_BITS));
+		RandomFill fill = new RandomFill(seed, threshold, 0, height);
+		if (pool == null) fill.compute();
+		else pool.invoke(fill);
+	}
+
+	/*
+	 * Fills rows "from" up to (but not including) "to" with random cells, each row with its own generator. Every
+	 * word is built from random words so that each bit is 1 with a chance of threshold / 2^DENSITY_BITS: starting
+	 * from 0 and going through the bits of "threshold" from the lowest set one up, a 1 bit ORs in a random word
+	 * (which takes the chance p to (1 + p) / 2) and a 0 bit ANDs one in (which takes it to p / 2). A density of 0.5
+	 * takes a single random word for 64 cells.
+	 */
+	private void fillRows(long seed, int threshold, int from, int to) {
+		for (int y = from; y < to; y++) {
+			long[] row = rows[y];
+			if (threshold == 0 || threshold == 1 << DENSITY_BITS) {
+				Arrays.fill(row, (threshold == 0) ? 0 : -1L);
+			}
+			else {
+				SplittableRandom random = new SplittableRandom(mix(seed + mix(y)));
+				int lowest = Integer.numberOfTrailingZeros(threshold);
+				for (int k = 0; k < wordsPerRow; k++) {
+					long word = 0;
+					for (int bit = lowest; bit < DENSITY_BITS; bit++) {
+						if ((threshold >>> bit & 1) != 0) word |= random.nextLong();
+						else word &= random.nextLong();
+					}
+					row[k] = word;
+				}
+			}
+			row[wordsPerRow - 1] &= lastWordMask;
+		}
+	}
+
+	/*
+	 * Scrambles the bits of the given long (the finishing step of the SplitMix64 generator), so that the seeds of
+	 * neighboring rows are far apart.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/*
+	 * A task that fills a band of rows with random cells, splitting it in half while it is big enough to be worth
+	 * sharing out.
+	 */
+	private class RandomFill extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final long seed;
+		private final int threshold;
+		private final int from;
+		private final int to;
+
+		RandomFill(long seed, int threshold, int from, int to) {
+			this.seed = seed;
+			this.threshold = threshold;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from < 2 || (long) (to - from) * wordsPerRow <= WORDS_PER_BAND) {
+				fillRows(seed, threshold, from, to);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new RandomFill(seed, threshold, from, middle), new RandomFill(seed, threshold, middle, to));
+		}
+	}
+
+	/*
+	 * Returns the number of living cells on the board.
+	 */
+	public long population() {
+		long count = 0;
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < wordsPerRow; j++) {
+				count += Long.bitCount(rows[i][j]);
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * Returns the int value of "height" of this BitBoard object.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/*
+	 * Returns the int value of "width" of this BitBoard object.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/*
+	 * Returns the number of longs used to store each row.
+	 */
+	public int getWordsPerRow() {
+		return wordsPerRow;
+	}
+
+	/*
+	 * Returns a mask with a 1 for every bit of the last word of a row that is an actual cell on the board.
+	 */
+	public long getLastWordMask() {
+		return lastWordMask;
+	}
+
+	/*
+	 * Returns whether the given coordinates exist in respect to the dimensions of the board.
+	 */
+	public boolean isValidLoc(int x, int y) {
+		return (x >= 0 && y >= 0 && x < this.width && y < this.height);
+	}
+
+	/*
+	 * Overrides the toString method from the Object class. This method returns the board as a String in the same
+	 * format as Board, with each cell's status printed between braces.
+	 */
+	public String toString() {
+		StringBuilder result = new StringBuilder(height * (width * 3 + 1));
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < width; j++) {
+				result.append('{').append(get(j, i)).append('}');
+			}
+			result.append('\n');
+		}
+		return result.toString();
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) {
+		BitBoard test = new BitBoard(3, 70);
+		test.set(0, 0, Cell.ALIVE);
+		test.set(63, 1, Cell.ALIVE);
+		test.set(64, 1, Cell.ALIVE);
+		test.set(69, 2, Cell.ALIVE);
+		test.set(70, 2, Cell.ALIVE);
+		System.out.println(test);
+		System.out.println("The population of this BitBoard is " + test.population() + " (should be 4)");
+		System.out.println("The cell at (64, 1) has a status of " + test.get(64, 1));
+		test.toggle(64, 1);
+		System.out.println("After toggling, the cell at (64, 1) has a status of " + test.get(64, 1));
+		System.out.println("The cell at (-1, 0) has a status of " + test.get(-1, 0));
+		System.out.println("Each row uses " + test.getWordsPerRow() + " longs");
+
+		BitBoard copy = new BitBoard(3, 70);
+		copy.copyFrom(test);
+		test.clear();
+		System.out.println("The copy has a population of " + copy.population() + " and the cleared board has " + test.population());
+
+		long[] mirrored = new long[copy.getWordsPerRow()];
+		copy.reverseRow(2, mirrored);
+		System.out.println("Mirrored, row 2 has cells at 0 and 1 (should be 1 and 0): " + (mirrored[0] & 1) + " and " + ((mirrored[0] >>> 1) & 1)
+				+ ", and nothing past the width: " + ((mirrored[1] & ~copy.getLastWordMask()) == 0));
+
+		BitBoard random = new BitBoard(4000, 4000);
+		BitBoard alone = new BitBoard(4000, 4000);
+		random.randomize(24, 0.5);
+		alone.randomize(24, 0.5, null);
+		boolean same = true;
+		for (int y = 0; y < 4000; y++) same &= Arrays.equals(random.getRow(y), alone.getRow(y));
+		System.out.println("Randomizing on the pool and on one thread gives the same board: " + same + ", with a density of "
+				+ String.format("%.4f", random.population() / 16e6) + " (should be about 0.5)");
+		BitBoard other = new BitBoard(4000, 4000);
+		other.randomize(25, 0.5);
+		System.out.println("Another seed gives another board: " + (other.population() != random.population()));
+		BitBoard full = new BitBoard(7, 100);
+		full.randomize(24, 1);
+		System.out.println("A density of 0.3 gives " + String.format("%.3f", fillRate(0.3)) + ", and of 1 gives " + full.population()
+				+ " cells (should be 700) with nothing past the width: " + ((full.getRow(6)[1] & ~full.getLastWordMask()) == 0));
+		long start = System.nanoTime();
+		for (int i = 0; i < 10; i++) random.randomize(i, 0.5);
+		System.out.println("Randomizing 4000 x 4000 takes " + String.format("%.2f", (System.nanoTime() - start) / 1e7) + " ms");
+	}
+
+	/*
+	 * Returns the share of living cells after randomizing a large board with the given density.
+	 */
+	private static double fillRate(double density) {
+		BitBoard board = new BitBoard(1000, 1000);
+		board.randomize(1, density);
+		return board.population() / 1e6;
+	}
+
+}
@@ -1,39 +1,199 @@
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
 import javax.swing.JPanel;
 
 /*
  * A class that extends the JPanel class, adding the functionality
  * of painting the current generation of a Game of Life.
+ *
+ * The panel shows a viewport onto the board that can be zoomed and panned. It starts out fitting the whole board
+ * and stays that way until zoomAt() or pan() is called. The board is drawn into the pixels of an image the size
+ * of the panel, which is then drawn onto the panel in one call, so the cost of a paint depends on the size of the
+ * panel and not on the size of the board.
+ *
+ * When a cell is at least a pixel across, the panel remembers the visible cells it drew last time and only
+ * redraws the ones that changed since then; everything is only redrawn when the view or the colors change. When
+ * zoomed out further than that, each pixel covers a block of cells and is shaded by how many of them are alive,
+ * using the counts in a DensityPyramid, so a pixel costs the same however many cells it covers.
+ *
+ * When the game is being run by a Simulation, the panel paints the newest frame the simulation has published
+ * instead of reading the game, which belongs to the simulation's thread.
+ *
+ * The panel can also paint a GenerationsGame, whose cells have more states than alive and dead. Each state has
+ * its own color from a palette: dead cells are the background color, living cells the foreground color, and the
+ * dying states fade from between the two towards the background as they get closer to dead.
  */
 public class BoardPanel extends JPanel{
+	private static final double MAX_ZOOM = 64;
+
 	private GameOfLife game;
-	
+	private Simulation simulation;
+	private double zoom = 1; // The number of pixels across a cell.
+	private double originX; // The board location at the top-left corner of the panel.
+	private double originY;
+	private boolean fitted = true; // Whether the view is kept fitting the whole board.
+	private BufferedImage image;
+	private int[] pixels;
+	private int[] columns; // The board column (or block of columns) under each column of pixels, when shading.
+	private long[][] shown;
+	private int shownTop;
+	private int shownFirstWord;
+	private double shownZoom;
+	private double shownOriginX;
+	private double shownOriginY;
+	private int shownForeground;
+	private int shownBackground;
+	private int[] shades;
+	private DensityPyramid ownPyramid;
+	private Metrics metrics;
+	private GenerationsGame generations;
+	private int[] palette;
+	private long randomSeed;
+
 	/*
 	 * Constructor that constructs a BoardPanel object. Note that the "game" is also randomized with the
-	 * randomize() method. 
+	 * randomize() method.
 	 */
 	public BoardPanel(GameOfLife g){
 		game = g;
 		randomize();
 	}
-	
+
+	/*
+	 * Makes the panel paint the frames published by the given simulation of its game, instead of reading the game
+	 * itself. Changes to the game, such as randomize(), should then be submitted to the simulation.
+	 */
+	public void setSimulation(Simulation s) {
+		simulation = s;
+		repaint();
+	}
+
 	/*
-	 * Method that randomizes the states of the Cell objects on the game board.
+	 * Makes the panel paint the given GenerationsGame instead of its game, or its game again with null. The
+	 * GenerationsGame is read while painting, so it should only be stepped on the event dispatch thread.
+	 */
+	public void setGenerations(GenerationsGame g) {
+		generations = g;
+		fitted = true;
+		shown = null;
+		repaint();
+	}
+
+	/*
+	 * Sets the Metrics that the time taken by every paint is reported to, or turns reporting off with null.
+	 */
+	public void setMetrics(Metrics m) {
+		metrics = m;
+	}
+
+	/*
+	 * Method that randomizes the states of the Cell objects on the game board, from a new seed each time.
 	 */
 	public void randomize() {
-		for (int i = 0; i < game.getHeight(); i++) {
-			for (int j = 0; j < game.getWidth(); j++) {
-				game.killCell(j, i);
-			}
-		}
-		int currentGenNum = game.getGenNum();
-		for (int i = 0; i < game.getHeight(); i++) {
-			for (int j = 0; j < game.getWidth(); j++) {
-				if (Math.random() < 0.5) game.setStatus(j, i, Cell.ALIVE);
-			}
-		}
-		
+		randomize(ThreadLocalRandom.current().nextLong());
+	}
+	
+	/*
+	 * Randomizes the game board from the given seed, so that the same seed always gives the same board. Every 
+	 * cell is alive with a chance of one half. See "randomize()" in the GameOfLife class.
+	 */
+	public void randomize(long seed) {
+		randomSeed = seed;
+		game.randomize(seed, 0.5);
+	}
+	
+	/*
+	 * Returns the seed the board was last randomized from, which gives the same board again with randomize().
+	 */
+	public long getRandomSeed() {
+		return randomSeed;
+	}
+
+	/*
+	 * Zooms the view in (factor above 1) or out (factor below 1), keeping the board location under the given
+	 * point of the panel where it is.
+	 */
+	public void zoomAt(double factor, int px, int py) {
+		if (fitted) fitView();
+		double x = originX + px / zoom;
+		double y = originY + py / zoom;
+		double fit = Math.min((double) getWidth() / getBoardWidth(), (double) getHeight() / getBoardHeight());
+		zoom = Math.max(Math.min(fit, 1) / 2, Math.min(MAX_ZOOM, zoom * factor));
+		// Whole pixels per cell keep the cells the same size as each other.
+		if (zoom > 1) zoom = Math.round(zoom);
+		originX = x - px / zoom;
+		originY = y - py / zoom;
+		fitted = false;
+		repaint();
+	}
+
+	/*
+	 * Moves the view by the given number of pixels, so that the board follows the mouse when it is dragged.
+	 */
+	public void pan(int dx, int dy) {
+		if (fitted) fitView();
+		originX -= dx / zoom;
+		originY -= dy / zoom;
+		fitted = false;
+		repaint();
+	}
+
+	/*
+	 * Goes back to fitting the whole board in the panel.
+	 */
+	public void fitToPanel() {
+		fitted = true;
+		repaint();
+	}
+
+	/*
+	 * Returns the location of the cell under the given point of the panel, or null if there is no cell there.
+	 */
+	public Point getCellAt(int px, int py) {
+		if (fitted) fitView();
+		int x = (int) Math.floor(originX + px / zoom);
+		int y = (int) Math.floor(originY + py / zoom);
+		if (x < 0 || y < 0 || x >= getBoardWidth() || y >= getBoardHeight()) return null;
+		return new Point(x, y);
+	}
+
+	/*
+	 * Returns the number of pixels across a cell in the current view.
+	 */
+	public double getZoom() {
+		if (fitted) fitView();
+		return zoom;
+	}
+
+	/*
+	 * Returns the width of the board being painted, which is the GenerationsGame's if there is one.
+	 */
+	private int getBoardWidth() {
+		return (generations != null) ? generations.getWidth() : game.getWidth();
+	}
+
+	/*
+	 * Returns the height of the board being painted, which is the GenerationsGame's if there is one.
+	 */
+	private int getBoardHeight() {
+		return (generations != null) ? generations.getHeight() : game.getHeight();
+	}
+
+	/*
+	 * Sets the view to show the whole board in the top-left corner of the panel, with cells a whole number of
+	 * pixels across if they fit, or less than a pixel across if the board is bigger than the panel.
+	 */
+	private void fitView() {
+		double fit = Math.min((double) getWidth() / getBoardWidth(), (double) getHeight() / getBoardHeight());
+		zoom = (fit >= 1) ? Math.floor(fit) : fit;
+		if (zoom <= 0) zoom = 1;
+		originX = 0;
+		originY = 0;
 	}
 
 	/**
@@ -44,16 +204,349 @@ public class BoardPanel extends JPanel{
 	 */
 	public void paintComponent(Graphics g){
 		Graphics2D g2 = (Graphics2D)g;
-		// TODO this is where you need to draw the current state of the board
-		int x = this.getWidth() / game.getWidth();
-		int y = this.getHeight() / game.getHeight();
-		
-		for (int i = 0; i < game.getHeight(); i++) {
-			for (int j = 0; j < game.getWidth(); j++) {
-				if (game.getStatus(j, i) == Cell.ALIVE) g2.fillRect(x * j,  y * i, x, y);
-				else g2.drawRect(x * j, y * i, x, y);
+		int width = this.getWidth(), height = this.getHeight();
+		if (width <= 0 || height <= 0) return;
+		long start = (metrics != null) ? System.nanoTime() : 0;
+		if (fitted) fitView();
+		int foreground = getForeground().getRGB();
+		int background = getBackground().getRGB();
+		Simulation.Frame frame = (simulation != null) ? simulation.takeFrame() : null;
+		BitBoard cells = (frame != null) ? frame.cells : game.board;
+
+		boolean redraw = foreground != shownForeground || background != shownBackground || zoom != shownZoom
+				|| originX != shownOriginX || originY != shownOriginY;
+		if (image == null || image.getWidth() != width || image.getHeight() != height) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			columns = new int[width];
+			redraw = true;
+		}
+		shownForeground = foreground;
+		shownBackground = background;
+		shownZoom = zoom;
+		shownOriginX = originX;
+		shownOriginY = originY;
+
+		if (generations != null) {
+			drawStates();
+			g2.drawImage(image, 0, 0, null);
+			if (metrics != null) metrics.recordPaint(System.nanoTime() - start);
+			return;
+		}
+		if (simulation != null) simulation.setDensityWanted(zoom < 1);
+		if (zoom < 1) drawDensities(pyramidFor(frame, cells));
+		else if (redraw || shown == null) drawAll(cells);
+		else drawChanged(cells);
+		g2.drawImage(image, 0, 0, null);
+		if (metrics != null) metrics.recordPaint(System.nanoTime() - start);
+	}
+
+	/*
+	 * Returns a DensityPyramid holding the counts of the given cells, building it if the simulation did not.
+	 */
+	private DensityPyramid pyramidFor(Simulation.Frame frame, BitBoard cells) {
+		if (frame == null) {
+			if (ownPyramid == null) ownPyramid = new DensityPyramid(cells);
+			ownPyramid.build();
+			return ownPyramid;
+		}
+		if (!frame.pyramidBuilt) {
+			if (frame.pyramid == null) frame.pyramid = new DensityPyramid(frame.cells);
+			frame.pyramid.build();
+			frame.pyramidBuilt = true;
+		}
+		return frame.pyramid;
+	}
+
+	/*
+	 * Draws every visible cell into the image, and remembers the visible cells so drawChanged() can compare
+	 * against them.
+	 */
+	private void drawAll(BitBoard cells) {
+		Arrays.fill(pixels, shownBackground);
+		int firstX = Math.max(0, (int) Math.floor(originX));
+		int lastX = Math.min(game.getWidth() - 1, (int) Math.floor(originX + (image.getWidth() - 1) / zoom));
+		int firstY = Math.max(0, (int) Math.floor(originY));
+		int lastY = Math.min(game.getHeight() - 1, (int) Math.floor(originY + (image.getHeight() - 1) / zoom));
+		if (firstX > lastX || firstY > lastY) {
+			shown = new long[0][0];
+			return;
+		}
+		boolean grid = zoom >= 4;
+		shownTop = firstY;
+		shownFirstWord = firstX >>> 6;
+		shown = new long[lastY - firstY + 1][(lastX >>> 6) - shownFirstWord + 1];
+		for (int i = firstY; i <= lastY; i++) {
+			long[] row = cells.getRow(i);
+			for (int j = firstX; j <= lastX; j++) {
+				boolean alive = ((row[j >>> 6] >>> j) & 1) != 0;
+				if (alive || grid) drawCell(j, i, alive);
+			}
+			System.arraycopy(row, shownFirstWord, shown[i - firstY], 0, shown[i - firstY].length);
+		}
+	}
+
+	/*
+	 * Draws only the visible cells that are different from the last time they were drawn. Comparing a row with
+	 * its copy a word at a time finds the changed cells without looking at the cells that stayed the same.
+	 */
+	private void drawChanged(BitBoard cells) {
+		for (int i = 0; i < shown.length; i++) {
+			long[] row = cells.getRow(shownTop + i);
+			long[] old = shown[i];
+			for (int k = 0; k < old.length; k++) {
+				long word = row[shownFirstWord + k];
+				long changed = word ^ old[k];
+				while (changed != 0) {
+					int bit = Long.numberOfTrailingZeros(changed);
+					drawCell(((shownFirstWord + k) << 6) + bit, shownTop + i, ((word >>> bit) & 1) != 0);
+					changed &= changed - 1;
+				}
+				old[k] = word;
+			}
+		}
+	}
+
+	/*
+	 * Draws one cell into the image: a living cell is filled in with the foreground color, and a dead cell is the
+	 * background color with its top and left edges in the foreground color, so the dead cells make a grid. The
+	 * grid is left out when the cells are too small for it to show. Any part of the cell outside the panel is
+	 * left out.
+	 */
+	private void drawCell(int x, int y, boolean alive) {
+		int imageWidth = image.getWidth();
+		int left = (int) Math.ceil((x - originX) * zoom), right = (int) Math.ceil((x + 1 - originX) * zoom);
+		int top = (int) Math.ceil((y - originY) * zoom), bottom = (int) Math.ceil((y + 1 - originY) * zoom);
+		boolean grid = !alive && zoom >= 4;
+		int clippedLeft = Math.max(left, 0), clippedRight = Math.min(right, imageWidth);
+		int clippedTop = Math.max(top, 0), clippedBottom = Math.min(bottom, image.getHeight());
+		if (clippedLeft >= clippedRight) return;
+		int color = alive ? shownForeground : shownBackground;
+		for (int i = clippedTop; i < clippedBottom; i++) {
+			int rowStart = i * imageWidth;
+			if (grid && i == top) Arrays.fill(pixels, rowStart + clippedLeft, rowStart + clippedRight, shownForeground);
+			else {
+				Arrays.fill(pixels, rowStart + clippedLeft, rowStart + clippedRight, color);
+				if (grid && left >= 0) pixels[rowStart + left] = shownForeground;
+			}
+		}
+	}
+
+	/*
+	 * Shades every pixel by the share of living cells in the block of cells under it, using the smallest level of
+	 * the pyramid whose blocks are at least as big as a pixel.
+	 */
+	private void drawDensities(DensityPyramid pyramid) {
+		int level = 0;
+		while ((1 << level) * zoom < 1 && level < pyramid.getLevelCount() - 1) level++;
+		if (shades == null || shades[0] != shownBackground || shades[256] != shownForeground) shades = makeShades();
+
+		int imageWidth = image.getWidth();
+		for (int px = 0; px < imageWidth; px++) {
+			int x = (int) Math.floor(originX + px / zoom);
+			columns[px] = (x >= 0 && x < game.getWidth()) ? (x >> level) : -1;
+		}
+		int shift = 2 * level;
+		for (int py = 0; py < image.getHeight(); py++) {
+			int rowStart = py * imageWidth;
+			int y = (int) Math.floor(originY + py / zoom);
+			if (y < 0 || y >= game.getHeight()) {
+				Arrays.fill(pixels, rowStart, rowStart + imageWidth, shownBackground);
+				continue;
+			}
+			int by = y >> level;
+			int lastBlock = -2, lastShade = shownBackground;
+			for (int px = 0; px < imageWidth; px++) {
+				int bx = columns[px];
+				if (bx != lastBlock) {
+					lastBlock = bx;
+					lastShade = (bx < 0) ? shownBackground : shades[Math.min(256, (pyramid.count(level, bx, by) << 8) >> shift)];
+				}
+				pixels[rowStart + px] = lastShade;
+			}
+		}
+		// The cells are not drawn one at a time, so the next drawAll() has to start over.
+		shown = null;
+	}
+
+	/*
+	 * Colors every pixel by the state of the GenerationsGame cell under it. When zoomed out, each pixel shows the
+	 * cell at its top-left corner.
+	 */
+	private void drawStates() {
+		int states = generations.getRule().getStates();
+		if (palette == null || palette.length != states || palette[0] != shownBackground || palette[1] != shownForeground) {
+			palette = makePalette(states);
+		}
+		byte[] grid = generations.getGrid();
+		int imageWidth = image.getWidth();
+		for (int px = 0; px < imageWidth; px++) {
+			int x = (int) Math.floor(originX + px / zoom);
+			columns[px] = (x >= 0 && x < generations.getWidth()) ? x : -1;
+		}
+		for (int py = 0; py < image.getHeight(); py++) {
+			int rowStart = py * imageWidth;
+			int y = (int) Math.floor(originY + py / zoom);
+			if (y < 0 || y >= generations.getHeight()) {
+				Arrays.fill(pixels, rowStart, rowStart + imageWidth, shownBackground);
+				continue;
 			}
+			int offset = generations.getRowOffset(y);
+			for (int px = 0; px < imageWidth; px++) {
+				int x = columns[px];
+				pixels[rowStart + px] = (x < 0) ? shownBackground : palette[grid[offset + x] & 0xFF];
+			}
+		}
+		// The cells of the game were not drawn, so the next drawAll() has to start over.
+		shown = null;
+	}
+
+	/*
+	 * Returns a color for each of the given number of states: the background color for dead cells, the foreground
+	 * color for living cells, and for the dying states colors going from halfway between the two to nearly the
+	 * background color.
+	 */
+	private int[] makePalette(int states) {
+		int[] result = new int[states];
+		result[0] = shownBackground;
+		result[1] = shownForeground;
+		for (int state = 2; state < states; state++) {
+			int amount = 256 - 256 * (state - 1) / states;
+			int red = blend((shownBackground >> 16) & 0xFF, (shownForeground >> 16) & 0xFF, amount / 2);
+			int green = blend((shownBackground >> 8) & 0xFF, (shownForeground >> 8) & 0xFF, amount / 2);
+			int blue = blend(shownBackground & 0xFF, shownForeground & 0xFF, amount / 2);
+			result[state] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+		}
+		return result;
+	}
+
+	/*
+	 * Returns 257 colors going evenly from the background color (no living cells) to the foreground color (all
+	 * living cells).
+	 */
+	private int[] makeShades() {
+		int[] result = new int[257];
+		for (int i = 0; i <= 256; i++) {
+			int red = blend((shownBackground >> 16) & 0xFF, (shownForeground >> 16) & 0xFF, i);
+			int green = blend((shownBackground >> 8) & 0xFF, (shownForeground >> 8) & 0xFF, i);
+			int blue = blend(shownBackground & 0xFF, shownForeground & 0xFF, i);
+			result[i] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+		}
+		return result;
+	}
+
+	/*
+	 * Returns the color channel "amount" 256ths of the way from "from" to "to".
+	 */
+	private static int blend(int from, int to, int amount) {
+		return from + (((to - from) * amount) >> 8);
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		GameOfLife game = new GameOfLife(1000, 1000);
+		BoardPanel panel = new BoardPanel(game);
+		panel.setForeground(java.awt.Color.WHITE);
+		panel.setBackground(java.awt.Color.BLACK);
+		panel.setSize(1000, 1000);
+		BufferedImage screen = new BufferedImage(1000, 1000, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = screen.createGraphics();
+		panel.paintComponent(g2);
+
+		boolean same = true;
+		for (int gen = 0; gen < 5; gen++) {
+			game.nextGen();
+			panel.paintComponent(g2);
+			for (int i = 0; i < 1000 && same; i++) {
+				for (int j = 0; j < 1000 && same; j++) {
+					boolean white = (screen.getRGB(j, i) & 0xFFFFFF) == 0xFFFFFF;
+					same = white == (game.getStatus(j, i) == Cell.ALIVE);
+				}
+			}
+		}
+		System.out.println("The drawn pixels match the cells after every generation: " + same);
+
+		int paints = 200;
+		long start = System.nanoTime();
+		for (int i = 0; i < paints; i++) {
+			game.nextGen();
+			panel.paintComponent(g2);
+		}
+		long stepAndPaint = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < paints; i++) game.nextGen();
+		long stepOnly = System.nanoTime() - start;
+		System.out.println("Painting a 1000 x 1000 board takes about " + String.format("%.2f", (stepAndPaint - stepOnly) / 1e6 / paints)
+				+ " ms a frame");
+
+		panel.zoomAt(8, 500, 500);
+		Point cell = panel.getCellAt(500, 500);
+		System.out.println("After zooming in 8 times around the middle, the middle pixel is over cell " + cell.x + ", " + cell.y
+				+ " (should be 500, 500) and the cells are " + (int) panel.getZoom() + " pixels across");
+		panel.paintComponent(g2);
+		boolean zoomedSame = true;
+		for (int i = 1; i < 1000; i += 3) {
+			for (int j = 1; j < 1000; j += 3) {
+				Point under = panel.getCellAt(j, i);
+				// The top and left edges of dead cells are grid lines.
+				if (!under.equals(panel.getCellAt(j - 1, i)) || !under.equals(panel.getCellAt(j, i - 1))) continue;
+				boolean lit = (screen.getRGB(j, i) & 0xFFFFFF) == 0xFFFFFF;
+				if (lit != (game.getStatus(under.x, under.y) == Cell.ALIVE)) zoomedSame = false;
+			}
+		}
+		System.out.println("The zoomed in pixels match the cells under them: " + zoomedSame);
+		g2.dispose();
+
+		GameOfLife big = new GameOfLife(8000, 8000);
+		BoardPanel bigPanel = new BoardPanel(big);
+		bigPanel.setSize(800, 800);
+		BufferedImage bigScreen = new BufferedImage(800, 800, BufferedImage.TYPE_INT_RGB);
+		Graphics2D bigG2 = bigScreen.createGraphics();
+		Simulation simulation = new Simulation(big);
+		bigPanel.setSimulation(simulation);
+		for (int i = 0; i < 20; i++) bigPanel.paintComponent(bigG2);
+		simulation.submit(() -> big.nextGen());
+		try {
+			Thread.sleep(200);
+		}
+		catch (InterruptedException e) {
+		}
+		start = System.nanoTime();
+		for (int i = 0; i < 20; i++) bigPanel.paintComponent(bigG2);
+		System.out.println("Painting an 8000 x 8000 board zoomed out to fit 800 x 800 pixels takes about "
+				+ String.format("%.2f", (System.nanoTime() - start) / 1e6 / 20) + " ms a frame");
+		bigG2.dispose();
+
+		GenerationsGame brain = new GenerationsGame(300, 400, GenerationsRule.BRIANS_BRAIN);
+		java.util.Random random = new java.util.Random(20);
+		for (int i = 0; i < 30000; i++) brain.setStatus(random.nextInt(400), random.nextInt(300), Cell.ALIVE);
+		for (int i = 0; i < 5; i++) brain.nextGen();
+		BoardPanel brainPanel = new BoardPanel(game);
+		brainPanel.setForeground(java.awt.Color.WHITE);
+		brainPanel.setBackground(java.awt.Color.BLACK);
+		brainPanel.setSize(800, 600);
+		brainPanel.setGenerations(brain);
+		BufferedImage brainScreen = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+		Graphics2D brainG2 = brainScreen.createGraphics();
+		brainPanel.paintComponent(brainG2);
+		boolean statesShown = true;
+		for (int y = 0; y < 300; y++) {
+			for (int x = 0; x < 400; x++) {
+				int rgb = brainScreen.getRGB(x * 2, y * 2) & 0xFFFFFF;
+				int state = brain.getStatus(x, y);
+				int expected = (state == 0) ? 0 : (state == 1) ? 0xFFFFFF : -1;
+				if (expected >= 0 ? rgb != expected : (rgb == 0 || rgb == 0xFFFFFF)) statesShown = false;
+			}
+		}
+		System.out.println("Brian's Brain is painted with a color for each state, 2 pixels a cell: " + statesShown);
+		brainG2.dispose();
+		try {
+			simulation.close();
+		}
+		catch (InterruptedException e) {
 		}
-		
 	}
 }
@@ -0,0 +1,298 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class Checkpoint {
+
+	/*
+	 * This class saves a GameOfLife to a file and loads it back, so that a long run can be stopped and picked up
+	 * again later. The file starts with a header of 56 little-endian bytes:
+	 *
+	 *     magic "GOLC", version, height, width        4 ints
+	 *     generation number                          long
+	 *     length of the packed cells, in bytes       long
+	 *     length of the compressed cells, in bytes   long
+	 *     CRC-32 of the packed cells                 int
+	 *     birth and survival masks of the Rule       2 ints
+	 *     Topology, as its ordinal                   int
+	 *
+	 * followed by the cells, packed 64 to a long in the same way as the rows of a BitBoard and then compressed
+	 * with Deflate. Deflate finds the long runs of empty words (and repeated rows) that most boards are made of,
+	 * so a mostly dead board takes up next to nothing.
+	 *
+	 * The cells are copied into a direct ByteBuffer once, and from then on the compressor reads straight from that
+	 * buffer and writes into another one that goes straight to the FileChannel. Loading maps the file and inflates
+	 * from the mapping, so neither direction makes any copies on the heap. A new file is written next to the old
+	 * one and then moved over it, so a crash while saving leaves the last checkpoint as it was.
+	 *
+	 * Version 1 files had a header of 48 bytes that stopped after the CRC-32 and a padding int, and no rule. They
+	 * are still loaded, under Conway's rules with dead edges.
+	 *
+	 * There are tests run at the end.
+	 */
+	public static final int MAGIC = 0x474F4C43;
+	public static final int VERSION = 2;
+	private static final int HEADER_BYTES = 56;
+	private static final int VERSION_1_HEADER_BYTES = 48;
+	private static final int CHUNK_BYTES = 1 << 16;
+
+	/*
+	 * This class only has static methods and is not meant to be instantiated.
+	 */
+	private Checkpoint() {
+	}
+
+	/*
+	 * Saves the cells, generation number, Rule and Topology of the given game to the given file.
+	 */
+	public static void save(GameOfLife game, Path path) throws IOException {
+		ByteBuffer cells = allocate(game);
+		snapshot(game, cells);
+		write(cells, game.getHeight(), game.getWidth(), game.getGenNum(), game.getRule(), game.getTopology(), path);
+	}
+
+	/*
+	 * Returns a direct buffer big enough to hold a snapshot of the given game.
+	 */
+	static ByteBuffer allocate(GameOfLife game) {
+		long bytes = (long) game.getHeight() * game.board.getWordsPerRow() * 8;
+		if (bytes > Integer.MAX_VALUE) throw new IllegalArgumentException("The board is too big for a checkpoint");
+		return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/*
+	 * Copies the cells of the given game into the given buffer, which is left ready to be read from.
+	 */
+	static void snapshot(GameOfLife game, ByteBuffer cells) {
+		cells.clear();
+		LongBuffer words = cells.asLongBuffer();
+		for (int y = 0; y < game.getHeight(); y++) words.put(game.board.getRow(y));
+		cells.limit(words.position() * 8);
+	}
+
+	/*
+	 * Compresses the packed cells in the given buffer and writes them, with a header, to the given file. The
+	 * buffer is read from its position to its limit and is left where it was.
+	 */
+	static void write(ByteBuffer cells, int height, int width, long genNum, Rule rule, Topology topology, Path path) throws IOException {
+		ByteBuffer input = cells.duplicate();
+		CRC32 crc = new CRC32();
+		crc.update(input.duplicate());
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			long packedBytes = input.remaining();
+			deflater.setInput(input);
+			deflater.finish();
+			ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES);
+			long position = HEADER_BYTES;
+			while (!deflater.finished()) {
+				chunk.clear();
+				deflater.deflate(chunk);
+				chunk.flip();
+				while (chunk.hasRemaining()) position += channel.write(chunk, position);
+			}
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(height).putInt(width).putLong(genNum).putLong(packedBytes)
+					.putLong(position - HEADER_BYTES).putInt((int) crc.getValue()).putInt(rule.getBirthMask()).putInt(rule.getSurvivalMask()).putInt(topology.ordinal());
+			header.flip();
+			while (header.hasRemaining()) channel.write(header, header.position());
+			channel.force(false);
+		}
+		finally {
+			deflater.end();
+			channel.close();
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * Loads the game saved in the given file, at the generation it was saved at and with the Rule and Topology it
+	 * was saved with.
+	 */
+	public static GameOfLife load(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			if (channel.size() < VERSION_1_HEADER_BYTES) throw new IOException(path + " is not a checkpoint");
+			MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			file.order(ByteOrder.LITTLE_ENDIAN);
+			if (file.getInt(0) != MAGIC) throw new IOException(path + " is not a checkpoint");
+			int version = file.getInt(4);
+			if (version != 1 && version != VERSION) throw new IOException("Unsupported checkpoint version " + version);
+			int headerBytes = (version == 1) ? VERSION_1_HEADER_BYTES : HEADER_BYTES;
+			if (channel.size() < headerBytes) throw new IOException(path + " is truncated or damaged");
+			int height = file.getInt(8);
+			int width = file.getInt(12);
+			long genNum = file.getLong(16);
+			long packedBytes = file.getLong(24);
+			long compressedBytes = file.getLong(32);
+			int expectedCrc = file.getInt(40);
+			Rule rule = Rule.CONWAY;
+			Topology topology = Topology.DEAD;
+			if (version > 1) {
+				try {
+					rule = Rule.fromMasks(file.getInt(44), file.getInt(48));
+				}
+				catch (IllegalArgumentException e) {
+					throw new IOException(path + " has a damaged header");
+				}
+				int ordinal = file.getInt(52);
+				if (ordinal < 0 || ordinal >= Topology.values().length) throw new IOException(path + " has a damaged header");
+				topology = Topology.values()[ordinal];
+			}
+			// The header is checked before anything is allocated from it, so a damaged file cannot ask for a board
+			// that does not fit in memory. Deflate never shrinks anything by more than about 1032 to 1, so the packed
+			// cells cannot be much bigger than that many times the compressed ones.
+			if (height <= 0 || width <= 0 || genNum < 1 || genNum > Integer.MAX_VALUE) throw new IOException(path + " has a damaged header");
+			int wordsPerRow = (width + 63) >>> 6;
+			if (packedBytes != (long) height * wordsPerRow * 8 || packedBytes > Integer.MAX_VALUE || compressedBytes < 0
+					|| compressedBytes > channel.size() - headerBytes || packedBytes > compressedBytes * 1032 + 1024) {
+				throw new IOException(path + " is truncated or damaged");
+			}
+			GameOfLife game = new GameOfLife(height, width);
+
+			ByteBuffer compressed = file.duplicate();
+			compressed.position(headerBytes).limit((int) (headerBytes + compressedBytes));
+			ByteBuffer cells = allocate(game);
+			Inflater inflater = new Inflater();
+			try {
+				inflater.setInput(compressed);
+				while (cells.hasRemaining() && !inflater.finished()) {
+					if (inflater.inflate(cells) == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+				}
+			}
+			catch (DataFormatException e) {
+				throw new IOException(path + " is damaged: " + e.getMessage());
+			}
+			finally {
+				inflater.end();
+			}
+			if (cells.hasRemaining()) throw new IOException(path + " is truncated or damaged");
+			cells.flip();
+			CRC32 crc = new CRC32();
+			crc.update(cells.duplicate());
+			if ((int) crc.getValue() != expectedCrc) throw new IOException(path + " failed its checksum");
+
+			LongBuffer words = cells.asLongBuffer();
+			long lastWordMask = game.board.getLastWordMask();
+			for (int y = 0; y < height; y++) {
+				long[] row = game.board.getRow(y);
+				words.get(row);
+				row[wordsPerRow - 1] &= lastWordMask;
+			}
+			game.markAllChanged();
+			game.setRule(rule);
+			game.setTopology(topology);
+			game.genNum = (int) genNum;
+			return game;
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) throws IOException {
+		Path file = Paths.get(System.getProperty("java.io.tmpdir"), "checkpoint_test.golc");
+		GameOfLife game = new GameOfLife(300, 200);
+		Random random = new Random(12);
+		for (int y = 0; y < 300; y++) {
+			for (int x = 0; x < 200; x++) if (random.nextBoolean()) game.setStatus(x, y, Cell.ALIVE);
+		}
+		for (int i = 0; i < 20; i++) game.nextGen();
+		save(game, file);
+		GameOfLife loaded = load(file);
+		System.out.println("Saved and loaded a 300 x 200 board at generation " + loaded.getGenNum() + " (should be 21), same cells: "
+				+ loaded.toString().equals(game.toString()) + ", " + Files.size(file) + " bytes");
+		for (int i = 0; i < 20; i++) {
+			game.nextGen();
+			loaded.nextGen();
+		}
+		System.out.println("Both still match 20 generations later: " + loaded.toString().equals(game.toString()));
+
+		// The rule is saved with the cells.
+		GameOfLife highLife = new GameOfLife(100, 100);
+		highLife.setRule(Rule.parse("B36/S23"));
+		for (int i = 0; i < 4000; i++) highLife.setStatus(random.nextInt(100), random.nextInt(100), Cell.ALIVE);
+		save(highLife, file);
+		GameOfLife highLifeLoaded = load(file);
+		for (int i = 0; i < 50; i++) {
+			highLife.nextGen();
+			highLifeLoaded.nextGen();
+		}
+		System.out.println("Loaded under " + highLifeLoaded.getRule() + " (should be B36/S23) and matches 50 generations later: "
+				+ highLifeLoaded.toString().equals(highLife.toString()));
+
+		// So is the topology.
+		GameOfLife klein = new GameOfLife(100, 100);
+		klein.setTopology(Topology.KLEIN_BOTTLE);
+		for (int i = 0; i < 4000; i++) klein.setStatus(random.nextInt(100), random.nextInt(100), Cell.ALIVE);
+		save(klein, file);
+		GameOfLife kleinLoaded = load(file);
+		for (int i = 0; i < 50; i++) {
+			klein.nextGen();
+			kleinLoaded.nextGen();
+		}
+		System.out.println("Loaded with " + kleinLoaded.getTopology().toString().toLowerCase() + " edges (should be klein_bottle) and matches 50 generations later: "
+				+ kleinLoaded.toString().equals(klein.toString()));
+
+		GameOfLife big = new GameOfLife(4096, 4096);
+		for (int x = 0; x < 4096; x += 100) {
+			big.setStatus(x, 2000, Cell.ALIVE);
+			big.setStatus(x + 1, 2000, Cell.ALIVE);
+			big.setStatus(x + 2, 2000, Cell.ALIVE);
+		}
+		long start = System.nanoTime();
+		save(big, file);
+		long saved = System.nanoTime();
+		GameOfLife bigLoaded = load(file);
+		long loadedAt = System.nanoTime();
+		System.out.println("A mostly dead 4096 x 4096 board saved in " + (saved - start) / 1000000 + " ms and loaded in "
+				+ (loadedAt - saved) / 1000000 + " ms, " + Files.size(file) + " bytes, population " + bigLoaded.board.population()
+				+ " (should be " + big.board.population() + ")");
+
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+		channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}), HEADER_BYTES + 10);
+		channel.close();
+		try {
+			load(file);
+			System.out.println("A damaged file was loaded!");
+		}
+		catch (IOException e) {
+			System.out.println("A damaged file is refused: " + e.getMessage());
+		}
+
+		// A header asking for a huge board is refused before the board is made.
+		save(game, file);
+		channel = FileChannel.open(file, StandardOpenOption.WRITE);
+		ByteBuffer huge = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		huge.putInt(1 << 20).putInt(1 << 20).flip();
+		channel.write(huge, 8);
+		channel.close();
+		try {
+			load(file);
+			System.out.println("A file asking for a 2^20 x 2^20 board was loaded!");
+		}
+		catch (IOException e) {
+			System.out.println("A header asking for a 2^20 x 2^20 board is refused: " + e.getMessage());
+		}
+		Files.delete(file);
+	}
+
+}
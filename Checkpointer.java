@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class Checkpointer {
+
+	/*
+	 * This class saves a running GameOfLife to a checkpoint file every so often without holding up the thread
+	 * that steps it. The stepping thread calls maybeCheckpoint() between generations. Once the interval has passed,
+	 * that call copies the cells into a snapshot buffer (a plain copy of the packed rows, which is quick) and hands
+	 * the snapshot to a background thread, which compresses it and writes the file while the game keeps going.
+	 *
+	 * There is only one snapshot buffer, so a checkpoint is skipped (and tried again at the next call) if the
+	 * last one is still being written. A failed write is thrown from the next call to this class.
+	 */
+	private GameOfLife game;
+	private Path path;
+	private long intervalNanos;
+	private long lastCheckpoint;
+	private ExecutorService writer;
+	private ByteBuffer cells;
+	private Future<?> pending;
+	private int checkpointCount;
+
+	/*
+	 * Constructs a Checkpointer that saves the given game to the given file at most once per the given number of
+	 * milliseconds.
+	 */
+	public Checkpointer(GameOfLife game, Path path, long intervalMillis) {
+		this.game = game;
+		this.path = path;
+		intervalNanos = intervalMillis * 1000000;
+		lastCheckpoint = System.nanoTime();
+		cells = Checkpoint.allocate(game);
+		writer = Executors.newSingleThreadExecutor(task -> {
+			Thread thread = new Thread(task, "Checkpointer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/*
+	 * Starts a checkpoint if the interval has passed since the last one and the last one has been written.
+	 * Returns whether a checkpoint was started. This must be called from the thread that steps the game, between
+	 * generations.
+	 */
+	public boolean maybeCheckpoint() throws IOException {
+		if (System.nanoTime() - lastCheckpoint < intervalNanos) return false;
+		if (pending != null && !pending.isDone()) return false;
+		start();
+		return true;
+	}
+
+	/*
+	 * Starts a checkpoint now, first waiting for the last one to be written if it has not been yet.
+	 */
+	public void checkpoint() throws IOException {
+		start();
+	}
+
+	/*
+	 * Takes a snapshot of the game and starts writing it on the background thread.
+	 */
+	private void start() throws IOException {
+		await();
+		Checkpoint.snapshot(game, cells);
+		int height = game.getHeight(), width = game.getWidth();
+		long genNum = game.getGenNum();
+		Rule rule = game.getRule();
+		Topology topology = game.getTopology();
+		pending = writer.submit(() -> {
+			Checkpoint.write(cells, height, width, genNum, rule, topology, path);
+			return null;
+		});
+		lastCheckpoint = System.nanoTime();
+		checkpointCount++;
+	}
+
+	/*
+	 * Waits for the checkpoint being written, if there is one, and throws any error it ran into.
+	 */
+	private void await() throws IOException {
+		if (pending == null) return;
+		Future<?> last = pending;
+		pending = null;
+		try {
+			last.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a checkpoint");
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IOException("Checkpoint failed", e.getCause());
+		}
+	}
+
+	/*
+	 * Waits for the last checkpoint to be written and stops the background thread. This Checkpointer cannot be
+	 * used afterwards.
+	 */
+	public void close() throws IOException {
+		try {
+			await();
+		}
+		finally {
+			writer.shutdown();
+		}
+	}
+
+	/*
+	 * Returns the number of checkpoints started so far.
+	 */
+	public int getCheckpointCount() {
+		return checkpointCount;
+	}
+
+	/*
+	 * Returns the file the checkpoints are written to.
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+}
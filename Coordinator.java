@@ -0,0 +1,296 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Random;
+
+public class Coordinator {
+
+	/*
+	 * This class runs a GameOfLife spread over several Worker processes, for boards too big to step in one JVM. The
+	 * board is cut into one stripe of whole rows per worker, and each worker steps its own stripe and swaps its edge
+	 * rows with the workers next to it every generation (see Worker). The Coordinator only hands out the stripes,
+	 * tells the workers how many generations to run, adds up their populations and, when asked, gathers the stripes
+	 * back into the game. Stripes keep whole rows so that each worker has only two neighbors and each halo is a
+	 * single packed row.
+	 *
+	 * The workers are either started as separate JVMs on this machine, with the same class path as this one, or run
+	 * on threads of this JVM, which goes through exactly the same sockets and is handy for testing.
+	 *
+	 * A worker that never connects (a JVM that fails to start, say) must not hang the Coordinator, so the workers
+	 * have "acceptMillis" between them to connect. If they don't, or anything else goes wrong while starting up,
+	 * the workers' processes are destroyed, the links already made are closed and the exception is thrown.
+	 *
+	 * There are tests run at the end.
+	 */
+	private static final String HOST = "127.0.0.1";
+
+	static long acceptMillis = 30000;
+
+	private GameOfLife game;
+	private ArrayList<Worker.Link> links = new ArrayList<Worker.Link>();
+	private ArrayList<Process> processes = new ArrayList<Process>();
+	private ArrayList<Thread> threads = new ArrayList<Thread>();
+	private int[] firstRows;
+	private long population;
+	private int genNum;
+
+	/*
+	 * Starts the given number of workers (as separate JVMs if "separateProcesses" is true, or as threads of this
+	 * JVM otherwise) and hands each of them its stripe of the given game, along with the game's Rule and Topology.
+	 * The game is not changed until collect() is called. Throws an IOException if the workers don't all connect
+	 * within "acceptMillis".
+	 */
+	public Coordinator(GameOfLife game, int workers, boolean separateProcesses) throws IOException {
+		if (workers < 1 || workers > game.getHeight()) throw new IllegalArgumentException("Cannot split " + game.getHeight() + " rows between " + workers + " workers");
+		this.game = game;
+		genNum = game.getGenNum();
+		population = game.getPopulation();
+		ServerSocketChannel server = ServerSocketChannel.open();
+		Selector selector = null;
+		try {
+			server.bind(new InetSocketAddress(HOST, 0));
+			server.configureBlocking(false);
+			selector = Selector.open();
+			server.register(selector, SelectionKey.OP_ACCEPT);
+			int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+			for (int i = 0; i < workers; i++) {
+				if (separateProcesses) processes.add(startProcess(port));
+				else threads.add(startThread(port));
+			}
+			int[] peerPorts = new int[workers];
+			long deadline = System.nanoTime() + acceptMillis * 1000000;
+			while (links.size() < workers) {
+				long left = (deadline - System.nanoTime()) / 1000000;
+				if (left <= 0) throw new IOException("Only " + links.size() + " of " + workers + " workers connected within " + acceptMillis + " ms");
+				selector.select(left);
+				selector.selectedKeys().clear();
+				SocketChannel channel = server.accept();
+				if (channel == null) continue;
+				channel.configureBlocking(true);
+				links.add(new Worker.Link(channel));
+				peerPorts[links.size() - 1] = links.get(links.size() - 1).readInt();
+			}
+			handOut(peerPorts);
+		}
+		catch (IOException | RuntimeException e) {
+			abandon();
+			throw e;
+		}
+		finally {
+			if (selector != null) selector.close();
+			server.close();
+		}
+	}
+
+	/*
+	 * Closes every link made and destroys every worker process started, after the workers failed to start up. The
+	 * worker threads are daemons, and end on their own once their sockets are closed.
+	 */
+	private void abandon() {
+		for (int i = 0; i < links.size(); i++) {
+			try {
+				links.get(i).close();
+			}
+			catch (IOException e) {
+				// Already gone.
+			}
+		}
+		for (int i = 0; i < processes.size(); i++) processes.get(i).destroyForcibly();
+	}
+
+	/*
+	 * Starts a worker in a new JVM that connects to the given port.
+	 */
+	private static Process startProcess(int port) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Worker", HOST, Integer.toString(port));
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+		return builder.start();
+	}
+
+	/*
+	 * Starts a worker on a new thread of this JVM that connects to the given port.
+	 */
+	private static Thread startThread(int port) {
+		Thread thread = new Thread(() -> {
+			try {
+				new Worker(HOST, port).run();
+			}
+			catch (IOException e) {
+				System.err.println("Worker failed: " + e);
+			}
+		}, "Worker");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/*
+	 * Tells every worker its place, its stripe and the ports of the workers above it, and sends it its rows.
+	 */
+	private void handOut(int[] peerPorts) throws IOException {
+		int workers = links.size();
+		int height = game.getHeight();
+		boolean wraps = game.getTopology().wraps();
+		firstRows = new int[workers + 1];
+		for (int i = 0; i <= workers; i++) firstRows[i] = (int) ((long) height * i / workers);
+		for (int i = 0; i < workers; i++) {
+			Worker.Link link = links.get(i);
+			boolean hasUp = i > 0 || (wraps && workers > 1);
+			boolean hasDown = i < workers - 1 || (wraps && workers > 1);
+			link.writeInt(i);
+			link.writeInt(workers);
+			link.writeInt(game.getWidth());
+			link.writeInt(firstRows[i + 1] - firstRows[i]);
+			link.writeString(game.getRule().toString());
+			link.writeInt(game.getTopology().ordinal());
+			link.writeInt(hasUp ? peerPorts[(i + workers - 1) % workers] : -1);
+			link.writeInt(hasDown ? 1 : 0);
+			for (int y = firstRows[i]; y < firstRows[i + 1]; y++) link.writeRow(game.board.getRow(y));
+			link.flush();
+		}
+	}
+
+	/*
+	 * Has every worker run the given number of generations, and waits for all of them to finish. Returns the
+	 * number of living cells afterwards.
+	 */
+	public long advance(int generations) throws IOException {
+		for (int i = 0; i < links.size(); i++) {
+			links.get(i).writeInt(Worker.STEP);
+			links.get(i).writeInt(generations);
+			links.get(i).flush();
+		}
+		population = 0;
+		for (int i = 0; i < links.size(); i++) population += links.get(i).readLong();
+		genNum += generations;
+		return population;
+	}
+
+	/*
+	 * Copies every worker's stripe back into the game, and sets the game's generation number to the workers'.
+	 */
+	public void collect() throws IOException {
+		for (int i = 0; i < links.size(); i++) {
+			links.get(i).writeInt(Worker.COLLECT);
+			links.get(i).flush();
+		}
+		for (int i = 0; i < links.size(); i++) {
+			for (int y = firstRows[i]; y < firstRows[i + 1]; y++) links.get(i).readRow(game.board.getRow(y));
+		}
+		game.markAllChanged();
+		game.genNum = genNum;
+	}
+
+	/*
+	 * Returns the number of living cells after the last advance().
+	 */
+	public long getPopulation() {
+		return population;
+	}
+
+	/*
+	 * Returns the generation number the workers are at.
+	 */
+	public int getGenNum() {
+		return genNum;
+	}
+
+	/*
+	 * Returns the number of workers.
+	 */
+	public int getWorkerCount() {
+		return links.size();
+	}
+
+	/*
+	 * Tells every worker to stop and waits for the workers' processes or threads to end.
+	 */
+	public void close() throws IOException {
+		for (int i = 0; i < links.size(); i++) {
+			try {
+				links.get(i).writeInt(Worker.QUIT);
+				links.get(i).flush();
+			}
+			catch (IOException e) {
+				// Already gone.
+			}
+			links.get(i).close();
+		}
+		try {
+			for (int i = 0; i < processes.size(); i++) processes.get(i).waitFor();
+			for (int i = 0; i < threads.size(); i++) threads.get(i).join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(21);
+		Topology[] topologies = Topology.values();
+		for (int t = 0; t < topologies.length; t++) {
+			for (int workers = 1; workers <= 4; workers += 3) {
+				GameOfLife single = new GameOfLife(203, 301);
+				single.setTopology(topologies[t]);
+				for (int i = 0; i < 15000; i++) single.setStatus(random.nextInt(301), random.nextInt(203), Cell.ALIVE);
+				GameOfLife spread = new GameOfLife(203, 301);
+				spread.setTopology(topologies[t]);
+				spread.board.copyFrom(single.board);
+				spread.markAllChanged();
+				Coordinator coordinator = new Coordinator(spread, workers, false);
+				coordinator.advance(50);
+				coordinator.advance(50);
+				for (int i = 0; i < 100; i++) single.nextGen();
+				coordinator.collect();
+				coordinator.close();
+				System.out.println(workers + " worker(s) with " + topologies[t].toString().toLowerCase() + " edges give the same board as one game: "
+						+ (spread.getHash() == single.getHash()) + ", at generation " + spread.getGenNum());
+			}
+		}
+
+		long saved = acceptMillis;
+		acceptMillis = 1;
+		try {
+			new Coordinator(new GameOfLife(64, 64), 2, true);
+			System.out.println("Workers that don't connect in time are not noticed!");
+		}
+		catch (IOException e) {
+			long left = 0;
+			long wait = System.nanoTime() + 5000000000L;
+			do {
+				left = ProcessHandle.current().children().filter(ProcessHandle::isAlive).count();
+			} while (left > 0 && System.nanoTime() < wait);
+			System.out.println("Workers that don't connect in time give \"" + e.getMessage() + "\", leaving " + left + " worker processes (should be 0)");
+		}
+		acceptMillis = saved;
+
+		GameOfLife highLife = new GameOfLife(512, 2000);
+		highLife.setRule(Rule.parse("B36/S23"));
+		for (int i = 0; i < 300000; i++) highLife.setStatus(random.nextInt(2000), random.nextInt(512), Cell.ALIVE);
+		GameOfLife spread = new GameOfLife(512, 2000);
+		spread.setRule(highLife.getRule());
+		spread.board.copyFrom(highLife.board);
+		spread.markAllChanged();
+		Coordinator coordinator = new Coordinator(spread, 3, true);
+		long start = System.nanoTime();
+		long population = coordinator.advance(200);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		for (int i = 0; i < 200; i++) highLife.nextGen();
+		coordinator.collect();
+		coordinator.close();
+		System.out.println("3 worker JVMs ran 200 generations of " + highLife.getRule() + " on 512 x 2000 at " + String.format("%.1f", 200 / seconds)
+				+ " gens/sec, giving the same board as one game: " + (spread.getHash() == highLife.getHash()) + " (population "
+				+ population + ", should be " + highLife.getPopulation() + ")");
+	}
+
+}
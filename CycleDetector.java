@@ -0,0 +1,203 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CycleDetector {
+
+	/*
+	 * This class notices when a GameOfLife has settled down: when a generation is the same board as an earlier
+	 * one, every generation after it just repeats the cycle between the two. It remembers the hash (see
+	 * GameOfLife.getHash()) of the last "capacity" generations it was shown, together with the generation each hash
+	 * was first seen at, and reports a cycle as soon as a hash comes back. A board that has stopped changing is a
+	 * cycle of period 1, and so is a board where everything has died.
+	 *
+	 * Once a cycle is found, fastForward() can move the game to any later generation by only stepping through the
+	 * remainder of one period, since the board at generation "start + n * period + r" is the same as the board at
+	 * "start + r". The generations remembered are moved on by the number of generations skipped, so that checking
+	 * the game again afterwards still finds the same period.
+	 *
+	 * Cycles longer than "capacity" generations are not noticed. If the start of a cycle has already been pushed out
+	 * of the history, the reported start is the earliest generation of the cycle still in it.
+	 *
+	 * There are tests run at the end.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private Map<Long, Integer> seen;
+	private int lastGen = Integer.MIN_VALUE;
+	private int period;
+	private int cycleStart;
+
+	/*
+	 * Constructs a CycleDetector that remembers the last DEFAULT_CAPACITY generations.
+	 */
+	public CycleDetector() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/*
+	 * Constructs a CycleDetector that remembers the given number of generations.
+	 */
+	public CycleDetector(int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("The capacity must be at least 1: " + capacity);
+		seen = new LinkedHashMap<Long, Integer>(capacity * 4 / 3 + 1) {
+			protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/*
+	 * Records the current generation of the given game and returns whether it repeats an earlier generation. If
+	 * the game went back to an earlier generation number (after clear(), for example), the history is forgotten
+	 * first.
+	 */
+	public boolean check(GameOfLife game) {
+		int gen = game.getGenNum();
+		if (gen <= lastGen) reset();
+		lastGen = gen;
+		long hash = game.getHash();
+		Integer first = seen.get(hash);
+		if (first != null) {
+			period = gen - first;
+			cycleStart = first;
+			return true;
+		}
+		seen.put(hash, gen);
+		return false;
+	}
+
+	/*
+	 * Moves the game on to the given generation, using the cycle that was found so that at most one period of
+	 * generations has to be stepped through. The game must be the one that was checked, still in its cycle.
+	 */
+	public void fastForward(GameOfLife game, int targetGen) {
+		if (period == 0) throw new IllegalStateException("No cycle has been found yet");
+		if (targetGen < game.getGenNum()) throw new IllegalArgumentException("Generation " + targetGen + " has already passed");
+		int remainder = (targetGen - game.getGenNum()) % period;
+		for (int i = 0; i < remainder; i++) game.nextGen();
+		int skipped = targetGen - game.getGenNum();
+		if (skipped == 0) return;
+		game.skipTo(targetGen);
+		for (Map.Entry<Long, Integer> entry : seen.entrySet()) entry.setValue(entry.getValue() + skipped);
+		lastGen = targetGen;
+	}
+
+	/*
+	 * Forgets every generation seen so far and the cycle found, if there was one.
+	 */
+	public void reset() {
+		seen.clear();
+		lastGen = Integer.MIN_VALUE;
+		period = 0;
+		cycleStart = 0;
+	}
+
+	/*
+	 * Returns whether a cycle has been found.
+	 */
+	public boolean foundCycle() {
+		return period > 0;
+	}
+
+	/*
+	 * Returns the period of the cycle found (1 for a board that stopped changing), or 0 if none has been found.
+	 */
+	public int getPeriod() {
+		return period;
+	}
+
+	/*
+	 * Returns the generation number the cycle found starts at, or 0 if none has been found.
+	 */
+	public int getCycleStart() {
+		return cycleStart;
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) {
+		// A glider on a small board crashes into the edge and ends up as a block.
+		GameOfLife glider = new GameOfLife(10, 10);
+		glider.setStatus(1, 0, Cell.ALIVE);
+		glider.setStatus(2, 1, Cell.ALIVE);
+		glider.setStatus(0, 2, Cell.ALIVE);
+		glider.setStatus(1, 2, Cell.ALIVE);
+		glider.setStatus(2, 2, Cell.ALIVE);
+		CycleDetector detector = new CycleDetector();
+		while (!detector.check(glider)) glider.nextGen();
+		System.out.println("The glider settled with period " + detector.getPeriod() + " (should be 1) from generation "
+				+ detector.getCycleStart() + " with " + glider.board.population() + " cells (should be 4)");
+
+		// A blinker next to a block has period 2 from the start.
+		GameOfLife blinker = new GameOfLife(20, 20);
+		blinker.setStatus(5, 5, Cell.ALIVE);
+		blinker.setStatus(6, 5, Cell.ALIVE);
+		blinker.setStatus(7, 5, Cell.ALIVE);
+		blinker.setStatus(12, 12, Cell.ALIVE);
+		blinker.setStatus(13, 12, Cell.ALIVE);
+		blinker.setStatus(12, 13, Cell.ALIVE);
+		blinker.setStatus(13, 13, Cell.ALIVE);
+		detector.reset();
+		while (!detector.check(blinker)) blinker.nextGen();
+		System.out.println("The blinker has period " + detector.getPeriod() + " (should be 2) from generation "
+				+ detector.getCycleStart() + " (should be 1)");
+		detector.fastForward(blinker, 1000001);
+		GameOfLife stepped = new GameOfLife(20, 20);
+		stepped.setStatus(5, 5, Cell.ALIVE);
+		stepped.setStatus(6, 5, Cell.ALIVE);
+		stepped.setStatus(7, 5, Cell.ALIVE);
+		stepped.setStatus(12, 12, Cell.ALIVE);
+		stepped.setStatus(13, 12, Cell.ALIVE);
+		stepped.setStatus(12, 13, Cell.ALIVE);
+		stepped.setStatus(13, 13, Cell.ALIVE);
+		for (int i = 0; i < 1000000; i++) stepped.nextGen();
+		System.out.println("Fast-forwarded to generation " + blinker.getGenNum() + ", same as stepping there: "
+				+ blinker.toString().equals(stepped.toString()));
+
+		// Checking again after fast-forwarding finds the same period, so fast-forwarding again still works.
+		blinker.nextGen();
+		boolean repeats = detector.check(blinker);
+		System.out.println("Checked again after fast-forwarding: repeats " + repeats + " with period " + detector.getPeriod()
+				+ " (should be true with period 2)");
+		GameOfLife pulsar = new GameOfLife(20, 20);
+		PatternLibrary.get("pulsar").stamp(pulsar, 3, 3);
+		GameOfLife pulsarStepped = new GameOfLife(20, 20);
+		PatternLibrary.get("pulsar").stamp(pulsarStepped, 3, 3);
+		detector.reset();
+		while (!detector.check(pulsar)) pulsar.nextGen();
+		detector.fastForward(pulsar, 101);
+		pulsar.nextGen();
+		detector.check(pulsar);
+		detector.fastForward(pulsar, 200);
+		for (int i = 1; i < 200; i++) pulsarStepped.nextGen();
+		System.out.println("A pulsar fast-forwarded twice has period " + detector.getPeriod() + " (should be 3) and the same board as stepping to generation 200: "
+				+ pulsar.toString().equals(pulsarStepped.toString()));
+
+		// The hash kept up by nextGen() and setStatus() matches one worked out from scratch.
+		GameOfLife soup = new GameOfLife(300, 300);
+		java.util.Random random = new java.util.Random(16);
+		for (int i = 0; i < 30000; i++) soup.setStatus(random.nextInt(300), random.nextInt(300), Cell.ALIVE);
+		soup.setParallelism(4);
+		boolean same = true;
+		for (int i = 0; i < 100; i++) {
+			soup.nextGen();
+			soup.toggleCell(random.nextInt(300), random.nextInt(300));
+			long kept = soup.getHash();
+			soup.markAllChanged();
+			if (soup.getHash() != kept) same = false;
+		}
+		soup.setParallelism(1);
+		System.out.println("The kept hash always matched the hash of the whole board: " + same);
+
+		detector.reset();
+		int gens = 0;
+		while (!detector.check(soup)) {
+			soup.nextGen();
+			gens++;
+		}
+		System.out.println("A 300 x 300 soup settled into a cycle of period " + detector.getPeriod() + " at generation "
+				+ detector.getCycleStart() + ", noticed after " + gens + " generations");
+	}
+
+}
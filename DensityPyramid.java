@@ -0,0 +1,154 @@
+public class DensityPyramid {
+
+	/*
+	 * This class counts the living cells of a BitBoard in square blocks of every power-of-two size, so that a
+	 * zoomed out view can show how full each block is without looking at every cell in it. Level L of the pyramid
+	 * has one count per block of 2^L x 2^L cells.
+	 *
+	 * Levels 0 to 2 (blocks of up to 4 x 4 cells) are read straight from the board, since a block that small is a
+	 * few bits of a few words. Level 3 is counted from the packed rows eight rows at a time: every word of a row is
+	 * turned into the counts of its eight bytes at once, and the counts of the eight rows are added up lane by lane,
+	 * which gives the counts of eight 8 x 8 blocks in one long. Every level above that adds up 2 x 2 blocks of the
+	 * level below it.
+	 *
+	 * There are tests run at the end.
+	 */
+	private static final int FIRST_STORED_LEVEL = 3;
+	private static final long ONES = 0x5555555555555555L;
+	private static final long PAIRS = 0x3333333333333333L;
+	private static final long NIBBLES = 0x0F0F0F0F0F0F0F0FL;
+
+	private BitBoard cells;
+	private int levelCount;
+	private int[][] counts;
+	private int[] levelWidths;
+	private int[] levelHeights;
+
+	/*
+	 * Constructs a DensityPyramid for the given board. build() has to be called before the stored levels can be
+	 * read, and again every time the board changes.
+	 */
+	public DensityPyramid(BitBoard cells) {
+		this.cells = cells;
+		int size = Math.max(cells.getHeight(), cells.getWidth());
+		levelCount = FIRST_STORED_LEVEL + 1;
+		while ((1L << (levelCount - 1)) < size) levelCount++;
+		counts = new int[levelCount][];
+		levelWidths = new int[levelCount];
+		levelHeights = new int[levelCount];
+		for (int level = 0; level < levelCount; level++) {
+			levelWidths[level] = (int) ((cells.getWidth() + (1L << level) - 1) >>> level);
+			levelHeights[level] = (int) ((cells.getHeight() + (1L << level) - 1) >>> level);
+			if (level >= FIRST_STORED_LEVEL) counts[level] = new int[levelWidths[level] * levelHeights[level]];
+		}
+	}
+
+	/*
+	 * Counts the blocks of every stored level from the current cells of the board.
+	 */
+	public void build() {
+		int height = cells.getHeight();
+		int wordsPerRow = cells.getWordsPerRow();
+		int[] base = counts[FIRST_STORED_LEVEL];
+		int baseWidth = levelWidths[FIRST_STORED_LEVEL];
+		for (int by = 0; by < levelHeights[FIRST_STORED_LEVEL]; by++) {
+			int firstRow = by << 3;
+			int lastRow = Math.min(firstRow + 8, height);
+			for (int k = 0; k < wordsPerRow; k++) {
+				long lanes = 0;
+				for (int y = firstRow; y < lastRow; y++) {
+					long word = cells.getRow(y)[k];
+					word -= (word >>> 1) & ONES;
+					word = (word & PAIRS) + ((word >>> 2) & PAIRS);
+					lanes += (word + (word >>> 4)) & NIBBLES;
+				}
+				int firstBlock = k << 3;
+				int blocks = Math.min(8, baseWidth - firstBlock);
+				for (int b = 0; b < blocks; b++) {
+					base[by * baseWidth + firstBlock + b] = (int) ((lanes >>> (b << 3)) & 0xFF);
+				}
+			}
+		}
+		for (int level = FIRST_STORED_LEVEL + 1; level < levelCount; level++) {
+			int[] below = counts[level - 1];
+			int belowWidth = levelWidths[level - 1], belowHeight = levelHeights[level - 1];
+			int[] here = counts[level];
+			int width = levelWidths[level];
+			for (int by = 0; by < levelHeights[level]; by++) {
+				for (int bx = 0; bx < width; bx++) {
+					int x = bx << 1, y = by << 1;
+					int sum = below[y * belowWidth + x];
+					if (x + 1 < belowWidth) sum += below[y * belowWidth + x + 1];
+					if (y + 1 < belowHeight) {
+						sum += below[(y + 1) * belowWidth + x];
+						if (x + 1 < belowWidth) sum += below[(y + 1) * belowWidth + x + 1];
+					}
+					here[by * width + bx] = sum;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Returns the number of living cells in block (bx, by) of the given level, which holds the cells from
+	 * (bx * 2^level, by * 2^level) to just before ((bx + 1) * 2^level, (by + 1) * 2^level). Blocks that are not on
+	 * the board have no living cells.
+	 */
+	public int count(int level, int bx, int by) {
+		if (bx < 0 || by < 0 || bx >= levelWidths[level] || by >= levelHeights[level]) return 0;
+		if (level >= FIRST_STORED_LEVEL) return counts[level][by * levelWidths[level] + bx];
+		// A block of 1, 2 or 4 cells across never crosses a word.
+		int size = 1 << level;
+		int x = bx << level;
+		long mask = ((1L << size) - 1) << (x & 63);
+		int lastRow = Math.min((by + 1) << level, cells.getHeight());
+		int count = 0;
+		for (int y = by << level; y < lastRow; y++) count += Long.bitCount(cells.getRow(y)[x >>> 6] & mask);
+		return count;
+	}
+
+	/*
+	 * Returns the number of levels, so the biggest level is getLevelCount() - 1, whose single block covers the
+	 * whole board.
+	 */
+	public int getLevelCount() {
+		return levelCount;
+	}
+
+	/*
+	 * Returns the board this pyramid counts the cells of.
+	 */
+	public BitBoard getCells() {
+		return cells;
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) {
+		BitBoard board = new BitBoard(300, 203);
+		java.util.Random random = new java.util.Random(15);
+		for (int y = 0; y < 300; y++) {
+			for (int x = 0; x < 203; x++) if (random.nextInt(3) == 0) board.set(x, y, Cell.ALIVE);
+		}
+		DensityPyramid pyramid = new DensityPyramid(board);
+		pyramid.build();
+		boolean right = true;
+		for (int level = 0; level < pyramid.getLevelCount(); level++) {
+			int size = 1 << level;
+			for (int by = 0; by * size < 300; by++) {
+				for (int bx = 0; bx * size < 203; bx++) {
+					int expected = 0;
+					for (int y = by * size; y < (by + 1) * size; y++) {
+						for (int x = bx * size; x < (bx + 1) * size; x++) expected += board.get(x, y);
+					}
+					if (pyramid.count(level, bx, by) != expected) right = false;
+				}
+			}
+		}
+		System.out.println("Every block of all " + pyramid.getLevelCount() + " levels has the right count: " + right);
+		System.out.println("The top block holds " + pyramid.count(pyramid.getLevelCount() - 1, 0, 0) + " cells (should be "
+				+ board.population() + ")");
+	}
+
+}
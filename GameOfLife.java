@@ -1,3 +1,6 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class GameOfLife {
 	
@@ -6,17 +9,98 @@ public class GameOfLife {
 	 * of the board along with the generation number. There are 3 different constructors, a variety of game-specific 
 	 * methods, and finally a toString method that prints the Game Of Life board as one might envision it. 
 	 * 
+	 *  The board is stored in a BitBoard, which packs every cell into a single bit of a long, so the game can
+	 *  hold boards far larger than one Cell object per location would allow. A second BitBoard, "next", is kept 
+	 *  as a back buffer that each new generation is written into before the two are swapped, so stepping the game
+	 *  does not allocate anything. 
+	 * 
+	 *  By default generations are worked out on the calling thread. After setParallelism() is called with more 
+	 *  than 1 thread, the rows of the board are split into bands which are worked out at the same time on a 
+	 *  ForkJoinPool. Every row only ever reads the previous generation, so the result is exactly the same either way.
+	 * 
+	 *  To save work on boards that are mostly settled, the board is split into tiles of 64 x 64 cells (64 rows of 
+	 *  one word each) and the game remembers which tiles changed in the last generation. A tile is only worked out 
+	 *  again if it or one of the 8 tiles around it changed; otherwise it cannot change either. Skipping a tile 
+	 *  needs no copying, because a tile that did not change last generation already holds the same cells in both 
+	 *  "board" and "next". Any change made to "board" from outside nextGen() must mark its tile as changed, which 
+	 *  setStatus() and clear() do. 
+	 * 
+	 *  The game also keeps a 64-bit hash of the board, which is the XOR of a hash of every non-zero word and its 
+	 *  place on the board (in the spirit of Zobrist hashing). A word that changes is simply XORed out and back in, 
+	 *  so the hash is kept up to date by nextGen() and setStatus() at the cost of the changed words only. Two 
+	 *  generations with the same hash are the same board, except with a chance of about 1 in 2^64, which is what 
+	 *  CycleDetector relies on. The number of living cells, and the births and deaths of the last generation, are 
+	 *  counted from the changed words in the same way. 
+	 * 
+	 *  If a History is given with setHistory(), every generation is remembered as the cells that changed since the 
+	 *  one before, and previousGen() and seek() can then take the game back to any generation it remembers. The 
+	 *  History only looks through the tiles that changed, so it costs little more than the step itself, and it is 
+	 *  not counted in the step's time. 
+	 * 
+	 *  If a Metrics object is given with setMetrics(), every generation is timed and reported to it. Without one 
+	 *  the only cost is checking that "metrics" is null. 
+	 * 
+	 *  The game follows Conway's rules unless it is given another Rule with setRule(), such as HighLife (B36/S23). 
+	 *  A Rule is a ready-made table and set of neighbor counts, so changing it costs nothing while running. Under a 
+	 *  rule where empty cells can be born (B0), empty tiles do not stay empty, so every tile is worked out every 
+	 *  generation. 
+	 * 
+	 *  The edges of the board meet as set by setTopology(): surrounded by dead cells (the default), as a torus or 
+	 *  as a Klein bottle (see Topology). Once per generation, before any tile is worked out, the rows just past the 
+	 *  top and bottom edges are put in "haloRows" along with the board's own rows, and the cells just past the left 
+	 *  and right edges of each of those rows are put in "westGhosts" and "eastGhosts". Every row then finds the 
+	 *  rows around it at fixed places in "haloRows", so working out a tile needs no bounds checks, and only the 
+	 *  words on the left and right edges of a wrapping board look at the ghost cells. 
+	 * 
 	 *  There is testing done at the end of the class. 
 	 */
-	Board board;
+	BitBoard board;
+	BitBoard next;
+	long[] emptyRow;
 	int genNum;
+	private int tileRows;
+	private int tileCols;
+	private boolean[] changed;
+	private boolean[] nextChanged;
+	private boolean[] active;
+	private ForkJoinPool pool;
+	private RowBand[] bands;
+	private StepTask stepTask;
+	private RowBand wholeBoard;
+	private long hash;
+	private boolean hashValid;
+	private long population;
+	private boolean populationValid;
+	private long births;
+	private long deaths;
+	private long cellsWorkedOut;
+	private Metrics metrics;
+	private History history;
+	private Rule rule = Rule.CONWAY;
+	private Topology topology = Topology.DEAD;
+	private long[][] haloRows;
+	private long[] westGhosts;
+	private long[] eastGhosts;
+	private long[] mirroredAbove;
+	private long[] mirroredBelow;
 	
 	/*
 	 * Constructs a GameOfLife object given integer values for the height and width of "board". "genNum" is set
 	 * to 1, and the constructor then calls "clear()" which sets all the Cell objects on "board" to dead Cells. 
 	 */
 	public GameOfLife(int height, int width) {
-		board = new Board(new Cell[height][width]);
+		board = new BitBoard(height, width);
+		next = new BitBoard(height, width);
+		emptyRow = new long[board.getWordsPerRow()];
+		tileRows = (height + 63) >>> 6;
+		tileCols = board.getWordsPerRow();
+		changed = new boolean[tileRows * tileCols];
+		nextChanged = new boolean[tileRows * tileCols];
+		active = new boolean[tileRows * tileCols];
+		wholeBoard = new RowBand(0, tileRows);
+		haloRows = new long[height + 2][];
+		westGhosts = new long[height + 2];
+		eastGhosts = new long[height + 2];
 		genNum = 1;
 		clear();
 	}
@@ -28,61 +112,370 @@ public class GameOfLife {
 	 * objects on "board" to dead Cells. 
 	 */
 	public GameOfLife(int sideLength) {
-		board = new Board(new Cell[sideLength][sideLength]);
-		genNum = 1;
-		clear();
+		this(sideLength, sideLength);
 	}
 	
 	/*
 	 * Constructs a GameOfLife object given a predefined initial state for "board". "genNum" is set to 1, and the 
-	 * constructor then calls "clear()" which sets all the Cell objects on "board" to dead Cells. 
+	 * constructor then calls "clear()" which sets all the Cell objects on "board" to dead Cells. Only the 
+	 * dimensions of "initial" are used. 
 	 */
 	public GameOfLife(Cell[][] initial) {
-		board = new Board(initial);
-		genNum = 1;
-		clear();
+		this(initial.length, initial[0].length);
 	}
 	
 	/*
 	 * Returns the number of living Cell objects (type = Cell.ALIVE or 1) directly next to or diagonal from the 
 	 * Cell object at the specified coordinates entered by the user. The method uses a helper variable, "counter",
-	 * which keeps track of the total number of living neighbors. 
+	 * which keeps track of the total number of living neighbors. Neighbors past the edges follow the topology. 
 	 */
 	public int countNeighbors(int x, int y) {
 		int counter = 0;
 		for (int i = x - 1; i <= x + 1; i++) {
 			for (int j = y - 1; j <= y + 1; j++) {
 				if (i != x || j != y) {
-					if (board.getPiece(i, j) == null) {}
-					else if (((Cell) board.getPiece(i, j)).isAlive()) counter++;
+					counter += getWrapped(i, j);
 				}
 			}
 		}
 		return counter;
 	}
 	
+	/*
+	 * Returns the status of the cell at the given coordinates, which may be past the edges of the board. Past the 
+	 * edges, the topology decides which cell of the board it is, or that it is dead.
+	 */
+	private int getWrapped(int x, int y) {
+		if (topology.wraps()) {
+			int height = board.getHeight(), width = board.getWidth();
+			int turns = Math.floorDiv(y, height);
+			y -= turns * height;
+			if (topology == Topology.KLEIN_BOTTLE && (turns & 1) != 0) x = width - 1 - x;
+			x = Math.floorMod(x, width);
+		}
+		return board.get(x, y);
+	}
+	
 	
 	/*
 	 * This method updates "board" to the next generation so that it's Cell objects are either living or dead 
 	 * depending on their prior status and their number of neighbors. The method increases "genNum" by 1. Note 
-	 * that a copy of the current Board is made for reference to the previous generation. 
+	 * that the new generation is written into the back buffer "next" while "board" is still read as the previous 
+	 * generation, and then the two are swapped, so no copy of the board is ever made. Each new row is worked 
+	 * out from the packed words of the three rows around it, and only the tiles near a change are worked out.
 	 */
 	public void nextGen() {
+		long start = (metrics != null) ? System.nanoTime() : 0;
 		genNum++;
-		Cell[][] original = new Cell[this.getHeight()][this.getWidth()];
-		GameOfLife orig = new GameOfLife(original);
-		for (int i = 0; i < board.getHeight(); i++) {
-			for (int j = 0; j < board.getWidth(); j++) {
-				orig.setStatus(j, i, this.getStatus(j, i));
+		refreshHalo();
+		findActiveTiles();
+		births = 0;
+		deaths = 0;
+		cellsWorkedOut = 0;
+		if (pool == null) addUp(wholeBoard);
+		else {
+			stepTask.reinitialize();
+			pool.invoke(stepTask);
+			for (int i = 0; i < bands.length; i++) {
+				addUp(bands[i]);
+			}
+		}
+		BitBoard temp = board;
+		board = next;
+		next = temp;
+		boolean[] tempChanged = changed;
+		changed = nextChanged;
+		nextChanged = tempChanged;
+		if (metrics != null) metrics.recordStep(this, System.nanoTime() - start);
+		if (history != null) history.record(this);
+	}
+	
+	/*
+	 * Works out the given band if it has not been worked out on the pool, and adds what changed in it to the hash, 
+	 * the population, the births and deaths and the cells worked out of this generation.
+	 */
+	private void addUp(RowBand band) {
+		if (band == wholeBoard) band.compute();
+		hash ^= band.hashChange;
+		births += band.births;
+		deaths += band.deaths;
+		cellsWorkedOut += band.cellsWorkedOut;
+		population += band.births - band.deaths;
+	}
+	
+	/*
+	 * Puts the rows around the board in "haloRows" and the cells past the left and right edges of every row in 
+	 * "westGhosts" and "eastGhosts", as the topology says, for the generation about to be worked out. Element 
+	 * i + 1 of each is row i, so element 0 is the row above the top edge and element height + 1 the row below the 
+	 * bottom edge.
+	 */
+	private void refreshHalo() {
+		int height = board.getHeight();
+		for (int i = 0; i < height; i++) {
+			haloRows[i + 1] = board.getRow(i);
+		}
+		if (topology == Topology.DEAD) {
+			haloRows[0] = emptyRow;
+			haloRows[height + 1] = emptyRow;
+			return;
+		}
+		if (topology == Topology.TORUS) {
+			haloRows[0] = board.getRow(height - 1);
+			haloRows[height + 1] = board.getRow(0);
+		}
+		else {
+			board.reverseRow(height - 1, mirroredAbove);
+			board.reverseRow(0, mirroredBelow);
+			haloRows[0] = mirroredAbove;
+			haloRows[height + 1] = mirroredBelow;
+		}
+		int lastWord = tileCols - 1;
+		int lastBit = (board.getWidth() - 1) & 63;
+		for (int j = 0; j < height + 2; j++) {
+			westGhosts[j] = (haloRows[j][lastWord] >>> lastBit) & 1;
+			eastGhosts[j] = haloRows[j][0] & 1;
+		}
+	}
+	
+	/*
+	 * Fills in "active" with whether each tile has to be worked out this generation, which is whenever the tile or 
+	 * one of the 8 tiles around it changed in the last generation. On a wrapping board the tiles around an edge 
+	 * tile include the tiles across the opposite edge. The top and bottom edges of a Klein bottle are joined 
+	 * mirrored, so their tiles do not line up; there a tile on one of them is worked out if any tile on the other 
+	 * changed.
+	 */
+	private void findActiveTiles() {
+		if (rule.isBornFromNothing()) {
+			Arrays.fill(active, true);
+			return;
+		}
+		boolean wraps = topology.wraps();
+		boolean mirrored = (topology == Topology.KLEIN_BOTTLE);
+		boolean topChanged = false, bottomChanged = false;
+		if (mirrored) {
+			for (int tx = 0; tx < tileCols; tx++) {
+				topChanged |= changed[tx];
+				bottomChanged |= changed[(tileRows - 1) * tileCols + tx];
+			}
+		}
+		for (int ty = 0; ty < tileRows; ty++) {
+			for (int tx = 0; tx < tileCols; tx++) {
+				boolean isActive = (mirrored && ((ty == 0 && bottomChanged) || (ty == tileRows - 1 && topChanged)));
+				for (int dy = ty - 1; dy <= ty + 1 && !isActive; dy++) {
+					int ny = dy;
+					if (ny < 0 || ny >= tileRows) {
+						if (!wraps || mirrored) continue;
+						ny = (ny + tileRows) % tileRows;
+					}
+					for (int dx = tx - 1; dx <= tx + 1; dx++) {
+						int nx = dx;
+						if (nx < 0 || nx >= tileCols) {
+							if (!wraps) continue;
+							nx = (nx + tileCols) % tileCols;
+						}
+						if (changed[ny * tileCols + nx]) {
+							isActive = true;
+							break;
+						}
+					}
+				}
+				active[ty * tileCols + tx] = isActive;
+			}
+		}
+	}
+	
+	/*
+	 * Works out the next generation of the active tiles in the rows of tiles of the given band, writing them into 
+	 * "next" and recording in "nextChanged" which tiles changed. What the changed words do to the hash of the board, 
+	 * the cells born and died, and the number of cells in the tiles worked out, are left in the band.
+	 */
+	private void nextTiles(RowBand band) {
+		int height = board.getHeight();
+		long lastWordMask = board.getLastWordMask();
+		long hashChange = 0;
+		long born = 0, died = 0;
+		long worked = 0;
+		Rule rule = this.rule;
+		long[][] haloRows = this.haloRows;
+		boolean wraps = topology.wraps();
+		int fromTileRow = band.fromTileRow, toTileRow = band.toTileRow;
+		for (int ty = fromTileRow; ty < toTileRow; ty++) {
+			int toRow = Math.min((ty + 1) << 6, height);
+			for (int tx = 0; tx < tileCols; tx++) {
+				int tile = ty * tileCols + tx;
+				nextChanged[tile] = false;
+				if (!active[tile]) continue;
+				worked += (long) (toRow - (ty << 6)) << 6;
+				long mask = (tx == tileCols - 1) ? lastWordMask : -1L;
+				boolean onEdge = wraps && (tx == 0 || tx == tileCols - 1);
+				boolean tileChanged = false;
+				for (int i = ty << 6; i < toRow; i++) {
+					long[] row = haloRows[i + 1];
+					long word;
+					if (onEdge) word = nextEdgeWord(rule, i, tx) & mask;
+					else word = LifeKernel.nextWord(rule, haloRows[i], row, haloRows[i + 2], tx) & mask;
+					if (word != row[tx]) {
+						tileChanged = true;
+						long index = (long) i * tileCols + tx;
+						hashChange ^= wordHash(index, row[tx]) ^ wordHash(index, word);
+						born += Long.bitCount(word & ~row[tx]);
+						died += Long.bitCount(row[tx] & ~word);
+					}
+					next.getRow(i)[tx] = word;
+				}
+				nextChanged[tile] = tileChanged;
 			}
 		}
-		for (int i = 0; i < board.getHeight(); i++) {
-			for (int j = 0; j < board.getWidth(); j++) {
-				if (orig.willLive(j, i)) this.setStatus(j, i, Cell.ALIVE);
-				else this.setStatus(j, i, Cell.DEAD);
+		band.hashChange = hashChange;
+		band.births = born;
+		band.deaths = died;
+		band.cellsWorkedOut = worked;
+	}
+	
+	/*
+	 * Returns the next generation of word "k" of row i of a wrapping board, where word "k" is on the left or right 
+	 * edge, taking the cells across the edge from "westGhosts" and "eastGhosts". The bits past the last cell are 
+	 * not masked off.
+	 */
+	private long nextEdgeWord(Rule rule, int i, int k) {
+		long[] above = haloRows[i], row = haloRows[i + 1], below = haloRows[i + 2];
+		int lastWord = tileCols - 1;
+		int lastBit = (board.getWidth() - 1) & 63;
+		long up = above[k], center = row[k], down = below[k];
+		long upWest, west, downWest, upEast, east, downEast;
+		if (k > 0) {
+			upWest = above[k - 1];
+			west = row[k - 1];
+			downWest = below[k - 1];
+		}
+		else {
+			upWest = westGhosts[i] << 63;
+			west = westGhosts[i + 1] << 63;
+			downWest = westGhosts[i + 2] << 63;
+		}
+		if (k < lastWord) {
+			upEast = above[k + 1];
+			east = row[k + 1];
+			downEast = below[k + 1];
+		}
+		else if (lastBit == 63) {
+			upEast = eastGhosts[i];
+			east = eastGhosts[i + 1];
+			downEast = eastGhosts[i + 2];
+		}
+		else {
+			// The cell just right of the last column is a padding bit of the same word, so the ghost goes there.
+			upEast = east = downEast = 0;
+			up |= eastGhosts[i] << (lastBit + 1);
+			center |= eastGhosts[i + 1] << (lastBit + 1);
+			down |= eastGhosts[i + 2] << (lastBit + 1);
+		}
+		return LifeKernel.nextRow(rule, up, upWest, upEast, center, west, east, down, downWest, downEast);
+	}
+	
+	/*
+	 * Returns the part of the hash of the board that comes from the given word being at the given place (the row 
+	 * times the words per row, plus the word's place in the row). An empty word adds nothing, so an empty board 
+	 * has a hash of 0.
+	 */
+	private static long wordHash(long index, long word) {
+		if (word == 0) return 0;
+		return mix(word ^ mix(index + 0x9E3779B97F4A7C15L));
+	}
+	
+	/*
+	 * Scrambles the bits of the given long (the finishing step of the SplitMix64 generator), so that inputs that 
+	 * differ by a single bit give outputs that differ in about half of their bits.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	/*
+	 * Returns the 64-bit hash of the current board. Boards with the same cells have the same hash. It is usually 
+	 * kept up to date as the board changes, and is only worked out from the whole board again after cells were 
+	 * changed directly.
+	 */
+	public long getHash() {
+		if (!hashValid) {
+			hash = 0;
+			for (int i = 0; i < board.getHeight(); i++) {
+				long[] row = board.getRow(i);
+				for (int k = 0; k < tileCols; k++) {
+					hash ^= wordHash((long) i * tileCols + k, row[k]);
+				}
 			}
+			hashValid = true;
+		}
+		return hash;
+	}
+	
+	/*
+	 * Sets the number of threads used to work out each generation. With 1 (or less) every generation is worked 
+	 * out on the calling thread. With more, the rows of tiles are split into a few bands per thread, and the bands are 
+	 * worked out on a ForkJoinPool with the given parallelism. The pool and the band tasks are made here once, 
+	 * so nextGen() still does not allocate.
+	 */
+	public void setParallelism(int parallelism) {
+		if (pool != null) pool.shutdown();
+		pool = null;
+		bands = null;
+		stepTask = null;
+		if (parallelism <= 1) return;
+		int bandCount = Math.min(tileRows, parallelism * 4);
+		bands = new RowBand[bandCount];
+		for (int i = 0; i < bandCount; i++) {
+			bands[i] = new RowBand(tileRows * i / bandCount, tileRows * (i + 1) / bandCount);
+		}
+		pool = new ForkJoinPool(parallelism);
+		stepTask = new StepTask();
+	}
+	
+	/*
+	 * Returns the number of threads used to work out each generation.
+	 */
+	public int getParallelism() {
+		if (pool == null) return 1;
+		return pool.getParallelism();
+	}
+	
+	/*
+	 * A task that works out one band of rows of tiles of the next generation.
+	 */
+	private class RowBand extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final int fromTileRow;
+		private final int toTileRow;
+		private long hashChange;
+		private long births;
+		private long deaths;
+		private long cellsWorkedOut;
+		
+		RowBand(int fromTileRow, int toTileRow) {
+			this.fromTileRow = fromTileRow;
+			this.toTileRow = toTileRow;
 		}
 		
+		protected void compute() {
+			nextTiles(this);
+		}
+	}
+	
+	/*
+	 * The task handed to "pool" for each generation. It runs every band and waits for all of them to finish.
+	 */
+	private class StepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		protected void compute() {
+			for (int i = 0; i < bands.length; i++) {
+				bands[i].reinitialize();
+			}
+			invokeAll(bands);
+		}
 	}
 	
 	/*
@@ -105,7 +498,7 @@ public class GameOfLife {
 	 * This method sets the status of the Cell object at the specified coordinates to Cell.ALIVE.
 	 */
 	public void reviveCell(int x, int y) {
-		board.getPiece(x, y).setType(Cell.ALIVE);
+		this.setStatus(x, y, Cell.ALIVE);
 	}
 	
 	/*
@@ -115,16 +508,178 @@ public class GameOfLife {
 		return genNum;
 	}
 
+	/*
+	 * Sets every cell on "board" to alive with the given chance, from the given seed, without changing "genNum". 
+	 * The same seed and density always give the same board, however many threads fill it in (see BitBoard). 
+	 */
+	public void randomize(long seed, double density) {
+		board.randomize(seed, density, (pool != null) ? pool : ForkJoinPool.commonPool());
+		markAllChanged();
+	}
+	
 	/*
 	 * Sets all the status's of the Cell objects on "board" to Cell.DEAD and sets "genNum" back to 1. 
 	 */
 	public void clear() {
 		genNum = 1; 
-		for (int i = 0; i < board.getHeight(); i++) {
-			for (int j = 0; j < board.getWidth(); j++) {
-				board.setPiece(j, i, new Cell(Cell.DEAD));
-			}
+		board.clear();
+		markAllChanged();
+	}
+	
+	/*
+	 * Returns the number of living cells on the board. Like the hash, it is kept up to date as the board changes 
+	 * and only counted again after cells were changed directly.
+	 */
+	public long getPopulation() {
+		if (!populationValid) {
+			population = board.population();
+			populationValid = true;
 		}
+		return population;
+	}
+	
+	/*
+	 * Returns the number of cells that were born in the last generation.
+	 */
+	public long getBirths() {
+		return births;
+	}
+	
+	/*
+	 * Returns the number of cells that died in the last generation.
+	 */
+	public long getDeaths() {
+		return deaths;
+	}
+	
+	/*
+	 * Returns the number of cells worked out in the last generation: 64 for every word of every tile that was not 
+	 * skipped. On a mostly settled board this is far fewer than the cells on the board. 
+	 */
+	public long getCellsWorkedOut() {
+		return cellsWorkedOut;
+	}
+	
+	/*
+	 * Sets the Rule that the following generations are worked out with. Every tile is worked out again in the next 
+	 * generation, since a tile that had settled under the old rule may not have settled under the new one.
+	 */
+	public void setRule(Rule r) {
+		rule = r;
+		Arrays.fill(changed, true);
+	}
+	
+	/*
+	 * Returns the Rule that generations are worked out with, which is Rule.CONWAY unless setRule() was called.
+	 */
+	public Rule getRule() {
+		return rule;
+	}
+	
+	/*
+	 * Sets how the edges of the board meet (see Topology). Every tile is worked out again in the next generation.
+	 */
+	public void setTopology(Topology t) {
+		topology = t;
+		if (t == Topology.KLEIN_BOTTLE && mirroredAbove == null) {
+			mirroredAbove = new long[tileCols];
+			mirroredBelow = new long[tileCols];
+		}
+		Arrays.fill(changed, true);
+	}
+	
+	/*
+	 * Returns how the edges of the board meet, which is Topology.DEAD unless setTopology() was called.
+	 */
+	public Topology getTopology() {
+		return topology;
+	}
+	
+	/*
+	 * Sets the Metrics that every generation is reported to, or turns reporting off with null.
+	 */
+	public void setMetrics(Metrics m) {
+		metrics = m;
+	}
+	
+	/*
+	 * Sets the History that every generation is remembered in, starting with the current one, or stops 
+	 * remembering generations with null.
+	 */
+	public void setHistory(History h) {
+		history = h;
+		if (h != null) h.record(this);
+	}
+	
+	/*
+	 * Returns the History that generations are remembered in, or null if there is none.
+	 */
+	public History getHistory() {
+		return history;
+	}
+	
+	/*
+	 * Takes the game back one generation, to the board it had before the last call to nextGen(). Returns false, 
+	 * without changing anything, if the History does not go back that far. A History must have been given with 
+	 * setHistory().
+	 */
+	public boolean previousGen() {
+		if (history == null) throw new IllegalStateException("There is no History to go back in; see setHistory()");
+		if (genNum <= history.getOldestGen()) return false;
+		history.seek(this, genNum - 1);
+		return true;
+	}
+	
+	/*
+	 * Moves the game to the given generation, which must be one remembered by the History given with 
+	 * setHistory(), before or after the current one.
+	 */
+	public void seek(int gen) {
+		if (history == null) throw new IllegalStateException("There is no History to go back in; see setHistory()");
+		history.seek(this, gen);
+	}
+	
+	/*
+	 * Sets "genNum" to the given later generation without working out the generations in between, for when the 
+	 * board is already known to be the same as it would be there (see CycleDetector.fastForward()). The History 
+	 * starts again from that generation, since the ones skipped were never seen, and the Metrics is told where the 
+	 * game is now without timing a step.
+	 */
+	void skipTo(int gen) {
+		genNum = gen;
+		if (history != null) history.record(this);
+		if (metrics != null) metrics.recordSkip(this);
+	}
+	
+	/*
+	 * Marks the tile holding the given location as changed, so that it and the tiles around it are worked out 
+	 * in the next generation. This has to be called after changing a cell of "board" directly.
+	 */
+	void markChanged(int x, int y) {
+		if (board.isValidLoc(x, y)) changed[(y >>> 6) * tileCols + (x >>> 6)] = true;
+		hashValid = false;
+		populationValid = false;
+	}
+	
+	/*
+	 * Returns whether the given tile may be different from how it was before the last call to nextGen(): either 
+	 * it changed in that generation, or it was marked as changed (by being changed directly) before it. After 
+	 * nextGen() the first is in "changed" and the second is still in "nextChanged", which is not written again 
+	 * until the next generation. 
+	 */
+	boolean wasTileChanged(int tileRow, int tileCol) {
+		int tile = tileRow * tileCols + tileCol;
+		return changed[tile] || nextChanged[tile];
+	}
+	
+	/*
+	 * Marks every tile as changed, so that the whole board is worked out in the next generation. This has to be 
+	 * called after changing many cells of "board" directly.
+	 */
+	void markAllChanged() {
+		Arrays.fill(changed, true);
+		hashValid = false;
+		populationValid = false;
 	}
 	
 	/*
@@ -145,30 +700,52 @@ public class GameOfLife {
 	 * Returns the status (or "type") of the Cell object at the given coordinates. 
 	 */
 	public int getStatus(int x, int y) {
-		return board.getPiece(x, y).getType();
+		return board.get(x, y);
 	}
 	
 	/*
 	 * Sets the status (or "type") of the Cell object at the given coordinates to the integer "status" the
-	 * user enters.
+	 * user enters. Since each cell is stored as a single bit, any status other than Cell.DEAD is stored as Cell.ALIVE.
 	 */
 	public void setStatus(int x, int y, int status) {
-		board.getPiece(x, y).setType(status);
+		if (!board.isValidLoc(x, y)) return;
+		long[] row = board.getRow(y);
+		int k = x >>> 6;
+		long before = row[k];
+		board.set(x, y, status);
+		long index = (long) y * tileCols + k;
+		hash ^= wordHash(index, before) ^ wordHash(index, row[k]);
+		population += Long.bitCount(row[k]) - Long.bitCount(before);
+		changed[(y >>> 6) * tileCols + k] = true;
+	}
+	
+	/*
+	 * Flips the cells of word k of row y of "board" that are set in "bits", keeping the hash and the population up 
+	 * to date and marking the word's tile as changed, just like setStatus() does for a single cell.
+	 */
+	void flipWord(int y, int k, long bits) {
+		long[] row = board.getRow(y);
+		long before = row[k];
+		row[k] = before ^ bits;
+		long index = (long) y * tileCols + k;
+		hash ^= wordHash(index, before) ^ wordHash(index, row[k]);
+		population += Long.bitCount(row[k]) - Long.bitCount(before);
+		changed[(y >>> 6) * tileCols + k] = true;
 	}
 	
 	/*
 	 * Returns true or false based on whether the Cell object at the given coordinates will be alive or dead in
-	 * the next generation. This method is based off of the rules for Conway's Game Of Life. 
+	 * the next generation. The 9 cells around and including it are packed into an int, which is looked up in the 
+	 * table of the game's Rule (Conway's rules unless setRule() was called). 
 	 */
 	public boolean willLive(int x, int y) {
-		if (this.getStatus(x, y) == Cell.ALIVE) {
-			if (this.countNeighbors(x, y) >= 4 || this.countNeighbors(x, y) <= 1) return false;
-			else return true;
-		}
-		else {
-			if (this.countNeighbors(x, y) >= 4 || this.countNeighbors(x, y) <= 1 || this.countNeighbors(x, y) == 2) return false;
-			else return true;
+		int neighborhood = 0;
+		for (int dy = -1; dy <= 1; dy++) {
+			for (int dx = -1; dx <= 1; dx++) {
+				neighborhood |= getWrapped(x + dx, y + dy) << ((dy + 1) * 3 + dx + 1);
+			}
 		}
+		return rule.next(neighborhood);
 	}
 	
 	/*
@@ -227,6 +804,54 @@ public class GameOfLife {
 		System.out.println(test3);
 		test3.clear();
 		System.out.println("The Board when cleared is: \n" + test3 + "with a generation number of " + test3.getGenNum());
+		
+		// Under HighLife (B36/S23), nextGen() agrees with willLive() for every cell of a random board. 
+		GameOfLife test4 = new GameOfLife(100, 150);
+		test4.setRule(Rule.parse("B36/S23"));
+		java.util.Random random = new java.util.Random(18);
+		for (int i = 0; i < 5000; i++) test4.setStatus(random.nextInt(150), random.nextInt(100), Cell.ALIVE);
+		boolean same = true;
+		for (int gen = 0; gen < 20; gen++) {
+			boolean[][] expected = new boolean[100][150];
+			for (int y = 0; y < 100; y++) {
+				for (int x = 0; x < 150; x++) expected[y][x] = test4.willLive(x, y);
+			}
+			test4.nextGen();
+			for (int y = 0; y < 100; y++) {
+				for (int x = 0; x < 150; x++) if (expected[y][x] != (test4.getStatus(x, y) == Cell.ALIVE)) same = false;
+			}
+		}
+		System.out.println("Under " + test4.getRule() + ", nextGen() matched willLive() for 20 generations: " + same);
+		
+		// On a torus a glider flies off one corner and comes back in the opposite one, and after 4 * 30 
+		// generations on a 30 x 30 torus it is back where it started. 
+		GameOfLife test5 = new GameOfLife(30, 30);
+		test5.setTopology(Topology.TORUS);
+		test5.setStatus(1, 0, Cell.ALIVE);
+		test5.setStatus(2, 1, Cell.ALIVE);
+		test5.setStatus(0, 2, Cell.ALIVE);
+		test5.setStatus(1, 2, Cell.ALIVE);
+		test5.setStatus(2, 2, Cell.ALIVE);
+		String start = test5.toString();
+		for (int i = 0; i < 120; i++) test5.nextGen();
+		System.out.println("On a torus the glider came back to where it started: " + test5.toString().equals(start));
+		
+		// On a Klein bottle, nextGen() agrees with willLive() everywhere, across all the edges. 
+		GameOfLife test6 = new GameOfLife(70, 130);
+		test6.setTopology(Topology.KLEIN_BOTTLE);
+		for (int i = 0; i < 3000; i++) test6.setStatus(random.nextInt(130), random.nextInt(70), Cell.ALIVE);
+		same = true;
+		for (int gen = 0; gen < 20; gen++) {
+			boolean[][] expected = new boolean[70][130];
+			for (int y = 0; y < 70; y++) {
+				for (int x = 0; x < 130; x++) expected[y][x] = test6.willLive(x, y);
+			}
+			test6.nextGen();
+			for (int y = 0; y < 70; y++) {
+				for (int x = 0; x < 130; x++) if (expected[y][x] != (test6.getStatus(x, y) == Cell.ALIVE)) same = false;
+			}
+		}
+		System.out.println("On a Klein bottle, nextGen() matched willLive() for 20 generations: " + same);
 
 	}
 	
@@ -11,30 +11,37 @@ import javax.swing.border.EmptyBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.JButton;
-import javax.swing.Timer;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 import javax.swing.JSlider;
+import javax.swing.SwingUtilities;
 import java.awt.event.MouseMotionAdapter;
 import javax.swing.ImageIcon;
 import javax.swing.Box;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Font;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /*
  * Displays generations of John Conway's Game of Life.
  * Allows a user of the program to step through one generation
- * at a time or to run the generations based on a timer.
+ * at a time or to run the generations continuously.
+ *
+ * The game is run by a Simulation on its own thread, so the buttons and the mouse
+ * submit their changes to the simulation instead of changing the game directly.
  */
 public class GameOfLifeDisplay extends JFrame {
 
 	private JPanel contentPane;
 	private JLabel txtGeneration = new JLabel();
-	private int delay = 100; // This instance is used to change the speed of the Timer.
+	private double rate = 10; // This instance is the number of generations per second, or 0 for as fast as possible.
 	private boolean draw = false; // This instance is used to check whether the Eraser Tool or Draw Tool is chosen by the user.
 	private boolean rainbow = false; // This SPECIAL instance is used to check whether the rainbow tool has been activated by the user.
 	private Color rainbowColor = Color.red; // This instance keeps track of the current color used in the rainbow tool.
+	private Point lastDrag; // This instance is where the mouse was when the view was last panned, while it is being dragged.
 	
 	/*
 	 * This method changes "rainbowColor" to the next corresponding Color. 
@@ -88,6 +95,41 @@ public class GameOfLifeDisplay extends JFrame {
 		boardPanel.setForeground(Color.BLACK);
 		boardPanel.setBackground(Color.BLACK);
 		
+		/*
+		 * Creates the Simulation that runs the game from now on. Each time it publishes a generation, the
+		 * generation number is updated and the BoardPanel is repainted on the event dispatch thread. If "rainbow"
+		 * is true, the foreground color of boardPanel is set to "rainbowColor" and then rainbowColorChange() is
+		 * called. At most one update is queued at a time, so generations that come faster than the window can
+		 * show them are skipped. When run with -Dgameoflife.metrics=SECONDS, every generation and paint is also
+		 * timed (see the Metrics class).
+		 */
+		Metrics metrics = Metrics.fromSystemProperty();
+		if (metrics != null) {
+			g.setMetrics(metrics);
+			((BoardPanel) boardPanel).setMetrics(metrics);
+		}
+		g.setHistory(new History());
+		Simulation simulation = new Simulation(g);
+		simulation.setTargetRate(rate);
+		((BoardPanel) boardPanel).setSimulation(simulation);
+		AtomicBoolean updateQueued = new AtomicBoolean();
+		simulation.setFrameListener(new Runnable() {
+			public void run() {
+				if (!updateQueued.compareAndSet(false, true)) return;
+				EventQueue.invokeLater(new Runnable() {
+					public void run() {
+						updateQueued.set(false);
+						txtGeneration.setText("Gen " + simulation.getPublishedGenNum());
+						if (rainbow) {
+							boardPanel.setForeground(rainbowColor);
+							rainbowColorChange();
+						}
+						boardPanel.repaint();
+					}
+				});
+			}
+		});
+		
 		/*
 		 * Creates the button panel
 		 */
@@ -98,24 +140,21 @@ public class GameOfLifeDisplay extends JFrame {
 		buttonPanel.add(verticalBox);
 		
 		/*
-		 * Creates a button that delegates to the "randomize()" method in the BoardPanel class. The BoardPanel
-		 * is then repainted. 
+		 * Creates a button that delegates to the "randomize()" method in the BoardPanel class, on the
+		 * simulation's thread.
 		 */
 		JButton btnRandomize = new JButton("Randomize");
 		btnRandomize.setFont(new Font("Times New Roman", Font.BOLD, 15));
 		buttonPanel.add(btnRandomize);
 		btnRandomize.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent arg0) {
-				((BoardPanel) boardPanel).randomize();
-				repaint();
+				simulation.submit(((BoardPanel) boardPanel)::randomize);
 			}
 		});
 		
 		/*
-		 * Creates a button that delegates to the "nextGen()" method in the GameOfLife class. The method also
-		 * updates "txtGeneration" to display the new generation number. If "rainbow" is true, then the 
-		 * method will set the foreground color of boardPanel to "rainbowColor" and then call "rainbowColorChange()". 
-		 * The BoardPanel is then repainted. 
+		 * Creates a button that has the simulation step the game by one generation. The new generation is
+		 * shown once the simulation publishes it.
 		 */
 		JButton nextGenButton = new JButton("Next Generation");
 		nextGenButton.setFont(new Font("Times New Roman", Font.BOLD, 15));
@@ -124,20 +163,30 @@ public class GameOfLifeDisplay extends JFrame {
 
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				g.nextGen();
-				txtGeneration.setText("Gen " + g.getGenNum());
-				if (rainbow) {
-					boardPanel.setForeground(rainbowColor);
-					rainbowColorChange();
-				}
-				repaint();
+				simulation.step();
 			}
 			
 		});
 		
 		/*
-		 * Creates a button that will delegate to "clear()" in the GameOfLife class, set "txtGeneration" back to "Gen 1", 
-		 * and then repaints the BoardPanel. 
+		 * Creates a button that has the simulation take the game back one generation, as far back as the game's 
+		 * History remembers. See "previousGen()" in the GameOfLife class.
+		 */
+		JButton previousGenButton = new JButton("Previous Generation");
+		previousGenButton.setFont(new Font("Times New Roman", Font.BOLD, 15));
+		buttonPanel.add(previousGenButton);
+		previousGenButton.addActionListener(new ActionListener(){
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				simulation.submit(g::previousGen);
+			}
+			
+		});
+		
+		/*
+		 * Creates a button that will delegate to "clear()" in the GameOfLife class, on the simulation's thread.
+		 * Once the cleared board is published, "txtGeneration" goes back to "Gen 1". 
 		 */
 		JButton btnClear = new JButton("Clear");
 		btnClear.setFont(new Font("Times New Roman", Font.BOLD, 15));
@@ -146,9 +195,7 @@ public class GameOfLifeDisplay extends JFrame {
 
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				g.clear();
-				txtGeneration.setText("Gen " + g.getGenNum());
-				repaint();
+				simulation.submit(g::clear);
 			}
 			
 		});
@@ -174,32 +221,21 @@ public class GameOfLifeDisplay extends JFrame {
 		});
 		
 		/*
-		 * creates a Timer and defines what will occur when
-		 * it is run when the user clicks the "start" button
-		 * 
-		 * Note that if "rainbow" is true, the foreground color of boardPaneil will be set to "rainbowColor" and
-		 * then rainbowColorChange() will be called. 
+		 * Creates a button that zooms the view back out to fit the whole board. The mouse wheel zooms in and out,
+		 * and dragging with the right mouse button pans.
 		 */
-		Timer timer = new Timer(delay, new ActionListener(){
-
-			@Override
+		JButton btnFit = new JButton("Fit");
+		btnFit.setFont(new Font("Times New Roman", Font.BOLD, 15));
+		buttonPanel.add(btnFit);
+		btnFit.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent arg0) {
-				// TODO what should happen each time the Timer is fired off
-				g.nextGen();
-				txtGeneration.setText("Gen " + g.getGenNum());
-				if (rainbow) {
-					boardPanel.setForeground(rainbowColor);
-					rainbowColorChange();
-				}
-				repaint();
+				((BoardPanel) boardPanel).fitToPanel();
 			}
-			
 		});
 		
-
 		/*
-		 * creates a button that allows the game to run on 
-		 * a timer. The label toggles between "Start" and "Stop"
+		 * creates a button that starts and stops the simulation
+		 * stepping the game. The label toggles between "Start" and "Stop"
 		 */
 		JButton startStopButton = new JButton("Start");
 		startStopButton.setFont(new Font("Times New Roman", Font.BOLD, 15));
@@ -210,13 +246,11 @@ public class GameOfLifeDisplay extends JFrame {
 			public void actionPerformed(ActionEvent arg0) {
 				if(startStopButton.getText().equals("Start")){
 					startStopButton.setText("Stop");
-					timer.start();
-					// TODO start the generations 
+					simulation.start();
 				}
 				else{
 					startStopButton.setText("Start");
-					timer.stop();
-					// TODO stop the generations
+					simulation.stop();
 				}
 				
 			}
@@ -231,15 +265,19 @@ public class GameOfLifeDisplay extends JFrame {
 		buttonPanel.add(lblSpeed);		
 		
 		/*
-		 * Creates a slider that is used to change the value of "delay" proportionally to the location of the slider, 
-		 * which is used in Timer. 
+		 * Creates a slider that is used to change "rate", the generations per second the simulation aims for. The
+		 * rate goes from 1 to 1000 generations per second across the slider, and the far right end runs the
+		 * simulation as fast as it can go. It starts out at the place for the starting "rate".
 		 */
 		JSlider slider = new JSlider();
+		if (rate == 0) slider.setValue(slider.getMaximum());
+		else slider.setValue((int) Math.round(Math.log(rate) / Math.log(1000) * (slider.getMaximum() - 1)));
 		buttonPanel.add(slider);
 		slider.addChangeListener(new ChangeListener() {
 			public void stateChanged(ChangeEvent e) {
-				delay = 2000 / (slider.getValue() + 1);
-				timer.setDelay(delay);
+				if (slider.getValue() == slider.getMaximum()) rate = 0;
+				else rate = Math.pow(1000, slider.getValue() / (double) (slider.getMaximum() - 1));
+				simulation.setTargetRate(rate);
 			}
 		});
 		
@@ -253,47 +291,56 @@ public class GameOfLifeDisplay extends JFrame {
 		/*
 		 * Creates a MouseEvent that checks to see if the user has dragged their mouse across one or more Cells. 
 		 * If "draw" is true, the Cell's status will become Cell.ALIVE. If false, the Cell's status will become
-		 * Cell.DEAD. The BoardPanel is then repainted. 
+		 * Cell.DEAD. The change is made on the simulation's thread. Dragging with any other button than the left
+		 * one pans the view instead.
 		 */
 		boardPanel.addMouseMotionListener(new MouseMotionAdapter() {
 			@Override
 			public void mouseDragged(MouseEvent arg0) {
+				if (!SwingUtilities.isLeftMouseButton(arg0)) {
+					if (lastDrag != null) ((BoardPanel) boardPanel).pan(arg0.getX() - lastDrag.x, arg0.getY() - lastDrag.y);
+					lastDrag = arg0.getPoint();
+					return;
+				}
+				Point cell = ((BoardPanel) boardPanel).getCellAt(arg0.getX(), arg0.getY());
+				if (cell == null) return;
 				if(draw) {
-					int scalex = (boardPanel.getWidth()) / g.getWidth();
-					int scaley = (boardPanel.getHeight()) / g.getHeight();
-
-					int x = arg0.getX() / scalex;
-					int y = arg0.getY() / scaley;
-					g.reviveCell(x, y);
-					repaint();
+					simulation.submit(() -> g.reviveCell(cell.x, cell.y));
 				}
 				else {
-					int scalex = (boardPanel.getWidth()) / g.getWidth();
-					int scaley = (boardPanel.getHeight()) / g.getHeight();
-
-					int x = arg0.getX() / scalex;
-					int y = arg0.getY() / scaley;
-					g.killCell(x, y);
-					repaint();
+					simulation.submit(() -> g.killCell(cell.x, cell.y));
 				}
 			}
 		});
 		
 		/* 
 		 * Creates a MouseEvent that checks to see if the user has clicked on a specific Cell. If the Cell was
-		 * previously alive, it will become dead, and vice versa. 
+		 * previously alive, it will become dead, and vice versa. Pressing any other button than the left one
+		 * starts panning the view.
 		 */
 		boardPanel.addMouseListener(new MouseAdapter() {
 			@Override
 			public void mousePressed(MouseEvent arg0) {
-				int scalex = (boardPanel.getWidth()) / g.getWidth();
-				int scaley = (boardPanel.getHeight()) / g.getHeight();
-				
-				int x = arg0.getX() / scalex;
-				int y = arg0.getY() / scaley;
-				g.toggleCell(x, y);
-				
-				repaint();
+				if (!SwingUtilities.isLeftMouseButton(arg0)) {
+					lastDrag = arg0.getPoint();
+					return;
+				}
+				Point cell = ((BoardPanel) boardPanel).getCellAt(arg0.getX(), arg0.getY());
+				if (cell != null) simulation.submit(() -> g.toggleCell(cell.x, cell.y));
+			}
+			
+			@Override
+			public void mouseReleased(MouseEvent arg0) {
+				lastDrag = null;
+			}
+		});
+		
+		/*
+		 * Creates a MouseEvent that zooms the view in or out around the mouse when the mouse wheel is turned.
+		 */
+		boardPanel.addMouseWheelListener(new MouseWheelListener() {
+			public void mouseWheelMoved(MouseWheelEvent arg0) {
+				((BoardPanel) boardPanel).zoomAt(Math.pow(1.25, -arg0.getPreciseWheelRotation()), arg0.getX(), arg0.getY());
 			}
 		});
 		
@@ -411,49 +458,13 @@ public class GameOfLifeDisplay extends JFrame {
 		colorPanel.add(btnBlack);
 		
 		/*
-		 * Creates a button that will create a "glider gun" in specific coordinates. The BoardPanel is 
-		 * then repainted.
+		 * Creates a button that will stamp a "glider gun" from the PatternLibrary at specific coordinates, on the 
+		 * simulation's thread.
 		 */
 		JButton btnGliderGun = new JButton("GLIDER GUN");
 		btnGliderGun.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				g.setStatus(3, 7, Cell.ALIVE);
-				g.setStatus(3, 8, Cell.ALIVE);
-				g.setStatus(4, 7, Cell.ALIVE);
-				g.setStatus(4, 8, Cell.ALIVE);
-				g.setStatus(13, 7, Cell.ALIVE);
-				g.setStatus(13, 8, Cell.ALIVE);
-				g.setStatus(13, 9, Cell.ALIVE);
-				g.setStatus(14, 6, Cell.ALIVE);
-				g.setStatus(14, 10, Cell.ALIVE);
-				g.setStatus(15, 5, Cell.ALIVE);
-				g.setStatus(16, 5, Cell.ALIVE);
-				g.setStatus(15, 11, Cell.ALIVE);
-				g.setStatus(16, 11, Cell.ALIVE);
-				g.setStatus(17, 8, Cell.ALIVE);
-				g.setStatus(18, 6, Cell.ALIVE);
-				g.setStatus(18, 10, Cell.ALIVE);
-				g.setStatus(19, 7, Cell.ALIVE);
-				g.setStatus(19, 8, Cell.ALIVE);
-				g.setStatus(19, 9, Cell.ALIVE);
-				g.setStatus(20, 8, Cell.ALIVE);
-				g.setStatus(23, 7, Cell.ALIVE);
-				g.setStatus(23, 6, Cell.ALIVE);
-				g.setStatus(23, 5, Cell.ALIVE);
-				g.setStatus(24, 7, Cell.ALIVE);
-				g.setStatus(24, 6, Cell.ALIVE);
-				g.setStatus(24, 5, Cell.ALIVE);
-				g.setStatus(25, 4, Cell.ALIVE);
-				g.setStatus(25, 8, Cell.ALIVE);
-				g.setStatus(27, 4, Cell.ALIVE);
-				g.setStatus(27, 3, Cell.ALIVE);
-				g.setStatus(27, 9, Cell.ALIVE);
-				g.setStatus(27, 8, Cell.ALIVE);
-				g.setStatus(37, 5, Cell.ALIVE);
-				g.setStatus(37, 6, Cell.ALIVE);
-				g.setStatus(38, 5, Cell.ALIVE);
-				g.setStatus(38, 6, Cell.ALIVE);
-				repaint();
+				simulation.submit(() -> PatternLibrary.get("gosper glider gun").stamp(g, 3, 3));
 			}
 		});
 		btnGliderGun.setFont(new Font("Times New Roman", Font.BOLD, 15));
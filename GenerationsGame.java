@@ -0,0 +1,401 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class GenerationsGame {
+
+	/*
+	 * This class runs a board under a GenerationsRule, where a cell can be in more states than dead or alive. Each
+	 * cell is one byte of a single byte[] grid, row after row, which is the smallest a cell with up to 256 states can
+	 * be while still being read and written directly. A second grid, "next", is the back buffer each new generation
+	 * is written into before the two are swapped, as in GameOfLife.
+	 *
+	 * The grid has a border one cell wide all the way around the board (so each row is "stride" = width + 2 bytes
+	 * long). For dead edges the border is always 0; for the other topologies it is filled in with the cells across
+	 * the opposite edges once per generation, the same way GameOfLife fills in its halo. The stepping loop then
+	 * reads the cells around every cell with no bounds checks.
+	 *
+	 * A generation is worked out a row at a time. Each cell adds up the living cells of its own column of the three
+	 * rows around it and reuses the sums of the two columns beside it from the cells before it, which gives the
+	 * living cells in its 3 x 3 block with a few additions instead of eight lookups, and its next state is one lookup
+	 * in the rule's table. After setParallelism() the rows are split into bands worked out on a ForkJoinPool.
+	 *
+	 * There are tests run at the end.
+	 */
+	private static final byte[] IS_ALIVE = new byte[256];
+
+	static {
+		IS_ALIVE[1] = 1;
+	}
+
+	private int height;
+	private int width;
+	private int stride;
+	private byte[] cells;
+	private byte[] next;
+	private GenerationsRule rule;
+	private Topology topology = Topology.DEAD;
+	private int genNum = 1;
+	private ForkJoinPool pool;
+	private RowBand[] bands;
+	private RowBand wholeBoard;
+	private StepTask stepTask;
+
+	/*
+	 * Constructs a GenerationsGame with every cell dead, given the height and width of the board and its rule.
+	 */
+	public GenerationsGame(int height, int width, GenerationsRule rule) {
+		if (height <= 0 || width <= 0) throw new IllegalArgumentException("Board dimensions must be positive: " + height + " x " + width);
+		this.height = height;
+		this.width = width;
+		this.rule = rule;
+		stride = width + 2;
+		cells = new byte[(height + 2) * stride];
+		next = new byte[(height + 2) * stride];
+		wholeBoard = new RowBand(1, height + 1);
+	}
+
+	/*
+	 * Updates the board to the next generation and increases "genNum" by 1.
+	 */
+	public void nextGen() {
+		refreshHalo();
+		if (pool == null) wholeBoard.compute();
+		else {
+			stepTask.reinitialize();
+			pool.invoke(stepTask);
+		}
+		byte[] temp = cells;
+		cells = next;
+		next = temp;
+		genNum++;
+	}
+
+	/*
+	 * Works out the next generation of rows "from" up to (but not including) "to" of the grid into "next". Which
+	 * cells of a row are alive is only worked out once, into one of the three arrays of "band", and then used for
+	 * the row above it, the row itself and the row below it in turn.
+	 */
+	private void nextRows(int from, int to, RowBand band) {
+		byte[] cells = this.cells, next = this.next;
+		byte[] table = rule.getTable();
+		int stride = this.stride;
+		byte[] above = band.above, row = band.row, below = band.below;
+		aliveOf(from - 1, above);
+		aliveOf(from, row);
+		for (int y = from; y < to; y++) {
+			aliveOf(y + 1, below);
+			int start = y * stride;
+			int left = above[0] + row[0] + below[0];
+			int middle = above[1] + row[1] + below[1];
+			for (int x = 1; x < stride - 1; x++) {
+				int right = above[x + 1] + row[x + 1] + below[x + 1];
+				next[start + x] = table[(cells[start + x] & 0xFF) * 10 + left + middle + right];
+				left = middle;
+				middle = right;
+			}
+			byte[] temp = above;
+			above = row;
+			row = below;
+			below = temp;
+		}
+	}
+
+	/*
+	 * Fills in "alive" with a 1 for every cell of row y of the grid (border included) that is alive, and a 0 for
+	 * every other cell.
+	 */
+	private void aliveOf(int y, byte[] alive) {
+		int start = y * stride;
+		for (int x = 0; x < stride; x++) alive[x] = IS_ALIVE[cells[start + x] & 0xFF];
+	}
+
+	/*
+	 * Fills in the border of the grid with the cells across the opposite edges, as the topology says. With dead
+	 * edges the border is left at 0.
+	 */
+	private void refreshHalo() {
+		if (!topology.wraps()) return;
+		int last = height * stride;
+		if (topology == Topology.TORUS) {
+			System.arraycopy(cells, last + 1, cells, 1, width);
+			System.arraycopy(cells, stride + 1, cells, last + stride + 1, width);
+		}
+		else {
+			for (int x = 0; x < width; x++) {
+				cells[1 + x] = cells[last + width - x];
+				cells[last + stride + 1 + x] = cells[stride + width - x];
+			}
+		}
+		for (int y = 0; y < height + 2; y++) {
+			int row = y * stride;
+			cells[row] = cells[row + width];
+			cells[row + width + 1] = cells[row + 1];
+		}
+	}
+
+	/*
+	 * Sets how the edges of the board meet (see Topology).
+	 */
+	public void setTopology(Topology t) {
+		topology = t;
+		if (!t.wraps()) {
+			clearBorder(cells);
+			clearBorder(next);
+		}
+	}
+
+	/*
+	 * Sets the border of the given grid back to dead cells.
+	 */
+	private void clearBorder(byte[] grid) {
+		Arrays.fill(grid, 0, stride, (byte) 0);
+		Arrays.fill(grid, (height + 1) * stride, (height + 2) * stride, (byte) 0);
+		for (int y = 1; y <= height; y++) {
+			grid[y * stride] = 0;
+			grid[y * stride + width + 1] = 0;
+		}
+	}
+
+	/*
+	 * Returns how the edges of the board meet.
+	 */
+	public Topology getTopology() {
+		return topology;
+	}
+
+	/*
+	 * Sets the rule that the following generations are worked out with. Cells in states the new rule does not
+	 * have are set to dead.
+	 */
+	public void setRule(GenerationsRule r) {
+		if (r.getStates() < rule.getStates()) {
+			for (int i = 0; i < cells.length; i++) {
+				if ((cells[i] & 0xFF) >= r.getStates()) cells[i] = 0;
+			}
+		}
+		rule = r;
+	}
+
+	/*
+	 * Returns the rule that generations are worked out with.
+	 */
+	public GenerationsRule getRule() {
+		return rule;
+	}
+
+	/*
+	 * Sets the number of threads used to work out each generation, the same way as GameOfLife.setParallelism().
+	 */
+	public void setParallelism(int parallelism) {
+		if (pool != null) pool.shutdown();
+		pool = null;
+		bands = null;
+		stepTask = null;
+		if (parallelism <= 1) return;
+		int bandCount = Math.min(height, parallelism * 4);
+		bands = new RowBand[bandCount];
+		for (int i = 0; i < bandCount; i++) {
+			bands[i] = new RowBand(1 + height * i / bandCount, 1 + height * (i + 1) / bandCount);
+		}
+		pool = new ForkJoinPool(parallelism);
+		stepTask = new StepTask();
+	}
+
+	/*
+	 * A task that works out one band of rows of the next generation, with its own arrays for the living cells of
+	 * three rows.
+	 */
+	private class RowBand extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private byte[] above = new byte[stride];
+		private byte[] row = new byte[stride];
+		private byte[] below = new byte[stride];
+
+		RowBand(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			nextRows(from, to, this);
+		}
+	}
+
+	/*
+	 * The task handed to "pool" for each generation. It runs every band and waits for all of them to finish.
+	 */
+	private class StepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		protected void compute() {
+			for (int i = 0; i < bands.length; i++) {
+				bands[i].reinitialize();
+			}
+			invokeAll(bands);
+		}
+	}
+
+	/*
+	 * Returns the state of the cell at the given location, from 0 (dead) to one less than the number of states of
+	 * the rule. A location that is not on the board is dead.
+	 */
+	public int getStatus(int x, int y) {
+		if (!isValidLoc(x, y)) return Cell.DEAD;
+		return cells[(y + 1) * stride + x + 1] & 0xFF;
+	}
+
+	/*
+	 * Sets the state of the cell at the given location. Locations that are not on the board are ignored.
+	 */
+	public void setStatus(int x, int y, int state) {
+		if (!isValidLoc(x, y)) return;
+		if (state < 0 || state >= rule.getStates()) throw new IllegalArgumentException(rule + " has no state " + state);
+		cells[(y + 1) * stride + x + 1] = (byte) state;
+	}
+
+	/*
+	 * Returns whether the given coordinates are on the board.
+	 */
+	public boolean isValidLoc(int x, int y) {
+		return (x >= 0 && y >= 0 && x < width && y < height);
+	}
+
+	/*
+	 * Returns the states of the cells of row y, in the bytes from getRowOffset(y) to getRowOffset(y) + width - 1
+	 * of the array returned. The array is the game's own grid, not a copy, and only holds the current generation
+	 * until the next one is worked out.
+	 */
+	byte[] getGrid() {
+		return cells;
+	}
+
+	/*
+	 * Returns where cell 0 of row y is in the array returned by getGrid().
+	 */
+	int getRowOffset(int y) {
+		return (y + 1) * stride + 1;
+	}
+
+	/*
+	 * Sets every cell to dead and "genNum" back to 1.
+	 */
+	public void clear() {
+		Arrays.fill(cells, (byte) 0);
+		genNum = 1;
+	}
+
+	/*
+	 * Returns the number of living cells (those in state 1).
+	 */
+	public long getPopulation() {
+		long count = 0;
+		for (int y = 0; y < height; y++) {
+			int row = getRowOffset(y);
+			for (int x = 0; x < width; x++) count += IS_ALIVE[cells[row + x] & 0xFF];
+		}
+		return count;
+	}
+
+	public int getGenNum() {
+		return genNum;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	/*
+	 * Returns the board as a String in the same format as GameOfLife, with each cell's state between braces.
+	 */
+	public String toString() {
+		StringBuilder result = new StringBuilder(height * (width * 3 + 1));
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				result.append('{').append(getStatus(x, y)).append('}');
+			}
+			result.append('\n');
+		}
+		return result.toString();
+	}
+
+	/*
+	 * Works out the next state of the cell at the given location one neighbor at a time, for testing nextGen(). The
+	 * cells past the edges are dead.
+	 */
+	private int nextSlowly(int x, int y) {
+		int count = 0;
+		for (int dy = -1; dy <= 1; dy++) {
+			for (int dx = -1; dx <= 1; dx++) {
+				if ((dx != 0 || dy != 0) && getStatus(x + dx, y + dy) == Cell.ALIVE) count++;
+			}
+		}
+		int state = getStatus(x, y);
+		Rule life = rule.getLifeRule();
+		if (state == 0) return life.isBorn(count) ? 1 : 0;
+		if (state == 1 && life.survives(count)) return 1;
+		return (state + 1) % rule.getStates();
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) {
+		String[] rules = {"B2/S/C3", "345/2/4", "B3/S23/C2", "B34/S12345/C6"};
+		for (int r = 0; r < rules.length; r++) {
+			GenerationsRule rule = GenerationsRule.parse(rules[r]);
+			GenerationsGame game = new GenerationsGame(90, 130, rule);
+			java.util.Random random = new java.util.Random(20 + r);
+			for (int i = 0; i < 4000; i++) game.setStatus(random.nextInt(130), random.nextInt(90), random.nextInt(rule.getStates()));
+			game.setParallelism((r % 2 == 0) ? 1 : 3);
+			boolean same = true;
+			for (int gen = 0; gen < 30; gen++) {
+				int[][] expected = new int[90][130];
+				for (int y = 0; y < 90; y++) {
+					for (int x = 0; x < 130; x++) expected[y][x] = game.nextSlowly(x, y);
+				}
+				game.nextGen();
+				for (int y = 0; y < 90; y++) {
+					for (int x = 0; x < 130; x++) if (game.getStatus(x, y) != expected[y][x]) same = false;
+				}
+			}
+			game.setParallelism(1);
+			System.out.println("Under " + rule + ", nextGen() matched a cell by cell count for 30 generations: " + same);
+		}
+
+		// A life-like rule with 2 states runs the same as GameOfLife, on a torus too.
+		GameOfLife life = new GameOfLife(100, 100);
+		GenerationsGame asGenerations = new GenerationsGame(100, 100, GenerationsRule.parse("B3/S23/C2"));
+		life.setTopology(Topology.TORUS);
+		asGenerations.setTopology(Topology.TORUS);
+		java.util.Random random = new java.util.Random(20);
+		for (int i = 0; i < 3000; i++) {
+			int x = random.nextInt(100), y = random.nextInt(100);
+			life.setStatus(x, y, Cell.ALIVE);
+			asGenerations.setStatus(x, y, Cell.ALIVE);
+		}
+		for (int i = 0; i < 100; i++) {
+			life.nextGen();
+			asGenerations.nextGen();
+		}
+		System.out.println("B3/S23/C2 on a torus matches GameOfLife after 100 generations: " + asGenerations.toString().equals(life.toString()));
+
+		GenerationsGame brain = new GenerationsGame(2000, 2000, GenerationsRule.BRIANS_BRAIN);
+		for (int i = 0; i < 1000000; i++) brain.setStatus(random.nextInt(2000), random.nextInt(2000), Cell.ALIVE);
+		for (int i = 0; i < 10; i++) brain.nextGen();
+		int gens = 50;
+		long start = System.nanoTime();
+		for (int i = 0; i < gens; i++) brain.nextGen();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Brian's Brain on 2000 x 2000 runs at about " + (long) (gens * 4e6 / seconds / 1e6) + " million cell updates per second, with "
+				+ brain.getPopulation() + " cells alive");
+	}
+
+}
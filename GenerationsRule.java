@@ -0,0 +1,153 @@
+public class GenerationsRule {
+
+	/*
+	 * This class is a rule of the "Generations" family, which adds dying states to a life-like Rule. A cell is dead
+	 * (state 0), alive (state 1) or dying (states 2 and up). Dead cells are born and living cells survive just like
+	 * under the life-like rule, counting only the living neighbors, but a living cell that does not survive starts
+	 * dying instead of dying at once: it goes up one state every generation until it passes the last state and is
+	 * dead again. Dying cells cannot be born and do not count as neighbors, which is what makes the patterns of
+	 * these rules leave trails behind them.
+	 *
+	 * A rulestring gives the birth and survival counts and the number of states, as "B2/S/C3" (Brian's Brain) or in
+	 * the older survival/birth/states form "/2/3". Star Wars is "345/2/4". With 2 states, a Generations rule is just
+	 * its life-like rule.
+	 *
+	 * The rule is worked out once into a table of the next state for every state and every count of living cells
+	 * in the 3 x 3 block around a cell (counting the cell itself), which is all GenerationsGame looks up.
+	 *
+	 * There are tests run at the end.
+	 */
+	public static final int MAX_STATES = 256;
+	public static final GenerationsRule BRIANS_BRAIN = parse("B2/S/C3");
+
+	private final Rule life;
+	private final int states;
+	private final byte[] table;
+
+	/*
+	 * Constructs a GenerationsRule from its life-like rule and its number of states.
+	 */
+	private GenerationsRule(Rule life, int states) {
+		if (states < 2 || states > MAX_STATES) throw new IllegalArgumentException("The number of states must be from 2 to " + MAX_STATES + ": " + states);
+		this.life = life;
+		this.states = states;
+		table = new byte[states * 10];
+		for (int count = 0; count <= 9; count++) {
+			table[count] = (byte) (life.isBorn(count) ? 1 : 0);
+			if (count > 0) table[10 + count] = (byte) (life.survives(count - 1) ? 1 : nextState(1));
+			for (int state = 2; state < states; state++) table[state * 10 + count] = (byte) nextState(state);
+		}
+	}
+
+	/*
+	 * Returns the state a living or dying cell goes to when it does not survive.
+	 */
+	private int nextState(int state) {
+		return (state + 1 < states) ? state + 1 : 0;
+	}
+
+	/*
+	 * Returns the GenerationsRule for the given rulestring, in the "B2/S/C3" form (upper or lower case, in any
+	 * order, with "G" also accepted for the states) or the "/2/3" survival/birth/states form.
+	 */
+	public static GenerationsRule parse(String rulestring) {
+		String text = rulestring.trim().toUpperCase();
+		String[] parts = text.split("/", -1);
+		if (parts.length != 3) throw new IllegalArgumentException("Not a Generations rulestring: " + rulestring);
+		String birth = null, survival = null, states = null;
+		if (text.indexOf('B') >= 0 || text.indexOf('S') >= 0 || text.indexOf('C') >= 0 || text.indexOf('G') >= 0) {
+			for (int i = 0; i < 3; i++) {
+				if (parts[i].isEmpty()) throw new IllegalArgumentException("Not a Generations rulestring: " + rulestring);
+				char letter = parts[i].charAt(0);
+				String digits = parts[i].substring(1);
+				if (letter == 'B') birth = digits;
+				else if (letter == 'S') survival = digits;
+				else if (letter == 'C' || letter == 'G') states = digits;
+			}
+		}
+		else {
+			survival = parts[0];
+			birth = parts[1];
+			states = parts[2];
+		}
+		if (birth == null || survival == null || states == null || states.isEmpty()) {
+			throw new IllegalArgumentException("Not a Generations rulestring: " + rulestring);
+		}
+		int count;
+		try {
+			count = Integer.parseInt(states);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a Generations rulestring: " + rulestring);
+		}
+		return new GenerationsRule(Rule.parse("B" + birth + "/S" + survival), count);
+	}
+
+	/*
+	 * Returns the state that a cell in the given state goes to, when the 3 x 3 block around it (the cell itself
+	 * included) holds the given number of living cells.
+	 */
+	public int next(int state, int count) {
+		return table[state * 10 + count];
+	}
+
+	/*
+	 * Returns the table that next() looks in, indexed by state * 10 + count. The array is the rule's own, not a
+	 * copy, so it must not be changed.
+	 */
+	byte[] getTable() {
+		return table;
+	}
+
+	/*
+	 * Returns the life-like rule giving the birth and survival counts.
+	 */
+	public Rule getLifeRule() {
+		return life;
+	}
+
+	/*
+	 * Returns the number of states, counting dead and alive.
+	 */
+	public int getStates() {
+		return states;
+	}
+
+	/*
+	 * Returns the rulestring in the "B2/S/C3" form.
+	 */
+	public String toString() {
+		return life + "/C" + states;
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof GenerationsRule)) return false;
+		GenerationsRule rule = (GenerationsRule) other;
+		return life.equals(rule.life) && states == rule.states;
+	}
+
+	public int hashCode() {
+		return life.hashCode() * 257 + states;
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) {
+		System.out.println("/2/3 reads as " + parse("/2/3") + ", 345/2/4 as " + parse("345/2/4") + " and c3/b2/s as " + parse("c3/b2/s"));
+		System.out.println("Brian's Brain has " + BRIANS_BRAIN.getStates() + " states; a living cell with 2 neighbors goes to state "
+				+ BRIANS_BRAIN.next(1, 3) + " (should be 2), a dying one to " + BRIANS_BRAIN.next(2, 3) + " (should be 0), and a dead one with 2 to "
+				+ BRIANS_BRAIN.next(0, 2) + " (should be 1)");
+		GenerationsRule starWars = parse("345/2/4");
+		System.out.println("Under Star Wars a living cell with 4 neighbors stays " + starWars.next(1, 5) + " (should be 1), with 2 goes to "
+				+ starWars.next(1, 3) + " (should be 2), and state 3 goes to " + starWars.next(3, 0) + " (should be 0)");
+		try {
+			parse("B2/S/C1");
+			System.out.println("B2/S/C1 should not have been read!");
+		}
+		catch (IllegalArgumentException e) {
+			System.out.println("B2/S/C1 is rejected: " + e.getMessage());
+		}
+	}
+
+}
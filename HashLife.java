@@ -0,0 +1,520 @@
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+public class HashLife {
+
+	/*
+	 * This class is a HashLife engine for the Game Of Life, which can jump a pattern millions of generations ahead
+	 * instead of stepping it one generation at a time. The universe is stored as a quadtree: a Node of level L is a
+	 * square of 2^L x 2^L cells made of four Nodes of level L - 1, and a Node of level 0 is a single cell. Nodes are
+	 * canonical (there is only ever one Node for each arrangement of children, kept in "nodes"), so repeated parts
+	 * of a pattern share memory, and each Node remembers the result of advancing its center, so repeated work is
+	 * only ever done once.
+	 *
+	 * Unlike GameOfLife, the universe has no edges: patterns can grow as far as they like. The number of Nodes kept
+	 * is bounded by "maxNodes". When a step leaves more Nodes than that, the remembered results are thrown away and
+	 * every Node that is no longer part of the current pattern is dropped.
+	 *
+	 * Any Rule can be used except one where empty cells are born (B0), since then empty space would not stay empty
+	 * and the universe could not be unbounded. Changing the Rule throws away the remembered results.
+	 *
+	 * There are tests run at the end.
+	 */
+	public static final int DEFAULT_MAX_NODES = 4000000;
+
+	private HashMap<Node, Node> nodes = new HashMap<Node, Node>();
+	private Node[] emptyNodes = new Node[64];
+	private Node dead;
+	private Node alive;
+	private Node root;
+	private long originX;
+	private long originY;
+	private long generation;
+	private int maxNodes;
+	private Rule rule = Rule.CONWAY;
+
+	/*
+	 * Constructs an empty HashLife universe that keeps at most DEFAULT_MAX_NODES Nodes between steps.
+	 */
+	public HashLife() {
+		this(DEFAULT_MAX_NODES);
+	}
+
+	/*
+	 * Constructs an empty HashLife universe that keeps at most "maxNodes" Nodes between steps.
+	 */
+	public HashLife(int maxNodes) {
+		this.maxNodes = maxNodes;
+		dead = intern(new Node(0));
+		alive = intern(new Node(1));
+		root = emptyNode(3);
+		generation = 1;
+	}
+
+	/*
+	 * Constructs a HashLife universe holding the living cells of the given GameOfLife, starting at its generation
+	 * number. Cell (x, y) of the game becomes cell (x, y) of the universe.
+	 */
+	public HashLife(GameOfLife game) {
+		this();
+		int side = Math.max(game.getHeight(), game.getWidth());
+		int level = 3;
+		while ((1L << level) < side) level++;
+		setRule(game.getRule());
+		root = build(game, 0, 0, level);
+		originX = 0;
+		originY = 0;
+		generation = game.getGenNum();
+	}
+
+	/*
+	 * Advances the universe by the given number of generations. The steps are taken in powers of two (one for each
+	 * bit of "generations"), each of which costs about as much as a single generation would, no matter how large.
+	 */
+	public void advance(long generations) {
+		if (generations < 0) throw new IllegalArgumentException("Cannot advance by a negative number of generations: " + generations);
+		for (int k = 0; generations != 0; k++) {
+			if ((generations & 1) != 0) step(k);
+			generations >>>= 1;
+		}
+	}
+
+	/*
+	 * Advances the universe by 2^k generations.
+	 */
+	private void step(int k) {
+		while (root.level < k + 3 || !isCentered()) expand();
+		Node result = successor(root, k);
+		long quarter = 1L << (root.level - 2);
+		originX += quarter;
+		originY += quarter;
+		root = result;
+		generation += 1L << k;
+		if (nodes.size() > maxNodes) collect();
+	}
+
+	/*
+	 * Returns whether every living cell of "root" is inside its central square of a quarter of the width. The
+	 * result of successor(root, k) is the central square of half the width, and with k at most root.level - 3 the
+	 * pattern cannot spread more than 2^k, an eighth of the width, in that time. So a pattern inside the central
+	 * quarter stays inside the central half, and nothing that would have come back in from outside it is lost.
+	 */
+	private boolean isCentered() {
+		if (root.level < 3) return false;
+		Node center = centeredSubnode(root);
+		return centeredSubnode(center).population == root.population;
+	}
+
+	/*
+	 * Surrounds "root" with empty space, doubling its width while keeping the pattern in the middle.
+	 */
+	private void expand() {
+		Node border = emptyNode(root.level - 1);
+		Node nw = join(border, border, border, root.nw);
+		Node ne = join(border, border, root.ne, border);
+		Node sw = join(border, root.sw, border, border);
+		Node se = join(root.se, border, border, border);
+		long half = 1L << (root.level - 1);
+		originX -= half;
+		originY -= half;
+		root = join(nw, ne, sw, se);
+	}
+
+	/*
+	 * Returns the central square of the given Node (of half its width), advanced by 2^j generations. The Node must
+	 * be at least level 2 and "j" can be at most its level - 2.
+	 */
+	private Node successor(Node node, int j) {
+		if (node.population == 0) return emptyNode(node.level - 1);
+		if (node.result != null && node.resultStep == j) return node.result;
+		Node result;
+		if (node.level == 2) {
+			result = baseCase(node);
+		}
+		else {
+			Node n00 = node.nw;
+			Node n01 = centeredHorizontal(node.nw, node.ne);
+			Node n02 = node.ne;
+			Node n10 = centeredVertical(node.nw, node.sw);
+			Node n11 = centeredSubnode(node);
+			Node n12 = centeredVertical(node.ne, node.se);
+			Node n20 = node.sw;
+			Node n21 = centeredHorizontal(node.sw, node.se);
+			Node n22 = node.se;
+			if (j == node.level - 2) {
+				int half = node.level - 3;
+				n00 = successor(n00, half);
+				n01 = successor(n01, half);
+				n02 = successor(n02, half);
+				n10 = successor(n10, half);
+				n11 = successor(n11, half);
+				n12 = successor(n12, half);
+				n20 = successor(n20, half);
+				n21 = successor(n21, half);
+				n22 = successor(n22, half);
+				result = join(successor(join(n00, n01, n10, n11), half),
+						successor(join(n01, n02, n11, n12), half),
+						successor(join(n10, n11, n20, n21), half),
+						successor(join(n11, n12, n21, n22), half));
+			}
+			else {
+				n00 = centeredSubnode(n00);
+				n01 = centeredSubnode(n01);
+				n02 = centeredSubnode(n02);
+				n10 = centeredSubnode(n10);
+				n11 = centeredSubnode(n11);
+				n12 = centeredSubnode(n12);
+				n20 = centeredSubnode(n20);
+				n21 = centeredSubnode(n21);
+				n22 = centeredSubnode(n22);
+				result = join(successor(join(n00, n01, n10, n11), j),
+						successor(join(n01, n02, n11, n12), j),
+						successor(join(n10, n11, n20, n21), j),
+						successor(join(n11, n12, n21, n22), j));
+			}
+		}
+		node.result = result;
+		node.resultStep = j;
+		return result;
+	}
+
+	/*
+	 * Works out the central 2x2 cells of a 4x4 Node one generation ahead using the Rule. The 16 cells are packed
+	 * into an int (bit y * 4 + x holds cell (x, y)) so each neighborhood is a few bit operations.
+	 */
+	private Node baseCase(Node node) {
+		int bits = 0;
+		for (int y = 0; y < 4; y++) {
+			for (int x = 0; x < 4; x++) {
+				bits |= cellOf(node, x, y) << (y * 4 + x);
+			}
+		}
+		return join(nextCell(bits, 1, 1), nextCell(bits, 2, 1), nextCell(bits, 1, 2), nextCell(bits, 2, 2));
+	}
+
+	/*
+	 * Returns the leaf Node for cell (x, y) of a packed 4x4 square one generation ahead. The three rows of its
+	 * neighborhood are three bits each of the square, which together are one lookup in the Rule's table.
+	 */
+	private Node nextCell(int bits, int x, int y) {
+		int corner = (y - 1) * 4 + x - 1;
+		int neighborhood = ((bits >>> corner) & 7) | (((bits >>> (corner + 4)) & 7) << 3) | (((bits >>> (corner + 8)) & 7) << 6);
+		return rule.next(neighborhood) ? alive : dead;
+	}
+
+	/*
+	 * Returns the status of cell (x, y) of a 4x4 Node.
+	 */
+	private int cellOf(Node node, int x, int y) {
+		Node quadrant = (y < 2) ? ((x < 2) ? node.nw : node.ne) : ((x < 2) ? node.sw : node.se);
+		Node leaf = ((y & 1) == 0) ? (((x & 1) == 0) ? quadrant.nw : quadrant.ne) : (((x & 1) == 0) ? quadrant.sw : quadrant.se);
+		return (int) leaf.population;
+	}
+
+	/*
+	 * Returns the square of half the width at the center of the given Node.
+	 */
+	private Node centeredSubnode(Node node) {
+		return join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+	}
+
+	/*
+	 * Returns the square of the same size straddling the border between two Nodes that sit side by side.
+	 */
+	private Node centeredHorizontal(Node west, Node east) {
+		return join(west.ne, east.nw, west.se, east.sw);
+	}
+
+	/*
+	 * Returns the square of the same size straddling the border between two Nodes that sit one above the other.
+	 */
+	private Node centeredVertical(Node north, Node south) {
+		return join(north.sw, north.se, south.nw, south.ne);
+	}
+
+	/*
+	 * Returns the canonical Node made of the four given quadrants, creating it if it does not exist yet.
+	 */
+	private Node join(Node nw, Node ne, Node sw, Node se) {
+		return intern(new Node(nw, ne, sw, se));
+	}
+
+	/*
+	 * Returns the canonical copy of the given Node, adding it to "nodes" if it is new.
+	 */
+	private Node intern(Node node) {
+		Node existing = nodes.get(node);
+		if (existing != null) return existing;
+		nodes.put(node, node);
+		return node;
+	}
+
+	/*
+	 * Returns the canonical Node of the given level that has no living cells.
+	 */
+	private Node emptyNode(int level) {
+		if (emptyNodes[level] == null) {
+			if (level == 0) emptyNodes[level] = dead;
+			else {
+				Node child = emptyNode(level - 1);
+				emptyNodes[level] = join(child, child, child, child);
+			}
+		}
+		return emptyNodes[level];
+	}
+
+	/*
+	 * Builds the Node of the given level whose top-left cell is cell (x, y) of the game.
+	 */
+	private Node build(GameOfLife game, int x, int y, int level) {
+		if (x >= game.getWidth() || y >= game.getHeight()) return emptyNode(level);
+		if (level == 0) return (game.getStatus(x, y) == Cell.ALIVE) ? alive : dead;
+		int half = 1 << (level - 1);
+		return join(build(game, x, y, level - 1), build(game, x + half, y, level - 1),
+				build(game, x, y + half, level - 1), build(game, x + half, y + half, level - 1));
+	}
+
+	/*
+	 * Throws away every remembered result and drops every Node that is not part of the current pattern, so that
+	 * the memory used stays within "maxNodes".
+	 */
+	private void collect() {
+		HashMap<Node, Node> kept = new HashMap<Node, Node>();
+		IdentityHashMap<Node, Boolean> visited = new IdentityHashMap<Node, Boolean>();
+		keep(dead, kept, visited);
+		keep(alive, kept, visited);
+		for (int i = 0; i < emptyNodes.length; i++) {
+			if (emptyNodes[i] != null) keep(emptyNodes[i], kept, visited);
+		}
+		keep(root, kept, visited);
+		nodes = kept;
+	}
+
+	/*
+	 * Adds the given Node and everything below it to "kept", forgetting their remembered results.
+	 */
+	private void keep(Node node, HashMap<Node, Node> kept, IdentityHashMap<Node, Boolean> visited) {
+		if (visited.put(node, Boolean.TRUE) != null) return;
+		node.result = null;
+		if (node.level > 0) {
+			keep(node.nw, kept, visited);
+			keep(node.ne, kept, visited);
+			keep(node.sw, kept, visited);
+			keep(node.se, kept, visited);
+		}
+		kept.put(node, node);
+	}
+
+	/*
+	 * Returns the status (Cell.ALIVE or Cell.DEAD) of the cell at the given location of the universe.
+	 */
+	public int getStatus(long x, long y) {
+		long size = 1L << root.level;
+		if (x < originX || y < originY || x - originX >= size || y - originY >= size) return Cell.DEAD;
+		Node node = root;
+		long left = originX, top = originY;
+		while (node.level > 0) {
+			long half = 1L << (node.level - 1);
+			boolean east = x >= left + half;
+			boolean south = y >= top + half;
+			if (east) left += half;
+			if (south) top += half;
+			node = south ? (east ? node.se : node.sw) : (east ? node.ne : node.nw);
+		}
+		return (int) node.population;
+	}
+
+	/*
+	 * Sets the status of the cell at the given location of the universe. Any status other than Cell.DEAD is
+	 * stored as Cell.ALIVE.
+	 */
+	public void setStatus(long x, long y, int status) {
+		while (x < originX || y < originY || x - originX >= (1L << root.level) || y - originY >= (1L << root.level)) expand();
+		root = set(root, originX, originY, x, y, (status == Cell.DEAD) ? dead : alive);
+	}
+
+	/*
+	 * Returns a copy of the Node whose top-left cell is (left, top) with cell (x, y) replaced by the given leaf.
+	 */
+	private Node set(Node node, long left, long top, long x, long y, Node leaf) {
+		if (node.level == 0) return leaf;
+		long half = 1L << (node.level - 1);
+		if (y < top + half) {
+			if (x < left + half) return join(set(node.nw, left, top, x, y, leaf), node.ne, node.sw, node.se);
+			return join(node.nw, set(node.ne, left + half, top, x, y, leaf), node.sw, node.se);
+		}
+		if (x < left + half) return join(node.nw, node.ne, set(node.sw, left, top + half, x, y, leaf), node.se);
+		return join(node.nw, node.ne, node.sw, set(node.se, left + half, top + half, x, y, leaf));
+	}
+
+	/*
+	 * Clears the given GameOfLife and copies the living cells of the universe that fall on its board into it.
+	 * The game's generation number is set to this universe's generation, as far as an int can hold it.
+	 */
+	public void writeTo(GameOfLife game) {
+		game.clear();
+		writeTo(game, root, originX, originY);
+		game.genNum = (int) Math.min(generation, Integer.MAX_VALUE);
+	}
+
+	/*
+	 * Copies the living cells of the given Node, whose top-left cell is (left, top), into the game.
+	 */
+	private void writeTo(GameOfLife game, Node node, long left, long top) {
+		if (node.population == 0) return;
+		long size = 1L << node.level;
+		if (left >= game.getWidth() || top >= game.getHeight() || left + size <= 0 || top + size <= 0) return;
+		if (node.level == 0) {
+			game.setStatus((int) left, (int) top, Cell.ALIVE);
+			return;
+		}
+		long half = size >>> 1;
+		writeTo(game, node.nw, left, top);
+		writeTo(game, node.ne, left + half, top);
+		writeTo(game, node.sw, left, top + half);
+		writeTo(game, node.se, left + half, top + half);
+	}
+
+	/*
+	 * Sets the Rule the universe is advanced with, which cannot be one where empty cells are born (B0). Every
+	 * remembered result is thrown away, since it was worked out under the old Rule.
+	 */
+	public void setRule(Rule rule) {
+		if (rule.isBornFromNothing()) throw new IllegalArgumentException("HashLife cannot run " + rule + ", where empty cells are born");
+		if (rule.equals(this.rule)) return;
+		this.rule = rule;
+		for (Node node : nodes.keySet()) node.result = null;
+	}
+
+	/*
+	 * Returns the Rule the universe is advanced with.
+	 */
+	public Rule getRule() {
+		return rule;
+	}
+
+	/*
+	 * Returns the number of living cells in the universe.
+	 */
+	public long getPopulation() {
+		return root.population;
+	}
+
+	/*
+	 * Returns the current generation number of the universe.
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	/*
+	 * Returns the number of canonical Nodes currently kept.
+	 */
+	public int getNodeCount() {
+		return nodes.size();
+	}
+
+	/*
+	 * Returns the most Nodes kept between steps before unused ones are dropped.
+	 */
+	public int getMaxNodes() {
+		return maxNodes;
+	}
+
+	/*
+	 * Sets the most Nodes kept between steps before unused ones are dropped.
+	 */
+	public void setMaxNodes(int maxNodes) {
+		this.maxNodes = maxNodes;
+	}
+
+	/*
+	 * A square of 2^level x 2^level cells. Two Nodes are equal when they have the same four (canonical) children,
+	 * which is all "nodes" needs to find the canonical copy.
+	 */
+	private static class Node {
+		final Node nw;
+		final Node ne;
+		final Node sw;
+		final Node se;
+		final int level;
+		final long population;
+		final int hash;
+		Node result;
+		int resultStep;
+
+		/*
+		 * Constructs a leaf Node: a single cell with the given status.
+		 */
+		Node(int status) {
+			nw = ne = sw = se = null;
+			level = 0;
+			population = status;
+			hash = status;
+		}
+
+		/*
+		 * Constructs a Node out of four quadrants of the same level.
+		 */
+		Node(Node nw, Node ne, Node sw, Node se) {
+			this.nw = nw;
+			this.ne = ne;
+			this.sw = sw;
+			this.se = se;
+			level = nw.level + 1;
+			population = nw.population + ne.population + sw.population + se.population;
+			int h = System.identityHashCode(nw);
+			h = h * 31 + System.identityHashCode(ne);
+			h = h * 31 + System.identityHashCode(sw);
+			h = h * 31 + System.identityHashCode(se);
+			hash = h;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object other) {
+			if (!(other instanceof Node)) return false;
+			Node node = (Node) other;
+			return level == node.level && population == node.population && nw == node.nw && ne == node.ne && sw == node.sw && se == node.se;
+		}
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) {
+		GameOfLife game = new GameOfLife(40);
+		game.setStatus(2, 1, Cell.ALIVE);
+		game.setStatus(3, 2, Cell.ALIVE);
+		game.setStatus(1, 3, Cell.ALIVE);
+		game.setStatus(2, 3, Cell.ALIVE);
+		game.setStatus(3, 3, Cell.ALIVE);
+		HashLife life = new HashLife(game);
+		life.advance(40);
+		for (int i = 0; i < 40; i++) game.nextGen();
+		GameOfLife fromHashLife = new GameOfLife(40);
+		life.writeTo(fromHashLife);
+		System.out.println("After 40 generations the glider looks the same in both engines: " + fromHashLife.toString().equals(game.toString()));
+
+		HashLife far = new HashLife(game);
+		far.advance(1000000);
+		System.out.println("After a million more generations the glider has " + far.getPopulation() + " cells, at generation "
+				+ far.getGeneration() + ", using " + far.getNodeCount() + " Nodes");
+
+		// The HighLife replicator copies itself, and both engines agree on it.
+		GameOfLife replicator = new GameOfLife(100);
+		replicator.setRule(Rule.parse("B36/S23"));
+		int[][] cells = {{2, 0}, {3, 0}, {4, 0}, {1, 1}, {4, 1}, {0, 2}, {4, 2}, {0, 3}, {3, 3}, {0, 4}, {1, 4}, {2, 4}};
+		for (int i = 0; i < cells.length; i++) replicator.setStatus(cells[i][0] + 48, cells[i][1] + 48, Cell.ALIVE);
+		HashLife highLife = new HashLife(replicator);
+		highLife.advance(30);
+		for (int i = 0; i < 30; i++) replicator.nextGen();
+		GameOfLife fromHighLife = new GameOfLife(100);
+		highLife.writeTo(fromHighLife);
+		System.out.println("After 30 generations of " + highLife.getRule() + " both engines agree: " + fromHighLife.toString().equals(replicator.toString())
+				+ ", with " + replicator.getPopulation() + " cells");
+	}
+
+}
@@ -0,0 +1,314 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import javax.management.JMException;
+
+public class HeadlessRunner {
+
+	/*
+	 * This class runs a Game Of Life from the command line, with no window, as fast as the engine can go. It loads
+	 * a starting board, runs it for a number of generations and then writes out the final board, printing the
+	 * population and the speed in generations per second along the way. It never touches Swing or AWT, so it can
+	 * run on a server with no display.
+	 *
+	 * Options are given as key=value:
+	 *
+	 *     input=board.txt          the starting board, as RLE (.rle), plaintext (.cells), a checkpoint (.golc)
+	 *                              or in the same {0}{1} format that GameOfLife.toString() prints (anything else)
+	 *     random=HEIGHTxWIDTH      or a random starting board of this size instead of "input"
+	 *     density=0.5              the share of living cells on a random board
+	 *     seed=1                   the seed for a random board
+	 *     gens=1000                how many generations to run
+	 *     threads=1                how many threads GameOfLife.setParallelism() is given
+	 *     rule=B36/S23             the rule to run (see Rule), instead of the checkpoint's or RLE pattern's
+	 *                              rule or Conway's
+	 *     topology=torus           how the edges of the board meet: dead, torus or klein, instead of the
+	 *                              checkpoint's topology or dead edges
+	 *     every=1                  print a line of statistics every this many generations
+	 *     stats=stats.csv          also write every line of statistics to this file, as CSV
+	 *     output=final.txt         write the final board to this file, in a format picked the same way as "input"
+	 *     checkpoint=run.golc      save a checkpoint to this file every so often while running, and at the end
+	 *     checkpointEvery=60       the number of seconds between checkpoints
+	 *     cycle=stop               watch for the board repeating itself (see CycleDetector) and then either "stop"
+	 *                              early or "skip" straight to the last generation; "off" does not watch
+	 *     history=1024             how many generations back to look for a repeat
+	 *     metrics=10               time every generation (see Metrics), log a line of metrics every this many
+	 *                              seconds and make them readable over JMX
+	 *     workers=4                run the board on this many Worker processes (see Coordinator) instead of in
+	 *                              this JVM; "threads", "cycle", "checkpoint" and "metrics" cannot be used with it
+	 *
+	 * A run that was stopped can be picked up again with input=run.golc, which carries on from the generation
+	 * the checkpoint was saved at.
+	 */
+	private GameOfLife game;
+	private long gens = 1000;
+	private int every = 1;
+	private String statsFile;
+	private String outputFile;
+	private String checkpointFile;
+	private long checkpointSeconds = 60;
+	private String cycle = "off";
+	private int history = CycleDetector.DEFAULT_CAPACITY;
+	private Metrics metrics;
+	private int workers;
+
+	/*
+	 * Constructs a HeadlessRunner from the command line options.
+	 */
+	public HeadlessRunner(String[] args) throws IOException {
+		String input = null;
+		String random = null;
+		double density = 0.5;
+		long seed = 1;
+		int threads = 1;
+		Rule rule = null;
+		Topology topology = null;
+		for (int i = 0; i < args.length; i++) {
+			String[] parts = args[i].split("=", 2);
+			if (parts.length != 2) throw new IllegalArgumentException("Expected key=value but got " + args[i]);
+			String key = parts[0], value = parts[1];
+			if (key.equals("input")) input = value;
+			else if (key.equals("random")) random = value;
+			else if (key.equals("density")) density = Double.parseDouble(value);
+			else if (key.equals("seed")) seed = Long.parseLong(value);
+			else if (key.equals("gens")) gens = Long.parseLong(value);
+			else if (key.equals("threads")) threads = Integer.parseInt(value);
+			else if (key.equals("rule")) rule = Rule.parse(value);
+			else if (key.equals("topology")) topology = Topology.parse(value);
+			else if (key.equals("every")) every = Math.max(1, Integer.parseInt(value));
+			else if (key.equals("stats")) statsFile = value;
+			else if (key.equals("output")) outputFile = value;
+			else if (key.equals("checkpoint")) checkpointFile = value;
+			else if (key.equals("checkpointEvery")) checkpointSeconds = Long.parseLong(value);
+			else if (key.equals("cycle")) cycle = value;
+			else if (key.equals("history")) history = Integer.parseInt(value);
+			else if (key.equals("workers")) workers = Integer.parseInt(value);
+			else if (key.equals("metrics")) metrics = new Metrics((long) (Double.parseDouble(value) * 1000), System.out);
+			else throw new IllegalArgumentException("Unknown option " + key);
+		}
+		if (input != null) {
+			if (isCheckpointFile(input)) game = Checkpoint.load(Paths.get(input));
+			else if (isPatternFile(input)) game = PatternIO.read(Paths.get(input));
+			else game = readBoard(input);
+		}
+		else if (random != null) {
+			String[] size = random.toLowerCase().split("x");
+			game = new GameOfLife(Integer.parseInt(size[0]), Integer.parseInt(size[size.length - 1]));
+			game.randomize(seed, density);
+		}
+		else throw new IllegalArgumentException("Either input=FILE or random=HEIGHTxWIDTH is needed");
+		if (gens < 0 || gens > Integer.MAX_VALUE - game.getGenNum()) {
+			throw new IllegalArgumentException("gens must be from 0 to " + (Integer.MAX_VALUE - game.getGenNum()) + ", so that the last generation number fits in an int");
+		}
+		if (!cycle.equals("off") && !cycle.equals("stop") && !cycle.equals("skip")) throw new IllegalArgumentException("cycle must be off, stop or skip");
+		if (workers > 0 && (threads != 1 || !cycle.equals("off") || checkpointFile != null || metrics != null)) {
+			throw new IllegalArgumentException("workers cannot be used with threads, cycle, checkpoint or metrics");
+		}
+		if (rule != null) game.setRule(rule);
+		if (topology != null) game.setTopology(topology);
+		game.setParallelism(threads);
+		if (metrics != null) {
+			try {
+				metrics.register();
+			}
+			catch (JMException e) {
+				System.err.println("Could not register the metrics over JMX: " + e);
+			}
+			game.setMetrics(metrics);
+		}
+	}
+
+	/*
+	 * Runs the generations, printing statistics every "every" generations, and writes out the final board.
+	 */
+	public void run() throws IOException {
+		PrintWriter stats = null;
+		if (statsFile != null) {
+			stats = new PrintWriter(new BufferedWriter(new FileWriter(statsFile)));
+			stats.println("generation,population,gens_per_sec");
+		}
+		if (workers > 0) {
+			runOnWorkers(stats);
+			return;
+		}
+		Checkpointer checkpointer = null;
+		if (checkpointFile != null) checkpointer = new Checkpointer(game, Paths.get(checkpointFile), checkpointSeconds * 1000);
+		System.out.println("Running " + game.getHeight() + " x " + game.getWidth() + " under " + game.getRule() + " (" + game.getTopology().toString().toLowerCase() + " edges) for " + gens
+				+ " generations on " + game.getParallelism() + " thread(s)");
+		CycleDetector detector = cycle.equals("off") ? null : new CycleDetector(history);
+		if (detector != null) detector.check(game);
+		int endGen = (int) (game.getGenNum() + gens);
+		long start = System.nanoTime();
+		long last = start;
+		long ran = gens;
+		for (long i = 1; i <= gens; i++) {
+			game.nextGen();
+			if (detector != null && detector.check(game)) {
+				System.out.println("Gen " + game.getGenNum() + " repeats gen " + detector.getCycleStart() + ": a cycle of period "
+						+ detector.getPeriod());
+				ran = i;
+				if (cycle.equals("skip")) {
+					detector.fastForward(game, endGen);
+					System.out.println("Skipped ahead to gen " + game.getGenNum() + "  population " + game.getPopulation());
+				}
+				break;
+			}
+			if (checkpointer != null) checkpointer.maybeCheckpoint();
+			if (i % every == 0 || i == gens) {
+				long now = System.nanoTime();
+				long stepped = (i % every == 0) ? every : i % every;
+				double gensPerSecond = stepped / ((now - last) / 1e9);
+				last = now;
+				long population = game.getPopulation();
+				System.out.println("Gen " + game.getGenNum() + "  population " + population + "  " + String.format("%.1f", gensPerSecond) + " gens/sec");
+				if (stats != null) stats.println(game.getGenNum() + "," + population + "," + gensPerSecond);
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Ran " + ran + " generations in " + String.format("%.3f", seconds) + " s ("
+				+ String.format("%.1f", ran / seconds) + " gens/sec)");
+		if (stats != null) stats.close();
+		if (checkpointer != null) {
+			checkpointer.checkpoint();
+			checkpointer.close();
+			System.out.println("Saved " + checkpointer.getCheckpointCount() + " checkpoint(s) to " + checkpointFile);
+		}
+		writeOutput();
+		game.setParallelism(1);
+		if (metrics != null) {
+			System.out.println(metrics.summary());
+			metrics.close();
+		}
+	}
+
+	/*
+	 * Runs the generations on Worker processes started by a Coordinator, printing statistics every "every"
+	 * generations, and then gathers the board back to write it out.
+	 */
+	private void runOnWorkers(PrintWriter stats) throws IOException {
+		Coordinator coordinator = new Coordinator(game, Math.min(workers, game.getHeight()), true);
+		System.out.println("Running " + game.getHeight() + " x " + game.getWidth() + " under " + game.getRule() + " (" + game.getTopology().toString().toLowerCase() + " edges) for " + gens
+				+ " generations on " + coordinator.getWorkerCount() + " worker process(es)");
+		long start = System.nanoTime();
+		long last = start;
+		try {
+			for (long i = 0; i < gens; ) {
+				int stepped = (int) Math.min(every, gens - i);
+				long population = coordinator.advance(stepped);
+				i += stepped;
+				long now = System.nanoTime();
+				double gensPerSecond = stepped / ((now - last) / 1e9);
+				last = now;
+				System.out.println("Gen " + coordinator.getGenNum() + "  population " + population + "  " + String.format("%.1f", gensPerSecond) + " gens/sec");
+				if (stats != null) stats.println(coordinator.getGenNum() + "," + population + "," + gensPerSecond);
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println("Ran " + gens + " generations in " + String.format("%.3f", seconds) + " s ("
+					+ String.format("%.1f", gens / seconds) + " gens/sec)");
+			if (outputFile != null) coordinator.collect();
+		}
+		finally {
+			coordinator.close();
+			if (stats != null) stats.close();
+		}
+		writeOutput();
+	}
+
+	/*
+	 * Writes the board to "outputFile", if there is one, in the format its name calls for.
+	 */
+	private void writeOutput() throws IOException {
+		if (outputFile != null && isCheckpointFile(outputFile)) Checkpoint.save(game, Paths.get(outputFile));
+		else if (outputFile != null && isPatternFile(outputFile)) PatternIO.write(game, Paths.get(outputFile));
+		else if (outputFile != null) {
+			Writer out = new BufferedWriter(new FileWriter(outputFile));
+			writeBoard(game, out);
+			out.close();
+		}
+	}
+
+	/*
+	 * Reads a board in the {0}{1} format that GameOfLife.toString() prints: one line per row, with the status of
+	 * each cell between braces. The board is as tall as the number of lines and as wide as the longest line.
+	 */
+	public static GameOfLife readBoard(String fileName) throws IOException {
+		ArrayList<String> lines = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new FileReader(fileName));
+		int width = 0;
+		String line;
+		while ((line = in.readLine()) != null) {
+			line = line.trim();
+			if (line.length() == 0) continue;
+			lines.add(line);
+			width = Math.max(width, count(line, '{'));
+		}
+		in.close();
+		if (lines.isEmpty()) throw new IOException(fileName + " has no rows");
+		GameOfLife game = new GameOfLife(lines.size(), width);
+		for (int y = 0; y < lines.size(); y++) {
+			String row = lines.get(y);
+			int x = 0;
+			for (int i = 0; i < row.length(); i++) {
+				char c = row.charAt(i);
+				if (c == '{') {
+					if (i + 1 < row.length() && row.charAt(i + 1) != '0') game.setStatus(x, y, Cell.ALIVE);
+					x++;
+				}
+			}
+		}
+		return game;
+	}
+
+	/*
+	 * Writes the board in the same {0}{1} format as GameOfLife.toString(), without building the whole text in
+	 * memory first.
+	 */
+	public static void writeBoard(GameOfLife game, Writer out) throws IOException {
+		for (int y = 0; y < game.getHeight(); y++) {
+			for (int x = 0; x < game.getWidth(); x++) {
+				out.write((game.getStatus(x, y) == Cell.ALIVE) ? "{1}" : "{0}");
+			}
+			out.write('\n');
+		}
+	}
+
+	/*
+	 * Returns whether the given file name is for an RLE or plaintext pattern, which PatternIO reads and writes.
+	 */
+	private static boolean isPatternFile(String fileName) {
+		String name = fileName.toLowerCase();
+		return name.endsWith(".rle") || name.endsWith(".cells");
+	}
+
+	/*
+	 * Returns whether the given file name is for a checkpoint, which Checkpoint reads and writes.
+	 */
+	private static boolean isCheckpointFile(String fileName) {
+		return fileName.toLowerCase().endsWith(".golc");
+	}
+
+	/*
+	 * Returns the number of times the given character appears in the given String.
+	 */
+	private static int count(String text, char c) {
+		int result = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == c) result++;
+		}
+		return result;
+	}
+
+	/*
+	 * Runs the Game Of Life with the options given on the command line.
+	 */
+	public static void main(String[] args) throws IOException {
+		new HeadlessRunner(args).run();
+	}
+
+}
@@ -0,0 +1,513 @@
+import java.util.Arrays;
+
+public class History {
+
+	/*
+	 * This class remembers the last generations of a GameOfLife so that the game can be stepped back and moved to
+	 * any of them again (see GameOfLife.previousGen() and GameOfLife.seek()). Keeping a whole board per generation
+	 * would take far too much memory, so each generation is kept as a delta: the XOR of its board with the board of
+	 * the generation before it, which is zero everywhere except where cells were born or died. A delta is stored
+	 * as just its non-zero words, each one after the number of zero words skipped to get to it and as a byte
+	 * saying which of its bytes are non-zero followed by only those bytes, so a generation where little happened
+	 * takes a few bytes. Every "keyframeInterval" generations the whole board is kept as well
+	 * (as the delta from an empty board), so that a generation far from the current one can be reached without
+	 * walking through every delta in between.
+	 *
+	 * The generations are kept in a ring buffer of "capacity" frames, and the oldest are dropped once there are
+	 * more frames than that or the frames take more than "maxBytes" bytes. Besides the frames, one copy of the
+	 * board at the current generation is kept, which the next delta is worked out against.
+	 *
+	 * Only the tiles of the board that GameOfLife.nextGen() found changed, or that were changed directly before
+	 * it, are compared with that copy (see GameOfLife.wasTileChanged()), so remembering a generation costs time in
+	 * proportion to the active part of the board rather than to the whole of it.
+	 *
+	 * Moving to another generation XORs the deltas in between into the board one word at a time, starting from
+	 * whichever is cheaper of the current generation and the nearest keyframe, so the time it takes is in
+	 * proportion to the size of the deltas rather than to the size of the board. The cells of the board are
+	 * changed with GameOfLife.flipWord(), which keeps the game's hash and population up to date.
+	 *
+	 * A History only remembers generations that follow on from each other. If it is shown a generation that does
+	 * not follow the current one (after clear(), for example), it forgets everything and starts again from it. If
+	 * the game steps on from a generation that was moved back to, the generations after it are forgotten.
+	 *
+	 * There are tests run at the end.
+	 */
+	public static final int DEFAULT_CAPACITY = 10000;
+	public static final long DEFAULT_MAX_BYTES = 64L << 20;
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 256;
+	private static final int FRAME_BYTES = 48;
+
+	private final int capacity;
+	private final long maxBytes;
+	private final int keyframeInterval;
+	private Frame[] frames;
+	private int first;
+	private int count;
+	private int oldestGen;
+	private int cursor;
+	private long cursorHash;
+	private long bytes;
+	private long[] shadow;
+	private int wordsPerRow;
+	private int[] touched;
+	private byte[] scratch = new byte[1024];
+
+	/*
+	 * One remembered generation: its delta from the generation before it (null for the oldest one) and, every so
+	 * often, its whole board.
+	 */
+	private static class Frame {
+		byte[] delta;
+		byte[] keyframe;
+
+		long bytes() {
+			return FRAME_BYTES + ((delta != null) ? delta.length : 0) + ((keyframe != null) ? keyframe.length : 0);
+		}
+	}
+
+	/*
+	 * Constructs a History that remembers up to DEFAULT_CAPACITY generations in DEFAULT_MAX_BYTES bytes.
+	 */
+	public History() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_BYTES, DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	/*
+	 * Constructs a History that remembers up to "capacity" generations in up to "maxBytes" bytes (though always
+	 * at least the current generation), keeping a whole board every "keyframeInterval" generations.
+	 */
+	public History(int capacity, long maxBytes, int keyframeInterval) {
+		if (capacity < 1) throw new IllegalArgumentException("The capacity must be at least 1: " + capacity);
+		if (keyframeInterval < 1) throw new IllegalArgumentException("The keyframe interval must be at least 1: " + keyframeInterval);
+		this.capacity = capacity;
+		this.maxBytes = maxBytes;
+		this.keyframeInterval = keyframeInterval;
+		frames = new Frame[capacity];
+	}
+
+	/*
+	 * Remembers the current generation of the given game. This is called by GameOfLife.nextGen() once a History
+	 * has been given to the game with setHistory(), and relies on the game's record of which tiles that call
+	 * changed, so it must not be called at any other time for a generation that follows on from the last one.
+	 */
+	public void record(GameOfLife game) {
+		int gen = game.getGenNum();
+		if (count == 0 || shadow.length != game.getHeight() * game.board.getWordsPerRow()) {
+			reset(game);
+			return;
+		}
+		if (gen == cursor) return;
+		if (gen != cursor + 1) {
+			reset(game);
+			return;
+		}
+		while (oldestGen + count - 1 > cursor) dropNewest();
+		Frame frame = new Frame();
+		frame.delta = encodeChangedTiles(game);
+		if (gen % keyframeInterval == 0) frame.keyframe = encodeShadow();
+		add(frame);
+		cursor = gen;
+		cursorHash = game.getHash();
+	}
+
+	/*
+	 * Forgets every generation and starts again from the current generation of the given game.
+	 */
+	private void reset(GameOfLife game) {
+		Arrays.fill(frames, null);
+		first = 0;
+		count = 0;
+		bytes = 0;
+		wordsPerRow = game.board.getWordsPerRow();
+		shadow = new long[game.getHeight() * wordsPerRow];
+		touched = new int[wordsPerRow];
+		Frame frame = new Frame();
+		encode(game);
+		frame.keyframe = encodeShadow();
+		oldestGen = game.getGenNum();
+		add(frame);
+		cursor = oldestGen;
+		cursorHash = game.getHash();
+	}
+
+	/*
+	 * Adds a frame after the newest one, and then drops the oldest frames until there are no more than "capacity"
+	 * and they take no more than "maxBytes".
+	 */
+	private void add(Frame frame) {
+		if (count == capacity) dropOldest();
+		frames[(first + count) % capacity] = frame;
+		count++;
+		bytes += frame.bytes();
+		while (count > 1 && bytes > maxBytes) dropOldest();
+	}
+
+	/*
+	 * Drops the oldest frame. The delta of the frame after it leads to a generation that is gone, so it is dropped
+	 * too.
+	 */
+	private void dropOldest() {
+		bytes -= frames[first].bytes();
+		frames[first] = null;
+		first = (first + 1) % capacity;
+		count--;
+		oldestGen++;
+		if (count == 0) return;
+		Frame oldest = frames[first];
+		bytes -= oldest.bytes();
+		oldest.delta = null;
+		bytes += oldest.bytes();
+	}
+
+	/*
+	 * Drops the newest frame.
+	 */
+	private void dropNewest() {
+		int last = (first + count - 1) % capacity;
+		bytes -= frames[last].bytes();
+		frames[last] = null;
+		count--;
+	}
+
+	/*
+	 * Returns the frame of the given generation.
+	 */
+	private Frame frame(int gen) {
+		return frames[(first + gen - oldestGen) % capacity];
+	}
+
+	/*
+	 * Moves the given game to the given generation, which must be one of the generations remembered. The game's
+	 * cells and generation number are changed; its Rule and Topology are not.
+	 */
+	public void seek(GameOfLife game, int gen) {
+		if (count == 0 || gen < oldestGen || gen > getNewestGen()) {
+			throw new IllegalArgumentException("Generation " + gen + " is not in the history (" + (count == 0 ? "which is empty" : oldestGen + " to " + getNewestGen()) + ")");
+		}
+		boolean inStep = game.getGenNum() == cursor && shadow.length == game.getHeight() * game.board.getWordsPerRow() && game.getHash() == cursorHash;
+		long walkCost = deltaBytes(cursor, gen);
+		if (!inStep) walkCost += shadow.length * 8L;
+		int keyframeGen = nearestKeyframe(gen);
+		long keyframeCost = (keyframeGen < 0) ? Long.MAX_VALUE : frame(keyframeGen).keyframe.length + deltaBytes(keyframeGen, gen) + shadow.length * 8L;
+		if (walkCost <= keyframeCost && inStep) walk(game, gen);
+		else {
+			if (walkCost > keyframeCost) {
+				Arrays.fill(shadow, 0);
+				apply(frame(keyframeGen).keyframe, null);
+				cursor = keyframeGen;
+			}
+			walk(null, gen);
+			for (int i = 0; i < shadow.length; i++) {
+				int y = i / wordsPerRow, k = i - y * wordsPerRow;
+				long bits = game.board.getRow(y)[k] ^ shadow[i];
+				if (bits != 0) game.flipWord(y, k, bits);
+			}
+		}
+		game.genNum = gen;
+		cursor = gen;
+		cursorHash = game.getHash();
+	}
+
+	/*
+	 * Moves "shadow" from generation "cursor" to the given generation one delta at a time, XORing every delta into
+	 * the given game's board as well unless it is null.
+	 */
+	private void walk(GameOfLife game, int gen) {
+		while (cursor > gen) {
+			apply(frame(cursor).delta, game);
+			cursor--;
+		}
+		while (cursor < gen) {
+			cursor++;
+			apply(frame(cursor).delta, game);
+		}
+	}
+
+	/*
+	 * Returns the number of bytes of deltas between the two given generations.
+	 */
+	private long deltaBytes(int from, int to) {
+		long total = 0;
+		for (int gen = Math.min(from, to) + 1; gen <= Math.max(from, to); gen++) total += frame(gen).delta.length;
+		return total;
+	}
+
+	/*
+	 * Returns the generation with a keyframe closest to the given generation, or -1 if there is none.
+	 */
+	private int nearestKeyframe(int gen) {
+		int best = -1;
+		int below = gen - Math.floorMod(gen, keyframeInterval);
+		int[] candidates = { oldestGen, below, below + keyframeInterval };
+		for (int i = 0; i < candidates.length; i++) {
+			int candidate = candidates[i];
+			if (candidate < oldestGen || candidate > getNewestGen() || frame(candidate).keyframe == null) continue;
+			if (best < 0 || Math.abs(candidate - gen) < Math.abs(best - gen)) best = candidate;
+		}
+		return best;
+	}
+
+	/*
+	 * Works out the delta between "shadow" and the board of the given game, as the non-zero words of their XOR,
+	 * each after the number of zero words before it (as a variable-length number), and brings "shadow" up to the
+	 * board.
+	 */
+	private byte[] encode(GameOfLife game) {
+		int length = 0;
+		int last = -1;
+		for (int y = 0; y < game.getHeight(); y++) {
+			long[] row = game.board.getRow(y);
+			int base = y * wordsPerRow;
+			for (int k = 0; k < wordsPerRow; k++) {
+				long bits = row[k] ^ shadow[base + k];
+				if (bits == 0) continue;
+				length = putWord(length, base + k - last - 1, bits);
+				last = base + k;
+				shadow[base + k] = row[k];
+			}
+		}
+		return Arrays.copyOf(scratch, length);
+	}
+
+	/*
+	 * Works out the same delta as encode(), but only looks at the tiles of 64 rows by one word that the game says
+	 * may have changed since the last generation recorded. Every other word of the board is still the same as in
+	 * "shadow". The words are still visited in row order, so the delta reads the same as one from encode().
+	 */
+	private byte[] encodeChangedTiles(GameOfLife game) {
+		int height = game.getHeight();
+		int length = 0;
+		int last = -1;
+		for (int tileRow = 0; (tileRow << 6) < height; tileRow++) {
+			int touchedCount = 0;
+			for (int k = 0; k < wordsPerRow; k++) {
+				if (game.wasTileChanged(tileRow, k)) touched[touchedCount++] = k;
+			}
+			if (touchedCount == 0) continue;
+			int toRow = Math.min((tileRow + 1) << 6, height);
+			for (int y = tileRow << 6; y < toRow; y++) {
+				long[] row = game.board.getRow(y);
+				int base = y * wordsPerRow;
+				for (int i = 0; i < touchedCount; i++) {
+					int k = touched[i];
+					long bits = row[k] ^ shadow[base + k];
+					if (bits == 0) continue;
+					length = putWord(length, base + k - last - 1, bits);
+					last = base + k;
+					shadow[base + k] = row[k];
+				}
+			}
+		}
+		return Arrays.copyOf(scratch, length);
+	}
+
+	/*
+	 * Returns the whole of "shadow" as the delta from an empty board.
+	 */
+	private byte[] encodeShadow() {
+		int length = 0;
+		int last = -1;
+		for (int i = 0; i < shadow.length; i++) {
+			if (shadow[i] == 0) continue;
+			length = putWord(length, i - last - 1, shadow[i]);
+			last = i;
+		}
+		return Arrays.copyOf(scratch, length);
+	}
+
+	/*
+	 * Puts the number of zero words skipped, the mask of the word's non-zero bytes and those bytes into "scratch"
+	 * at the given place, growing it if it has to, and returns the place after them.
+	 */
+	private int putWord(int at, int skipped, long word) {
+		if (at + 14 > scratch.length) scratch = Arrays.copyOf(scratch, scratch.length * 2);
+		while ((skipped & ~0x7F) != 0) {
+			scratch[at++] = (byte) ((skipped & 0x7F) | 0x80);
+			skipped >>>= 7;
+		}
+		scratch[at++] = (byte) skipped;
+		int maskAt = at++;
+		int mask = 0;
+		for (int i = 0; i < 8; i++) {
+			byte b = (byte) (word >>> (i * 8));
+			if (b == 0) continue;
+			mask |= 1 << i;
+			scratch[at++] = b;
+		}
+		scratch[maskAt] = (byte) mask;
+		return at;
+	}
+
+	/*
+	 * XORs the given delta into "shadow", and into the given game's board as well unless it is null.
+	 */
+	private void apply(byte[] delta, GameOfLife game) {
+		int at = 0;
+		int index = -1;
+		while (at < delta.length) {
+			int skipped = 0;
+			for (int shift = 0; ; shift += 7) {
+				byte b = delta[at++];
+				skipped |= (b & 0x7F) << shift;
+				if (b >= 0) break;
+			}
+			int mask = delta[at++];
+			long word = 0;
+			for (int i = 0; i < 8; i++) {
+				if ((mask & (1 << i)) != 0) word |= (delta[at++] & 0xFFL) << (i * 8);
+			}
+			index += skipped + 1;
+			shadow[index] ^= word;
+			if (game != null) game.flipWord(index / wordsPerRow, index % wordsPerRow, word);
+		}
+	}
+
+	/*
+	 * Returns the oldest generation remembered.
+	 */
+	public int getOldestGen() {
+		return oldestGen;
+	}
+
+	/*
+	 * Returns the newest generation remembered.
+	 */
+	public int getNewestGen() {
+		return oldestGen + count - 1;
+	}
+
+	/*
+	 * Returns the number of generations remembered.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/*
+	 * Returns the number of bytes the remembered generations take, roughly, not counting the copy of the current
+	 * board.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) {
+		// Every generation seeked to is the same board as when it was first worked out.
+		GameOfLife game = new GameOfLife(300, 400);
+		java.util.Random random = new java.util.Random(22);
+		for (int i = 0; i < 40000; i++) game.setStatus(random.nextInt(400), random.nextInt(300), Cell.ALIVE);
+		History history = new History(1000, DEFAULT_MAX_BYTES, 64);
+		game.setHistory(history);
+		BitBoard[] boards = new BitBoard[501];
+		long[] hashes = new long[501];
+		for (int gen = 1; gen <= 500; gen++) {
+			if (gen > 1) game.nextGen();
+			boards[gen] = new BitBoard(300, 400);
+			boards[gen].copyFrom(game.board);
+			hashes[gen] = game.getHash();
+		}
+		System.out.println("Remembered generations " + history.getOldestGen() + " to " + history.getNewestGen() + " in " + history.getBytes()
+				+ " bytes, against " + (500L * 300 * 400 / 8) + " for whole boards");
+		boolean same = true;
+		for (int i = 0; i < 2000; i++) {
+			int gen = 1 + random.nextInt(500);
+			game.seek(gen);
+			same &= game.getGenNum() == gen && sameCells(game.board, boards[gen]) && game.getHash() == hashes[gen]
+					&& game.getPopulation() == boards[gen].population();
+		}
+		System.out.println("2000 random seeks give the same boards: " + same);
+		game.seek(500);
+		int steps = 0;
+		while (game.previousGen()) {
+			steps++;
+			same &= sameCells(game.board, boards[game.getGenNum()]);
+		}
+		System.out.println("Stepped back " + steps + " generations (should be 499) to generation " + game.getGenNum() + ", all the same boards: " + same);
+
+		// Stepping on from a generation that was moved back to gives the same generations again.
+		game.seek(200);
+		for (int i = 0; i < 100; i++) game.nextGen();
+		System.out.println("Stepping on from generation 200 gives generation 300 again: " + sameCells(game.board, boards[300]) + ", now remembering "
+				+ history.getOldestGen() + " to " + history.getNewestGen() + " (should be 1 to 300)");
+
+		// Cells changed by hand after moving back are undone by moving again.
+		game.seek(100);
+		game.setStatus(0, 0, 1 - game.getStatus(0, 0));
+		game.seek(120);
+		System.out.println("Moving on after changing a cell by hand gives generation 120: " + sameCells(game.board, boards[120]));
+
+		// A still life put down by hand in a quiet part of the board is remembered, though nextGen() does not
+		// change it.
+		GameOfLife quiet = new GameOfLife(256, 256);
+		PatternLibrary.get("glider").stamp(quiet, 1, 1);
+		quiet.setHistory(new History());
+		for (int i = 0; i < 10; i++) quiet.nextGen();
+		PatternLibrary.get("block").stamp(quiet, 200, 200);
+		quiet.nextGen();
+		quiet.nextGen();
+		BitBoard withBlock = new BitBoard(256, 256);
+		withBlock.copyFrom(quiet.board);
+		quiet.seek(1);
+		quiet.seek(13);
+		System.out.println("A block put down by hand is still there after going back and forth: " + sameCells(quiet.board, withBlock)
+				+ ", population " + quiet.getPopulation() + " (should be 9)");
+
+		// The cap on memory drops the oldest generations.
+		History small = new History(1000, 200000, 64);
+		game.setHistory(small);
+		for (int i = 0; i < 200; i++) game.nextGen();
+		System.out.println("A 200000 byte cap keeps " + small.size() + " generations in " + small.getBytes() + " bytes, from generation "
+				+ small.getOldestGen() + " to " + small.getNewestGen());
+		int oldest = small.getOldestGen();
+		BitBoard newest = new BitBoard(300, 400);
+		newest.copyFrom(game.board);
+		game.seek(oldest);
+		game.seek(small.getNewestGen());
+		System.out.println("Going to the oldest kept and back gives the same board: " + sameCells(game.board, newest));
+		try {
+			game.seek(oldest - 1);
+			System.out.println("Generation " + (oldest - 1) + " should not have been found!");
+		}
+		catch (IllegalArgumentException e) {
+			System.out.println("Going past the oldest is rejected: " + e.getMessage());
+		}
+
+		// How long it takes to step back through a busy board.
+		GameOfLife big = new GameOfLife(1024, 1024);
+		for (int i = 0; i < 300000; i++) big.setStatus(random.nextInt(1024), random.nextInt(1024), Cell.ALIVE);
+		big.setHistory(new History());
+		for (int i = 0; i < 300; i++) big.nextGen();
+		long start = System.nanoTime();
+		while (big.previousGen()) ;
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Stepped back 300 generations of 1024 x 1024 at " + String.format("%.0f", 300 / seconds) + " gens/sec");
+
+		// Remembering a generation of a big board where little is happening costs about as much as the step.
+		GameOfLife sparse = new GameOfLife(4096, 4096);
+		for (int i = 0; i < 20; i++) PatternLibrary.get("r-pentomino").stamp(sparse, random.nextInt(4000) + 48, random.nextInt(4000) + 48);
+		double without = 0, with = 0;
+		for (int round = 0; round < 4; round++) {
+			sparse.setHistory((round % 2 == 0) ? null : new History());
+			start = System.nanoTime();
+			for (int i = 0; i < 500; i++) sparse.nextGen();
+			if (round % 2 == 0) without = (System.nanoTime() - start) / 1e9;
+			else with = (System.nanoTime() - start) / 1e9;
+		}
+		System.out.println("500 generations of a sparse 4096 x 4096 board took " + String.format("%.0f", without * 1000) + " ms, and "
+				+ String.format("%.0f", with * 1000) + " ms with a History");
+	}
+
+	/*
+	 * Returns whether the two boards have the same cells.
+	 */
+	private static boolean sameCells(BitBoard a, BitBoard b) {
+		for (int y = 0; y < a.getHeight(); y++) {
+			if (!Arrays.equals(a.getRow(y), b.getRow(y))) return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,123 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+
+	/*
+	 * This class counts how long something took, in nanoseconds, in the same log-linear way as HdrHistogram: every
+	 * power of two is split into 32 equal buckets, so any value is counted with an error of at most about 3%
+	 * while a few thousand buckets cover everything from 1 ns to centuries. Recording a value is a couple of shifts
+	 * and one atomic increment, and values can be recorded and read from different threads at the same time.
+	 *
+	 * There are tests run at the end.
+	 */
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private AtomicLong count = new AtomicLong();
+	private AtomicLong total = new AtomicLong();
+	private AtomicLong max = new AtomicLong();
+
+	/*
+	 * Counts one value. Negative values are counted as 0.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucketOf(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		if (value > max.get()) max.accumulateAndGet(value, Math::max);
+	}
+
+	/*
+	 * Returns the bucket the given value is counted in. Values below 64 each have their own bucket; above that,
+	 * the top 6 bits of the value pick one of the 32 buckets of its power of two.
+	 */
+	private static int bucketOf(long value) {
+		if (value < LINEAR_LIMIT) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/*
+	 * Returns the highest value that is counted in the given bucket.
+	 */
+	private static long highestIn(int bucket) {
+		if (bucket < LINEAR_LIMIT) return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/*
+	 * Returns the value that the given percentage (0 to 100) of the counted values are at or below, to within the
+	 * precision of the buckets. Returns 0 if nothing has been counted.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long counted = count.get();
+		if (counted == 0) return 0;
+		long wanted = Math.max(1, (long) Math.ceil(counted * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= wanted) return Math.min(highestIn(i), max.get());
+		}
+		return max.get();
+	}
+
+	/*
+	 * Returns the number of values counted.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/*
+	 * Returns the biggest value counted, or 0 if nothing has been counted.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/*
+	 * Returns the average of the values counted, or 0 if nothing has been counted.
+	 */
+	public double getMean() {
+		long counted = count.get();
+		return (counted == 0) ? 0 : (double) total.get() / counted;
+	}
+
+	/*
+	 * Forgets every value counted so far.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) {
+		boolean ordered = true;
+		for (long value = 0; value < 1000000; value++) {
+			if (highestIn(bucketOf(value)) < value) ordered = false;
+			if (value > 0 && bucketOf(value) < bucketOf(value - 1)) ordered = false;
+		}
+		System.out.println("Every value is counted in a bucket that holds it, in order: " + ordered);
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 100000; value++) histogram.record(value * 1000);
+		System.out.println("For 1 to 100000 microseconds: p50 = " + histogram.getValueAtPercentile(50) / 1000 + " us (about 50000), p99 = "
+				+ histogram.getValueAtPercentile(99) / 1000 + " us (about 99000), max = " + histogram.getMax() / 1000 + " us, mean = "
+				+ (long) histogram.getMean() / 1000 + " us");
+		System.out.println("The largest value lands in bucket " + bucketOf(Long.MAX_VALUE) + " of " + BUCKETS);
+	}
+
+}
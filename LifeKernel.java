@@ -0,0 +1,270 @@
+import java.util.Random;
+
+public class LifeKernel {
+
+	/*
+	 * This class works out the next generation of 64 cells at once. The cells are the bits of a long, and their
+	 * eight neighbors are passed in as eight more longs, lined up so that bit i of each neighbor word is that
+	 * neighbor of cell i. The neighbors are then added up with bitwise full adders, which gives the neighbor count
+	 * of all 64 cells as four "bit planes" (the ones, twos, fours and eights digit of every count) in a handful of
+	 * bitwise operations, with no loop over the cells and no branches.
+	 *
+	 * Conway's rules are worked out straight from the bit planes. Any other Rule picks out, for each neighbor count
+	 * it lists, the cells whose planes spell that count, so a rule costs a few more operations per count it lists.
+	 *
+	 * There are tests run at the end.
+	 */
+
+	/*
+	 * This class only has static methods and is not meant to be instantiated.
+	 */
+	private LifeKernel() {
+	}
+
+	/*
+	 * Returns the next generation of the 64 cells in "c" under Conway's rules, given their eight neighbor words.
+	 * A cell is alive in the next generation if it has 3 living neighbors, or if it is alive and has 2.
+	 */
+	public static long next(long nw, long n, long ne, long w, long c, long e, long sw, long s, long se) {
+		// Add up the three cells above and the three below, giving a sum bit and a carry bit for each.
+		long topSum = nw ^ n ^ ne;
+		long topCarry = (nw & n) | (ne & (nw ^ n));
+		long bottomSum = sw ^ s ^ se;
+		long bottomCarry = (sw & s) | (se & (sw ^ s));
+		// The two cells to the sides.
+		long sideSum = w ^ e;
+		long sideCarry = w & e;
+		// The ones digit, and the carry it makes into the twos.
+		long ones = topSum ^ bottomSum ^ sideSum;
+		long onesCarry = (topSum & bottomSum) | (sideSum & (topSum ^ bottomSum));
+		// The twos digit is the sum of the four carries, which may carry into the fours.
+		long pairA = topCarry ^ bottomCarry;
+		long pairB = sideCarry ^ onesCarry;
+		long twos = pairA ^ pairB;
+		long carryA = topCarry & bottomCarry;
+		long carryB = sideCarry & onesCarry;
+		long carryC = pairA & pairB;
+		// Up to three carries into the fours, which may carry into the eights.
+		long fours = carryA ^ carryB ^ carryC;
+		long eights = (carryA & carryB) | (carryC & (carryA ^ carryB));
+		// A count of 2 or 3 has the twos digit set and no fours or eights; the ones digit then decides.
+		return twos & ~fours & ~eights & (ones | c);
+	}
+
+	/*
+	 * Returns the next generation of the 64 cells in "c" under the given Rule, given their eight neighbor words.
+	 */
+	public static long next(Rule rule, long nw, long n, long ne, long w, long c, long e, long sw, long s, long se) {
+		if (rule.isConway()) return next(nw, n, ne, w, c, e, sw, s, se);
+		// The same adders as next(), down to the four bit planes of every count.
+		long topSum = nw ^ n ^ ne;
+		long topCarry = (nw & n) | (ne & (nw ^ n));
+		long bottomSum = sw ^ s ^ se;
+		long bottomCarry = (sw & s) | (se & (sw ^ s));
+		long sideSum = w ^ e;
+		long sideCarry = w & e;
+		long ones = topSum ^ bottomSum ^ sideSum;
+		long onesCarry = (topSum & bottomSum) | (sideSum & (topSum ^ bottomSum));
+		long pairA = topCarry ^ bottomCarry;
+		long pairB = sideCarry ^ onesCarry;
+		long twos = pairA ^ pairB;
+		long carryA = topCarry & bottomCarry;
+		long carryB = sideCarry & onesCarry;
+		long carryC = pairA & pairB;
+		long fours = carryA ^ carryB ^ carryC;
+		long eights = (carryA & carryB) | (carryC & (carryA ^ carryB));
+		// Each count the rule lists is matched against the planes, and the cells with it are born or survive.
+		int birthMask = rule.getBirthMask(), survivalMask = rule.getSurvivalMask();
+		int listed = birthMask | survivalMask;
+		long result = 0;
+		for (int count = 0; count <= 8; count++) {
+			if (((listed >>> count) & 1) == 0) continue;
+			long match = (((count & 1) != 0) ? ones : ~ones) & (((count & 2) != 0) ? twos : ~twos)
+					& (((count & 4) != 0) ? fours : ~fours) & (((count & 8) != 0) ? eights : ~eights);
+			if (((birthMask >>> count) & 1) == 0) match &= c;
+			else if (((survivalMask >>> count) & 1) == 0) match &= ~c;
+			result |= match;
+		}
+		return result;
+	}
+
+	/*
+	 * Returns the next generation of the 64 cells in "row", given the rows above and below it and the words to
+	 * the left and right of all three. Bit 63 of each "West" word is the cell just left of bit 0 of the row, and
+	 * bit 0 of each "East" word is the cell just right of bit 63.
+	 */
+	public static long nextRow(long up, long upWest, long upEast, long row, long west, long east, long down, long downWest, long downEast) {
+		return nextRow(Rule.CONWAY, up, upWest, upEast, row, west, east, down, downWest, downEast);
+	}
+
+	/*
+	 * Does the same as nextRow() above under the given Rule.
+	 */
+	public static long nextRow(Rule rule, long up, long upWest, long upEast, long row, long west, long east, long down, long downWest, long downEast) {
+		return next(rule, (up << 1) | (upWest >>> 63), up, (up >>> 1) | (upEast << 63),
+				(row << 1) | (west >>> 63), row, (row >>> 1) | (east << 63),
+				(down << 1) | (downWest >>> 63), down, (down >>> 1) | (downEast << 63));
+	}
+
+	/*
+	 * Returns the next generation of word "k" of a row of packed words, given the rows above and below it. The
+	 * words to the left and right of word "k" in each row supply the cells across its edges; past the ends of the
+	 * rows every cell counts as dead. Bits past the last cell of a row are not masked off.
+	 */
+	public static long nextWord(long[] above, long[] row, long[] below, int k) {
+		return nextWord(Rule.CONWAY, above, row, below, k);
+	}
+
+	/*
+	 * Does the same as nextWord() above under the given Rule.
+	 */
+	public static long nextWord(Rule rule, long[] above, long[] row, long[] below, int k) {
+		int words = row.length;
+		long n = above[k], c = row[k], s = below[k];
+		long nw = (n << 1), w = (c << 1), sw = (s << 1);
+		long ne = (n >>> 1), e = (c >>> 1), se = (s >>> 1);
+		if (k > 0) {
+			nw |= above[k - 1] >>> 63;
+			w |= row[k - 1] >>> 63;
+			sw |= below[k - 1] >>> 63;
+		}
+		if (k < words - 1) {
+			ne |= above[k + 1] << 63;
+			e |= row[k + 1] << 63;
+			se |= below[k + 1] << 63;
+		}
+		return next(rule, nw, n, ne, w, c, e, sw, s, se);
+	}
+
+	/*
+	 * Returns the next generation of word "k" of a row of packed words that is "width" cells long and whose ends
+	 * are joined, so that column 0 is just right of the last column and the other way around. The rows above and
+	 * below are joined the same way. Bits past the last cell of a row are not masked off.
+	 */
+	public static long nextWrappedWord(Rule rule, long[] above, long[] row, long[] below, int k, int width) {
+		int lastWord = row.length - 1;
+		int lastBit = (width - 1) & 63;
+		if (k > 0 && k < lastWord) return nextWord(rule, above, row, below, k);
+		long up = above[k], center = row[k], down = below[k];
+		long upWest, west, downWest, upEast, east, downEast;
+		if (k > 0) {
+			upWest = above[k - 1];
+			west = row[k - 1];
+			downWest = below[k - 1];
+		}
+		else {
+			upWest = above[lastWord] << (63 - lastBit);
+			west = row[lastWord] << (63 - lastBit);
+			downWest = below[lastWord] << (63 - lastBit);
+		}
+		if (k < lastWord) {
+			upEast = above[k + 1];
+			east = row[k + 1];
+			downEast = below[k + 1];
+		}
+		else if (lastBit == 63) {
+			upEast = above[0];
+			east = row[0];
+			downEast = below[0];
+		}
+		else {
+			// The cell just right of the last column is a padding bit of the same word, so column 0 goes there.
+			upEast = east = downEast = 0;
+			up |= (above[0] & 1) << (lastBit + 1);
+			center |= (row[0] & 1) << (lastBit + 1);
+			down |= (below[0] & 1) << (lastBit + 1);
+		}
+		return nextRow(rule, up, upWest, upEast, center, west, east, down, downWest, downEast);
+	}
+
+	/*
+	 * Works out the same thing as next() one cell at a time by counting neighbors, the way GameOfLife.willLive()
+	 * used to. This is only used to test next().
+	 */
+	static long nextSlowly(long nw, long n, long ne, long w, long c, long e, long sw, long s, long se) {
+		long result = 0;
+		for (int bit = 0; bit < 64; bit++) {
+			int count = (int) ((nw >>> bit) & 1) + (int) ((n >>> bit) & 1) + (int) ((ne >>> bit) & 1)
+					+ (int) ((w >>> bit) & 1) + (int) ((e >>> bit) & 1)
+					+ (int) ((sw >>> bit) & 1) + (int) ((s >>> bit) & 1) + (int) ((se >>> bit) & 1);
+			if (count == 3 || (count == 2 && ((c >>> bit) & 1) != 0)) result |= 1L << bit;
+		}
+		return result;
+	}
+
+	/*
+	 * Works out the same thing as next() under the given Rule one cell at a time, with one lookup in the Rule's
+	 * table per cell. This is only used to test next().
+	 */
+	static long nextSlowly(Rule rule, long nw, long n, long ne, long w, long c, long e, long sw, long s, long se) {
+		long[] words = {nw, n, ne, w, c, e, sw, s, se};
+		long result = 0;
+		for (int bit = 0; bit < 64; bit++) {
+			int neighborhood = 0;
+			for (int i = 0; i < 9; i++) neighborhood |= (int) ((words[i] >>> bit) & 1) << i;
+			if (rule.next(neighborhood)) result |= 1L << bit;
+		}
+		return result;
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) {
+		// Every one of the 512 neighborhoods, spread across the bits of 9 words.
+		long[] words = new long[9];
+		for (int hood = 0; hood < 512; hood++) {
+			for (int i = 0; i < 9; i++) {
+				if (((hood >>> i) & 1) != 0) words[i] |= 1L << (hood & 63);
+			}
+			if ((hood & 63) == 63) {
+				long fast = next(words[0], words[1], words[2], words[3], words[4], words[5], words[6], words[7], words[8]);
+				long slow = nextSlowly(words[0], words[1], words[2], words[3], words[4], words[5], words[6], words[7], words[8]);
+				if (fast != slow) System.out.println("Neighborhoods " + (hood - 63) + " to " + hood + " do not match!");
+				words = new long[9];
+			}
+		}
+		System.out.println("Checked all 512 neighborhoods");
+
+		// Every neighborhood again under a few other rules, against one table lookup per cell.
+		String[] rules = {"B36/S23", "B2/S", "B3678/S34678", "B0/S8", "B1357/S1357", "B/S012345678"};
+		for (int r = 0; r < rules.length; r++) {
+			Rule rule = Rule.parse(rules[r]);
+			boolean same = true;
+			for (int hood = 0; hood < 512; hood++) {
+				for (int i = 0; i < 9; i++) {
+					if (((hood >>> i) & 1) != 0) words[i] |= 1L << (hood & 63);
+				}
+				if ((hood & 63) == 63) {
+					long fast = next(rule, words[0], words[1], words[2], words[3], words[4], words[5], words[6], words[7], words[8]);
+					long slow = nextSlowly(rule, words[0], words[1], words[2], words[3], words[4], words[5], words[6], words[7], words[8]);
+					if (fast != slow) same = false;
+					words = new long[9];
+				}
+			}
+			System.out.println("All 512 neighborhoods match under " + rule + ": " + same);
+		}
+
+		Random random = new Random(7);
+		long[] soup = new long[9];
+		for (int i = 0; i < 9; i++) soup[i] = random.nextLong();
+		int rounds = 20000000;
+		long start = System.nanoTime();
+		long sink = 0;
+		for (int i = 0; i < rounds; i++) {
+			sink ^= next(soup[0], soup[1] + i, soup[2], soup[3], soup[4], soup[5], soup[6], soup[7], soup[8]);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("About " + (long) (rounds * 64L / seconds / 1e6) + " million cell updates per second (" + (sink & 1) + ")");
+
+		Rule highLife = Rule.parse("B36/S23");
+		start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			sink ^= next(highLife, soup[0], soup[1] + i, soup[2], soup[3], soup[4], soup[5], soup[6], soup[7], soup[8]);
+		}
+		seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("About " + (long) (rounds * 64L / seconds / 1e6) + " million cell updates per second under " + highLife
+				+ " (" + (sink & 1) + ")");
+	}
+
+}
@@ -0,0 +1,420 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+public class MappedBoard {
+
+	/*
+	 * This class is a Game Of Life board that lives in a file instead of on the heap, for boards too big to fit in
+	 * memory even at one bit per cell. The file holds a small header followed by the rows of the board, packed the
+	 * same way as a BitBoard (64 cells per long, little-endian), and it is memory-mapped so that the operating
+	 * system's page cache decides which parts are in memory at any time.
+	 *
+	 * A single mapping cannot be bigger than 2 GB, so the rows are mapped in segments of whole rows. nextGen() goes
+	 * through the board in row order and only keeps a window of three rows (the row being worked out and the rows
+	 * above and below it) on the heap, writing each new row back into the file in place. Since the file is read and
+	 * written front to back, the page cache can read ahead and write behind without the whole board ever having
+	 * to be in memory.
+	 *
+	 * The board is worked out under its Rule, which is Conway's unless another is given to create() or setRule(),
+	 * and is kept in the file. Its edges are always surrounded by dead cells: the window of rows is never wrapped
+	 * around, so copyFrom() rejects a game whose Topology joins its edges instead of quietly running it with dead
+	 * edges.
+	 *
+	 * The header is the magic number "GOLM", a version number, the height, the width, the generation number and
+	 * the birth and survival masks of the rule. Files of version 1, which had no rule, are read as Conway's.
+	 *
+	 * There are tests run at the end.
+	 */
+	public static final int MAGIC = 0x474F4C4D;
+	public static final int VERSION = 2;
+	private static final int HEADER_BYTES = 32;
+	private static final long SEGMENT_BYTES = 1L << 30;
+
+	private FileChannel channel;
+	private int height;
+	private int width;
+	private int wordsPerRow;
+	private long lastWordMask;
+	private long genNum;
+	private Rule rule;
+	private int rowsPerSegment;
+	private LongBuffer[] segments;
+	private MappedByteBuffer[] mappings;
+	private MappedByteBuffer header;
+	private long[] above;
+	private long[] row;
+	private long[] below;
+	private long[] result;
+
+	/*
+	 * Creates a new file of the given size holding an all-dead board at generation 1 under Conway's rules,
+	 * replacing any file that is already there, and maps it.
+	 */
+	public static MappedBoard create(Path path, int height, int width) throws IOException {
+		return create(path, height, width, Rule.CONWAY);
+	}
+
+	/*
+	 * Creates a new file of the given size holding an all-dead board at generation 1 under the given Rule,
+	 * replacing any file that is already there, and maps it.
+	 */
+	public static MappedBoard create(Path path, int height, int width, Rule rule) throws IOException {
+		if (height <= 0 || width <= 0) throw new IllegalArgumentException("Board dimensions must be positive: " + height + " x " + width);
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		int wordsPerRow = (width + 63) >>> 6;
+		// Writing the last byte makes the file full size; the rows in between read as 0 (dead).
+		channel.write(ByteBuffer.wrap(new byte[1]), HEADER_BYTES + (long) height * wordsPerRow * 8 - 1);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(height).putInt(width).putLong(1).putInt(rule.getBirthMask()).putInt(rule.getSurvivalMask());
+		header.flip();
+		channel.write(header, 0);
+		try {
+			return new MappedBoard(channel);
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/*
+	 * Opens and maps an existing board file.
+	 */
+	public static MappedBoard open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			return new MappedBoard(channel);
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/*
+	 * Maps the board in the given file, checking its header. Nothing is allocated from the header, and nothing is
+	 * written to the file, until the whole header has been checked against the size of the file.
+	 */
+	private MappedBoard(FileChannel channel) throws IOException {
+		this.channel = channel;
+		// Mapping past the end of the file would make the file longer.
+		if (channel.size() < HEADER_BYTES) throw new IOException("Not a mapped board file");
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		if (header.getInt(0) != MAGIC) throw new IOException("Not a mapped board file");
+		int version = header.getInt(4);
+		if (version != 1 && version != VERSION) throw new IOException("Unsupported mapped board version " + version);
+		height = header.getInt(8);
+		width = header.getInt(12);
+		genNum = header.getLong(16);
+		if (height <= 0 || width <= 0 || genNum < 1) throw new IOException("Mapped board file has a damaged header");
+		try {
+			rule = (version == 1) ? Rule.CONWAY : Rule.fromMasks(header.getInt(24), header.getInt(28));
+		}
+		catch (IllegalArgumentException e) {
+			throw new IOException("Mapped board file has a bad rule", e);
+		}
+		wordsPerRow = (width + 63) >>> 6;
+		lastWordMask = -1L >>> (wordsPerRow * 64 - width);
+		long rowBytes = (long) wordsPerRow * 8;
+		if (channel.size() < HEADER_BYTES + rowBytes * height) throw new IOException("Mapped board file is too short");
+		if (version == 1) {
+			header.putInt(4, VERSION);
+			setRule(rule);
+		}
+		rowsPerSegment = (int) Math.max(1, Math.min(height, SEGMENT_BYTES / rowBytes));
+		int segmentCount = (height + rowsPerSegment - 1) / rowsPerSegment;
+		segments = new LongBuffer[segmentCount];
+		mappings = new MappedByteBuffer[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			int firstRow = i * rowsPerSegment;
+			int rows = Math.min(rowsPerSegment, height - firstRow);
+			mappings[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + firstRow * rowBytes, rows * rowBytes);
+			mappings[i].order(ByteOrder.LITTLE_ENDIAN);
+			segments[i] = mappings[i].asLongBuffer();
+		}
+		above = new long[wordsPerRow];
+		row = new long[wordsPerRow];
+		below = new long[wordsPerRow];
+		result = new long[wordsPerRow];
+	}
+
+	/*
+	 * Copies row y of the board into the given array.
+	 */
+	private void readRow(int y, long[] into) {
+		segments[y / rowsPerSegment].get((y % rowsPerSegment) * wordsPerRow, into, 0, wordsPerRow);
+	}
+
+	/*
+	 * Copies the given array into row y of the board.
+	 */
+	private void writeRow(int y, long[] from) {
+		segments[y / rowsPerSegment].put((y % rowsPerSegment) * wordsPerRow, from, 0, wordsPerRow);
+	}
+
+	/*
+	 * Updates the board to the next generation, one row at a time from top to bottom, and increases "genNum" by
+	 * 1. Each row is read once; the original rows above and below the current one are kept in the window, so the
+	 * new row can be written over the old one straight away.
+	 */
+	public void nextGen() {
+		Arrays.fill(above, 0L);
+		readRow(0, row);
+		for (int y = 0; y < height; y++) {
+			if (y + 1 < height) readRow(y + 1, below);
+			else Arrays.fill(below, 0L);
+			for (int k = 0; k < wordsPerRow; k++) {
+				result[k] = LifeKernel.nextWord(rule, above, row, below, k);
+			}
+			result[wordsPerRow - 1] &= lastWordMask;
+			writeRow(y, result);
+			// Slide the window down a row, reusing the oldest array.
+			long[] oldest = above;
+			above = row;
+			row = below;
+			below = oldest;
+		}
+		genNum++;
+		header.putLong(16, genNum);
+	}
+
+	/*
+	 * Returns the status (Cell.ALIVE or Cell.DEAD) of the cell at the given location. A location that is not on
+	 * the board is treated as a dead cell.
+	 */
+	public int getStatus(int x, int y) {
+		if (!isValidLoc(x, y)) return Cell.DEAD;
+		long word = segments[y / rowsPerSegment].get((y % rowsPerSegment) * wordsPerRow + (x >>> 6));
+		return (int) (word >>> x) & 1;
+	}
+
+	/*
+	 * Sets the status of the cell at the given location. Any status other than Cell.DEAD is stored as Cell.ALIVE,
+	 * and locations that are not on the board are ignored.
+	 */
+	public void setStatus(int x, int y, int status) {
+		if (!isValidLoc(x, y)) return;
+		LongBuffer segment = segments[y / rowsPerSegment];
+		int index = (y % rowsPerSegment) * wordsPerRow + (x >>> 6);
+		long word = segment.get(index);
+		if (status == Cell.DEAD) word &= ~(1L << x);
+		else word |= 1L << x;
+		segment.put(index, word);
+	}
+
+	/*
+	 * Copies the cells and the Rule of the given game into the top-left corner of this board. The game must fit,
+	 * and must have dead edges like this board.
+	 */
+	public void copyFrom(GameOfLife game) {
+		if (game.getHeight() > height || game.getWidth() > width) throw new IllegalArgumentException("The game does not fit on this board");
+		if (game.getTopology().wraps()) {
+			throw new IllegalArgumentException("A mapped board has dead edges and cannot run a game with " + game.getTopology().toString().toLowerCase() + " edges");
+		}
+		setRule(game.getRule());
+		for (int y = 0; y < game.getHeight(); y++) {
+			readRow(y, row);
+			long[] source = game.board.getRow(y);
+			int last = source.length - 1;
+			long kept = row[last] & ~game.board.getLastWordMask();
+			System.arraycopy(source, 0, row, 0, source.length);
+			row[last] |= kept;
+			writeRow(y, row);
+		}
+	}
+
+	/*
+	 * Copies the top-left corner of this board into the given game, replacing all of its cells, and gives the
+	 * game this board's Rule.
+	 */
+	public void writeTo(GameOfLife game) {
+		game.clear();
+		game.setRule(rule);
+		int rows = Math.min(height, game.getHeight());
+		for (int y = 0; y < rows; y++) {
+			readRow(y, row);
+			long[] target = game.board.getRow(y);
+			System.arraycopy(row, 0, target, 0, Math.min(target.length, wordsPerRow));
+			target[target.length - 1] &= game.board.getLastWordMask();
+		}
+		game.markAllChanged();
+		game.genNum = (int) Math.min(genNum, Integer.MAX_VALUE);
+	}
+
+	/*
+	 * Returns the number of living cells on the board. This reads the whole file.
+	 */
+	public long population() {
+		long count = 0;
+		for (int y = 0; y < height; y++) {
+			readRow(y, row);
+			for (int k = 0; k < wordsPerRow; k++) count += Long.bitCount(row[k]);
+		}
+		return count;
+	}
+
+	/*
+	 * Makes sure every change so far has been written to the file.
+	 */
+	public void flush() {
+		for (int i = 0; i < mappings.length; i++) mappings[i].force();
+		header.force();
+	}
+
+	/*
+	 * Flushes the board and closes its file. The board cannot be used afterwards.
+	 */
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+
+	/*
+	 * Returns whether the given coordinates exist in respect to the dimensions of the board.
+	 */
+	public boolean isValidLoc(int x, int y) {
+		return (x >= 0 && y >= 0 && x < this.width && y < this.height);
+	}
+
+	/*
+	 * Returns the int value of "height" of this MappedBoard object.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/*
+	 * Returns the int value of "width" of this MappedBoard object.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/*
+	 * Returns the value of "genNum".
+	 */
+	public long getGenNum() {
+		return genNum;
+	}
+
+	/*
+	 * Sets the Rule that the following generations are worked out with, and stores it in the file.
+	 */
+	public void setRule(Rule r) {
+		rule = r;
+		header.putInt(24, r.getBirthMask());
+		header.putInt(28, r.getSurvivalMask());
+	}
+
+	/*
+	 * Returns the Rule that generations are worked out with.
+	 */
+	public Rule getRule() {
+		return rule;
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) throws IOException {
+		Path file = Paths.get(System.getProperty("java.io.tmpdir"), "mapped_board.golm");
+		GameOfLife game = new GameOfLife(300, 200);
+		Random random = new Random(11);
+		for (int y = 0; y < 300; y++) {
+			for (int x = 0; x < 200; x++) if (random.nextBoolean()) game.setStatus(x, y, Cell.ALIVE);
+		}
+		MappedBoard board = create(file, 300, 200);
+		board.copyFrom(game);
+		for (int i = 0; i < 50; i++) {
+			board.nextGen();
+			game.nextGen();
+		}
+		board.close();
+
+		MappedBoard reopened = open(file);
+		GameOfLife fromFile = new GameOfLife(300, 200);
+		reopened.writeTo(fromFile);
+		System.out.println("After 50 generations the file is at generation " + reopened.getGenNum() + " and matches GameOfLife: "
+				+ fromFile.toString().equals(game.toString()));
+		reopened.close();
+
+		// The rule is kept in the file, and a wrapping game is turned away.
+		GameOfLife highLife = new GameOfLife(100, 100);
+		highLife.setRule(Rule.parse("B36/S23"));
+		for (int i = 0; i < 3000; i++) highLife.setStatus(random.nextInt(100), random.nextInt(100), Cell.ALIVE);
+		MappedBoard mappedHighLife = create(file, 100, 100);
+		mappedHighLife.copyFrom(highLife);
+		mappedHighLife.close();
+		mappedHighLife = open(file);
+		for (int i = 0; i < 50; i++) {
+			mappedHighLife.nextGen();
+			highLife.nextGen();
+		}
+		GameOfLife fromHighLife = new GameOfLife(100, 100);
+		mappedHighLife.writeTo(fromHighLife);
+		mappedHighLife.close();
+		System.out.println("Reopened under " + fromHighLife.getRule() + " and after 50 generations matches GameOfLife: "
+				+ fromHighLife.toString().equals(highLife.toString()));
+		GameOfLife torus = new GameOfLife(100, 100);
+		torus.setTopology(Topology.TORUS);
+		MappedBoard flat = create(file, 100, 100);
+		try {
+			flat.copyFrom(torus);
+			System.out.println("The torus should have been rejected!");
+		}
+		catch (IllegalArgumentException e) {
+			System.out.println("A torus is rejected: " + e.getMessage());
+		}
+		flat.close();
+
+		// Damaged headers are refused with an IOException, and leave the file as it was.
+		int[][] damaged = {{0, 100}, {100, 0}, {-5, 100}, {100, -5}, {100000, 100}};
+		boolean refused = true;
+		for (int i = 0; i < damaged.length; i++) {
+			MappedBoard.create(file, 100, 100).close();
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+			ByteBuffer sizes = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+			// Written as version 1, so that a file that is upgraded before it is checked would show it.
+			sizes.putInt(1).putInt(damaged[i][0]).putInt(damaged[i][1]).flip();
+			channel.write(sizes, 4);
+			channel.close();
+			byte[] before = Files.readAllBytes(file);
+			try {
+				open(file).close();
+				refused = false;
+			}
+			catch (IOException e) {
+				refused &= Arrays.equals(before, Files.readAllBytes(file));
+			}
+		}
+		System.out.println("Headers with bad sizes are refused without changing the file: " + refused);
+		Files.delete(file);
+
+		Path big = Paths.get(System.getProperty("java.io.tmpdir"), "mapped_board_big.golm");
+		MappedBoard large = create(big, 20000, 20000);
+		for (int x = 0; x < 20000; x += 10) {
+			large.setStatus(x, 10000, Cell.ALIVE);
+			large.setStatus(x + 1, 10000, Cell.ALIVE);
+			large.setStatus(x + 2, 10000, Cell.ALIVE);
+		}
+		long start = System.nanoTime();
+		large.nextGen();
+		System.out.println("One generation of a 20000 x 20000 board took " + (System.nanoTime() - start) / 1000000 + " ms, population "
+				+ large.population() + " (should be 6000)");
+		large.close();
+		Files.delete(big);
+	}
+
+}
@@ -0,0 +1,288 @@
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class Metrics implements MetricsMXBean {
+
+	/*
+	 * This class collects numbers about a running Game Of Life: how long each generation and each paint takes (as
+	 * LatencyHistograms), how many generations and cell updates there have been, the population with the births
+	 * and deaths of the last generation, and the garbage collections so far. GameOfLife.setMetrics() and
+	 * BoardPanel.setMetrics() hand their timings to it. When neither has one, nothing is timed at all.
+	 *
+	 * Only the cells a generation actually worked out count as cell updates (see GameOfLife.getCellsWorkedOut()),
+	 * so a board that has mostly settled shows few cell updates rather than its whole area every generation.
+	 *
+	 * Every reporting period a background thread works out the generations and cell updates per second over that
+	 * period and, if given somewhere to log to, prints everything as one line. register() also makes the numbers
+	 * readable over JMX, through MetricsMXBean.
+	 *
+	 * Running with -Dgameoflife.metrics=SECONDS turns metrics on for GameOfLifeDisplay, logging every SECONDS
+	 * seconds.
+	 */
+	public static final String PROPERTY = "gameoflife.metrics";
+	public static final String OBJECT_NAME = "GameOfLife:type=Metrics";
+
+	private LatencyHistogram steps = new LatencyHistogram();
+	private LatencyHistogram paints = new LatencyHistogram();
+	private AtomicLong generations = new AtomicLong();
+	private AtomicLong cellUpdates = new AtomicLong();
+	private volatile int genNum;
+	private volatile long population;
+	private volatile long births;
+	private volatile long deaths;
+	private volatile double gensPerSecond;
+	private volatile double cellUpdatesPerSecond;
+	private long lastTick;
+	private long lastGenerations;
+	private long lastCellUpdates;
+	private PrintStream log;
+	private ScheduledExecutorService ticker;
+	private ObjectName registeredName;
+
+	/*
+	 * Constructs a Metrics that works out its rates every "periodMillis" milliseconds and prints a line to "log"
+	 * each time, unless "log" is null.
+	 */
+	public Metrics(long periodMillis, PrintStream log) {
+		this.log = log;
+		lastTick = System.nanoTime();
+		ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "Metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ticker.scheduleAtFixedRate(this::tick, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/*
+	 * Returns a Metrics that logs to System.out every so many seconds, as set by the "gameoflife.metrics" system
+	 * property, and is registered over JMX. Returns null if the property is not set.
+	 */
+	public static Metrics fromSystemProperty() {
+		String seconds = System.getProperty(PROPERTY);
+		if (seconds == null) return null;
+		Metrics metrics = new Metrics((long) (Double.parseDouble(seconds) * 1000), System.out);
+		try {
+			metrics.register();
+		}
+		catch (JMException e) {
+			System.err.println("Could not register the metrics over JMX: " + e);
+		}
+		return metrics;
+	}
+
+	/*
+	 * Records one generation of the given game, which took the given number of nanoseconds.
+	 */
+	public void recordStep(GameOfLife game, long nanos) {
+		steps.record(nanos);
+		generations.incrementAndGet();
+		cellUpdates.addAndGet(game.getCellsWorkedOut());
+		genNum = game.getGenNum();
+		population = game.getPopulation();
+		births = game.getBirths();
+		deaths = game.getDeaths();
+	}
+
+	/*
+	 * Records that the given game moved to another generation without working out the ones in between (see
+	 * GameOfLife.skipTo()). No step is timed or counted; only the generation number and the population are updated.
+	 */
+	public void recordSkip(GameOfLife game) {
+		genNum = game.getGenNum();
+		population = game.getPopulation();
+	}
+
+	/*
+	 * Records one paint, which took the given number of nanoseconds.
+	 */
+	public void recordPaint(long nanos) {
+		paints.record(nanos);
+	}
+
+	/*
+	 * Works out the rates over the period since the last tick, and logs a line if there is a log.
+	 */
+	private void tick() {
+		long now = System.nanoTime();
+		long gens = generations.get();
+		long updates = cellUpdates.get();
+		double seconds = (now - lastTick) / 1e9;
+		gensPerSecond = (gens - lastGenerations) / seconds;
+		cellUpdatesPerSecond = (updates - lastCellUpdates) / seconds;
+		lastTick = now;
+		lastGenerations = gens;
+		lastCellUpdates = updates;
+		if (log != null) log.println(summary());
+	}
+
+	/*
+	 * Returns every number as one line of text.
+	 */
+	public String summary() {
+		String line = String.format("gen %d  %.1f gens/s  %.3e cell updates/s  population %d (+%d -%d)  step p50 %s p99 %s max %s",
+				genNum, gensPerSecond, cellUpdatesPerSecond, population, births, deaths, millis(steps.getValueAtPercentile(50)),
+				millis(steps.getValueAtPercentile(99)), millis(steps.getMax()));
+		if (paints.getCount() > 0) {
+			line += String.format("  paint p50 %s p99 %s max %s", millis(paints.getValueAtPercentile(50)),
+					millis(paints.getValueAtPercentile(99)), millis(paints.getMax()));
+		}
+		return line + "  gc " + getGcCount() + " (" + getGcMillis() + " ms)";
+	}
+
+	/*
+	 * Returns the given number of nanoseconds as milliseconds, for summary().
+	 */
+	private static String millis(long nanos) {
+		return String.format("%.3f ms", nanos / 1e6);
+	}
+
+	/*
+	 * Makes the numbers readable over JMX under OBJECT_NAME.
+	 */
+	public void register() throws JMException {
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		registeredName = name;
+	}
+
+	/*
+	 * Stops the background thread and removes the numbers from JMX.
+	 */
+	public void close() {
+		ticker.shutdown();
+		if (registeredName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+			}
+			catch (JMException e) {
+				// Already gone.
+			}
+			registeredName = null;
+		}
+	}
+
+	public long getGenerations() {
+		return generations.get();
+	}
+
+	public int getGenNum() {
+		return genNum;
+	}
+
+	public double getGensPerSecond() {
+		return gensPerSecond;
+	}
+
+	public double getCellUpdatesPerSecond() {
+		return cellUpdatesPerSecond;
+	}
+
+	public long getPopulation() {
+		return population;
+	}
+
+	public long getBirths() {
+		return births;
+	}
+
+	public long getDeaths() {
+		return deaths;
+	}
+
+	public long getStepP50Micros() {
+		return steps.getValueAtPercentile(50) / 1000;
+	}
+
+	public long getStepP99Micros() {
+		return steps.getValueAtPercentile(99) / 1000;
+	}
+
+	public long getStepMaxMicros() {
+		return steps.getMax() / 1000;
+	}
+
+	public long getPaintCount() {
+		return paints.getCount();
+	}
+
+	public long getPaintP50Micros() {
+		return paints.getValueAtPercentile(50) / 1000;
+	}
+
+	public long getPaintP99Micros() {
+		return paints.getValueAtPercentile(99) / 1000;
+	}
+
+	public long getPaintMaxMicros() {
+		return paints.getMax() / 1000;
+	}
+
+	public long getGcCount() {
+		long total = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			total += Math.max(collector.getCollectionCount(), 0);
+		}
+		return total;
+	}
+
+	public long getGcMillis() {
+		long total = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			total += Math.max(collector.getCollectionTime(), 0);
+		}
+		return total;
+	}
+
+	/*
+	 * Forgets the step and paint timings so far.
+	 */
+	public void reset() {
+		steps.reset();
+		paints.reset();
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) throws Exception {
+		GameOfLife game = new GameOfLife(512, 512);
+		java.util.Random random = new java.util.Random(17);
+		for (int y = 0; y < 512; y++) {
+			for (int x = 0; x < 512; x++) if (random.nextBoolean()) game.setStatus(x, y, Cell.ALIVE);
+		}
+		Metrics metrics = new Metrics(500, System.out);
+		metrics.register();
+		game.setMetrics(metrics);
+		long population = game.getPopulation();
+		boolean balanced = true;
+		for (int i = 0; i < 500; i++) {
+			game.nextGen();
+			if (game.getPopulation() != population + game.getBirths() - game.getDeaths()) balanced = false;
+			population = game.getPopulation();
+		}
+		Thread.sleep(600);
+		System.out.println("Births minus deaths always matched the change in population: " + balanced
+				+ ", and the kept population matches a recount: " + (game.getPopulation() == game.board.population()));
+		Object gens = ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(OBJECT_NAME), "Generations");
+		System.out.println("JMX reports " + gens + " generations (should be 500)");
+
+		// Only the tiles worked out count as cell updates.
+		GameOfLife glider = new GameOfLife(512, 512);
+		PatternLibrary.get("glider").stamp(glider, 100, 100);
+		glider.nextGen();
+		long first = glider.getCellsWorkedOut();
+		glider.nextGen();
+		System.out.println("A glider on 512 x 512 has " + first + " cells worked out in its first generation (should be " + 512 * 512
+				+ ") and " + glider.getCellsWorkedOut() + " in its second (should be " + 9 * 64 * 64 + ")");
+		metrics.close();
+	}
+
+}
@@ -0,0 +1,42 @@
+public interface MetricsMXBean {
+
+	/*
+	 * The numbers a Metrics object shows over JMX (in JConsole or VisualVM, for example), under the name
+	 * "GameOfLife:type=Metrics". The rates are for the last reporting period.
+	 */
+
+	long getGenerations();
+
+	int getGenNum();
+
+	double getGensPerSecond();
+
+	double getCellUpdatesPerSecond();
+
+	long getPopulation();
+
+	long getBirths();
+
+	long getDeaths();
+
+	long getStepP50Micros();
+
+	long getStepP99Micros();
+
+	long getStepMaxMicros();
+
+	long getPaintCount();
+
+	long getPaintP50Micros();
+
+	long getPaintP99Micros();
+
+	long getPaintMaxMicros();
+
+	long getGcCount();
+
+	long getGcMillis();
+
+	void reset();
+
+}
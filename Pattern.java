@@ -0,0 +1,292 @@
+public class Pattern {
+
+	/*
+	 * This class is a pattern of living cells compiled into packed rows the same way as a BitBoard (bit x % 64 of
+	 * word x / 64 of a row holds column x), so that it can be stamped onto a board a whole word at a time. Stamping
+	 * at a column that is not a multiple of 64 shifts each word of the pattern into the two words of the board it
+	 * falls across, so placing a pattern costs a couple of ORs per 64 cells of it, however many of them are alive.
+	 * Stamping only ever adds living cells; the cells of the board under the pattern's dead cells are left alone.
+	 *
+	 * A pattern can be turned and flipped into any of its 8 orientations with oriented(). Each orientation is
+	 * worked out once, the first time it is asked for, and kept with the pattern. The orientation is a number from
+	 * 0 to 7 made of FLIP_X, FLIP_Y and TRANSPOSE, applied in that order; rotation() gives the ones for quarter
+	 * turns.
+	 *
+	 * Patterns never change once made, so one Pattern can be stamped from any number of threads. See
+	 * PatternLibrary for the patterns that come with the game.
+	 *
+	 * There are tests run at the end.
+	 */
+	public static final int FLIP_X = 1;
+	public static final int FLIP_Y = 2;
+	public static final int TRANSPOSE = 4;
+
+	private final String name;
+	private final int width;
+	private final int height;
+	private final int wordsPerRow;
+	private final long[][] rows;
+	private final long population;
+	private final Pattern base;
+	private final int orientation;
+	private final Pattern[] orientations;
+
+	/*
+	 * Constructs a Pattern with the given name from packed rows of the given width, which it keeps. The bits past
+	 * "width" must be 0. "base" is the pattern in orientation 0 (or null if this is it), and "orientation" the
+	 * orientation of this one.
+	 */
+	private Pattern(String name, int width, long[][] rows, Pattern base, int orientation) {
+		this.name = name;
+		this.width = width;
+		this.height = rows.length;
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.rows = rows;
+		long count = 0;
+		for (int y = 0; y < height; y++) {
+			for (int k = 0; k < wordsPerRow; k++) count += Long.bitCount(rows[y][k]);
+		}
+		this.population = count;
+		this.base = (base != null) ? base : this;
+		this.orientation = orientation;
+		this.orientations = (base != null) ? null : new Pattern[8];
+		if (base == null) orientations[0] = this;
+	}
+
+	/*
+	 * Returns a Pattern with the given name holding every cell of the given game's board.
+	 */
+	public static Pattern fromGame(String name, GameOfLife game) {
+		long[][] rows = new long[game.getHeight()][];
+		for (int y = 0; y < rows.length; y++) rows[y] = game.board.getRow(y).clone();
+		return new Pattern(name, game.getWidth(), rows, null, 0);
+	}
+
+	/*
+	 * Returns the Pattern in the given orientation (see FLIP_X, FLIP_Y and TRANSPOSE), counted from this one.
+	 */
+	public Pattern oriented(int turn) {
+		if (turn < 0 || turn > 7) throw new IllegalArgumentException("The orientation must be from 0 to 7: " + turn);
+		int wanted = combine(orientation, turn);
+		Pattern[] known = base.orientations;
+		synchronized (known) {
+			if (known[wanted] == null) known[wanted] = base.transform(wanted);
+			return known[wanted];
+		}
+	}
+
+	/*
+	 * Returns the orientation that does the same as turning by "first" and then by "then".
+	 */
+	private static int combine(int first, int then) {
+		for (int result = 0; result < 8; result++) {
+			if (turn(result, 1, 2) == turn(then, (int) (turn(first, 1, 2) >> 32), (int) turn(first, 1, 2))) return result;
+		}
+		throw new IllegalStateException("No orientation combines " + first + " and " + then);
+	}
+
+	/*
+	 * Returns where the given orientation takes the point (x, y) around the origin, as x in the high half of a long
+	 * and y in the low half.
+	 */
+	private static long turn(int orientation, int x, int y) {
+		if ((orientation & FLIP_X) != 0) x = -x;
+		if ((orientation & FLIP_Y) != 0) y = -y;
+		if ((orientation & TRANSPOSE) != 0) {
+			int temp = x;
+			x = y;
+			y = temp;
+		}
+		return ((long) x << 32) | (y & 0xffffffffL);
+	}
+
+	/*
+	 * Returns the orientation of this pattern, counted from the one it was made in.
+	 */
+	public int getOrientation() {
+		return orientation;
+	}
+
+	/*
+	 * Returns the orientation that turns a pattern the given number of quarter turns clockwise.
+	 */
+	public static int rotation(int quarterTurns) {
+		switch (quarterTurns & 3) {
+			case 1: return FLIP_Y | TRANSPOSE;
+			case 2: return FLIP_X | FLIP_Y;
+			case 3: return FLIP_X | TRANSPOSE;
+			default: return 0;
+		}
+	}
+
+	/*
+	 * Works out the pattern in the given orientation, one cell at a time.
+	 */
+	private Pattern transform(int orientation) {
+		boolean transpose = (orientation & TRANSPOSE) != 0;
+		int newWidth = transpose ? height : width, newHeight = transpose ? width : height;
+		long[][] result = new long[newHeight][(newWidth + 63) >>> 6];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (getStatus(x, y) == Cell.DEAD) continue;
+				int nx = ((orientation & FLIP_X) != 0) ? width - 1 - x : x;
+				int ny = ((orientation & FLIP_Y) != 0) ? height - 1 - y : y;
+				if (transpose) {
+					int temp = nx;
+					nx = ny;
+					ny = temp;
+				}
+				result[ny][nx >>> 6] |= 1L << nx;
+			}
+		}
+		return new Pattern(name, newWidth, result, this, orientation);
+	}
+
+	/*
+	 * Stamps the pattern onto the given game's board with its top-left cell at (left, top), and marks the tiles
+	 * it covers as changed. The parts of the pattern that are not on the board are left out.
+	 */
+	public void stamp(GameOfLife game, int left, int top) {
+		stamp(game.board, left, top);
+		int fromX = Math.max(left, 0), toX = Math.min(left + width, game.getWidth()) - 1;
+		int fromY = Math.max(top, 0), toY = Math.min(top + height, game.getHeight()) - 1;
+		if (fromX > toX || fromY > toY) return;
+		for (int y = fromY & ~63; y <= toY; y += 64) {
+			for (int x = fromX & ~63; x <= toX; x += 64) game.markChanged(x, y);
+		}
+	}
+
+	/*
+	 * Stamps the pattern onto the given game's board in the given orientation, with the top-left cell of the
+	 * turned pattern at (left, top).
+	 */
+	public void stamp(GameOfLife game, int left, int top, int orientation) {
+		oriented(orientation).stamp(game, left, top);
+	}
+
+	/*
+	 * Stamps the pattern onto the given BitBoard with its top-left cell at (left, top), ORing each word of the
+	 * pattern into the words of the board it falls across. The parts of the pattern that are not on the board are
+	 * left out.
+	 */
+	public void stamp(BitBoard board, int left, int top) {
+		int shift = left & 63;
+		int firstWord = left >> 6;
+		int boardWords = board.getWordsPerRow();
+		int fromY = Math.max(0, -top), toY = Math.min(height, board.getHeight() - top);
+		for (int y = fromY; y < toY; y++) {
+			long[] from = rows[y];
+			long[] into = board.getRow(top + y);
+			for (int k = 0; k < wordsPerRow; k++) {
+				long bits = from[k];
+				if (bits == 0) continue;
+				int word = firstWord + k;
+				if (word >= 0 && word < boardWords) into[word] |= bits << shift;
+				if (shift != 0 && word + 1 >= 0 && word + 1 < boardWords) into[word + 1] |= bits >>> (64 - shift);
+			}
+			into[boardWords - 1] &= board.getLastWordMask();
+		}
+	}
+
+	/*
+	 * Returns the status (Cell.ALIVE or Cell.DEAD) of the cell of the pattern at the given location, which is dead
+	 * if it is outside the pattern.
+	 */
+	public int getStatus(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) return Cell.DEAD;
+		return (int) (rows[y][x >>> 6] >>> x) & 1;
+	}
+
+	/*
+	 * Returns the name of the pattern.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * Returns the width of the pattern.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/*
+	 * Returns the height of the pattern.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/*
+	 * Returns the number of living cells in the pattern.
+	 */
+	public long getPopulation() {
+		return population;
+	}
+
+	/*
+	 * Returns the pattern in the same {0}{1} format as GameOfLife.toString().
+	 */
+	public String toString() {
+		StringBuilder result = new StringBuilder(height * (width * 3 + 1));
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) result.append('{').append(getStatus(x, y)).append('}');
+			result.append('\n');
+		}
+		return result.toString();
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) {
+		GameOfLife source = new GameOfLife(2, 3);
+		source.setStatus(0, 0, Cell.ALIVE);
+		source.setStatus(1, 0, Cell.ALIVE);
+		source.setStatus(2, 1, Cell.ALIVE);
+		Pattern l = fromGame("L", source);
+		System.out.println("Turned a quarter turn clockwise:\n" + l.oriented(rotation(1)) + "Flipped across:\n" + l.oriented(FLIP_X)
+				+ "Turned four times is the same pattern: " + (l.oriented(rotation(1)).oriented(rotation(1)).oriented(rotation(1)).oriented(rotation(1)) == l));
+
+		// Stamping across word edges and off the board agrees with setting the cells one at a time.
+		GameOfLife stamped = new GameOfLife(100, 200);
+		GameOfLife set = new GameOfLife(100, 200);
+		java.util.Random random = new java.util.Random(25);
+		GameOfLife blob = new GameOfLife(20, 70);
+		for (int i = 0; i < 500; i++) blob.setStatus(random.nextInt(70), random.nextInt(20), Cell.ALIVE);
+		Pattern pattern = fromGame("blob", blob);
+		for (int i = 0; i < 50; i++) {
+			int left = random.nextInt(260) - 70, top = random.nextInt(120) - 20, orientation = random.nextInt(8);
+			Pattern turned = pattern.oriented(orientation);
+			turned.stamp(stamped, left, top);
+			for (int y = 0; y < turned.getHeight(); y++) {
+				for (int x = 0; x < turned.getWidth(); x++) {
+					if (turned.getStatus(x, y) == Cell.ALIVE) set.setStatus(left + x, top + y, Cell.ALIVE);
+				}
+			}
+		}
+		System.out.println("Stamping gives the same board as setting the cells one at a time: " + stamped.toString().equals(set.toString())
+				+ ", with the same hash: " + (stamped.getHash() == set.getHash()));
+		stamped.nextGen();
+		set.nextGen();
+		System.out.println("And the same next generation: " + stamped.toString().equals(set.toString()));
+
+		// Placing thousands of copies.
+		GameOfLife big = new GameOfLife(4096, 4096);
+		Pattern gun = PatternLibrary.get("gosper glider gun");
+		long start = System.nanoTime();
+		int copies = 0;
+		for (int repeat = 0; repeat < 100; repeat++) {
+			for (int top = 0; top + gun.getHeight() <= 4096; top += 16) {
+				for (int left = 0; left + gun.getWidth() <= 4096; left += 48) {
+					gun.stamp(big, left + (top & 7), top);
+					copies++;
+				}
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Stamped " + copies + " glider guns at " + String.format("%.1f", copies / seconds / 1e6) + " million a second");
+	}
+
+}
@@ -0,0 +1,447 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+public class PatternIO {
+
+	/*
+	 * This class reads and writes Game Of Life patterns in the two standard text formats: RLE (.rle), where each
+	 * row is written as runs like "3o2b" for three living and two dead cells, and plaintext (.cells), where each
+	 * row is a line of '.' for dead and 'O' for living cells.
+	 *
+	 * The "rule = ..." of an RLE pattern is read into the new game's Rule, and written out from the game's Rule.
+	 * Plaintext has no way of giving a rule, so those patterns are read with Conway's rules.
+	 *
+	 * Everything goes through NIO channels and a fixed size buffer, so a pattern is never held in memory as text.
+	 * While reading, every run of living cells is written straight into the game's BitBoard a whole word at a time,
+	 * and while writing, the runs are found a whole word at a time, so even multi-megabyte patterns take well under
+	 * a second.
+	 *
+	 * There are tests run at the end.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int RLE_LINE_LENGTH = 70;
+
+	/*
+	 * This class only has static methods and is not meant to be instantiated.
+	 */
+	private PatternIO() {
+	}
+
+	/*
+	 * Reads the pattern in the given file into a new GameOfLife just big enough to hold it. Files ending in ".rle"
+	 * are read as RLE, and anything else as plaintext.
+	 */
+	public static GameOfLife read(Path path) throws IOException {
+		if (path.toString().toLowerCase().endsWith(".rle")) {
+			FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+			try {
+				return readRLE(in);
+			}
+			finally {
+				in.close();
+			}
+		}
+		return readCells(path);
+	}
+
+	/*
+	 * Writes the given game to the given file. Files ending in ".rle" are written as RLE, and anything else as
+	 * plaintext.
+	 */
+	public static void write(GameOfLife game, Path path) throws IOException {
+		FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			if (path.toString().toLowerCase().endsWith(".rle")) writeRLE(game, out);
+			else writeCells(game, out);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/*
+	 * Reads an RLE pattern into a new GameOfLife whose size and Rule are taken from the pattern's
+	 * "x = ..., y = ..., rule = ..." line.
+	 */
+	public static GameOfLife readRLE(ReadableByteChannel in) throws IOException {
+		ByteStream stream = new ByteStream(in);
+		Header header = readRLEHeader(stream);
+		GameOfLife game = new GameOfLife(Math.max(header.height, 1), Math.max(header.width, 1));
+		if (header.rule != null) game.setRule(header.rule);
+		readRLEBody(stream, game, 0, 0);
+		return game;
+	}
+
+	/*
+	 * Reads an RLE pattern into an existing GameOfLife, with the pattern's top-left cell at (left, top). Cells
+	 * already alive in the game are left alive, and the parts of the pattern that are not on the board are ignored.
+	 * The game keeps its own Rule.
+	 */
+	public static void readRLE(ReadableByteChannel in, GameOfLife game, int left, int top) throws IOException {
+		ByteStream stream = new ByteStream(in);
+		readRLEHeader(stream);
+		readRLEBody(stream, game, left, top);
+	}
+
+	/*
+	 * Skips the "#" comment lines at the start of an RLE pattern and reads its "x = ..., y = ..." line, returning
+	 * the width and height it gives, and its rule if it has one.
+	 */
+	private static Header readRLEHeader(ByteStream stream) throws IOException {
+		while (true) {
+			String line = stream.readLine();
+			if (line == null) throw new IOException("RLE pattern has no \"x = ..., y = ...\" line");
+			line = line.trim();
+			if (line.length() == 0 || line.charAt(0) == '#') continue;
+			if (!line.startsWith("x")) throw new IOException("Expected \"x = ..., y = ...\" but got: " + line);
+			Header header = new Header();
+			String[] fields = line.split(",");
+			for (int i = 0; i < fields.length; i++) {
+				String[] parts = fields[i].split("=");
+				if (parts.length != 2) continue;
+				String key = parts[0].trim();
+				String value = parts[1].trim();
+				if (key.equals("x")) header.width = Integer.parseInt(value);
+				else if (key.equals("y")) header.height = Integer.parseInt(value);
+				else if (key.equals("rule")) {
+					// Anything after a ':' (such as Golly's bounded grids) is not part of the rule itself.
+					if (value.indexOf(':') >= 0) value = value.substring(0, value.indexOf(':'));
+					try {
+						header.rule = Rule.parse(value);
+					}
+					catch (IllegalArgumentException e) {
+						throw new IOException("Unknown rule in RLE pattern: " + value);
+					}
+				}
+			}
+			return header;
+		}
+	}
+
+	/*
+	 * Reads the runs of an RLE pattern up to its closing '!' into the game.
+	 */
+	private static void readRLEBody(ByteStream stream, GameOfLife game, int left, int top) throws IOException {
+		BitBoard board = game.board;
+		int x = 0, y = 0, count = 0;
+		int c;
+		while ((c = stream.read()) != -1 && c != '!') {
+			if (c >= '0' && c <= '9') {
+				count = count * 10 + (c - '0');
+				continue;
+			}
+			int run = Math.max(count, 1);
+			if (c == 'b' || c == '.') x += run;
+			else if (c == '$') {
+				y += run;
+				x = 0;
+			}
+			else if (c == ' ' || c == '\t' || c == '\r' || c == '\n') continue;
+			else {
+				// 'o', or any other state of a multi-state pattern, is a living cell.
+				board.setRun(top + y, left + x, left + x + run);
+				x += run;
+			}
+			count = 0;
+		}
+		game.markAllChanged();
+	}
+
+	/*
+	 * Reads the plaintext pattern in the given file into a new GameOfLife just big enough to hold it. The file is
+	 * read twice, once to measure the pattern and once to fill in the cells.
+	 */
+	public static GameOfLife readCells(Path path) throws IOException {
+		FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			ByteStream stream = new ByteStream(in);
+			int height = 0, width = 0, lineWidth = 0;
+			boolean comment = false, lineStart = true;
+			int c;
+			while ((c = stream.read()) != -1) {
+				if (lineStart && c == '!') comment = true;
+				lineStart = false;
+				if (c == '\n') {
+					if (!comment) height++;
+					width = Math.max(width, lineWidth);
+					lineWidth = 0;
+					comment = false;
+					lineStart = true;
+				}
+				else if (c != '\r' && !comment) lineWidth++;
+			}
+			if (!lineStart && !comment) height++;
+			width = Math.max(width, lineWidth);
+			GameOfLife game = new GameOfLife(Math.max(height, 1), Math.max(width, 1));
+			in.position(0);
+			readCells(in, game, 0, 0);
+			return game;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * Reads a plaintext pattern into an existing GameOfLife, with the pattern's top-left cell at (left, top). Lines
+	 * starting with '!' are comments, and 'O' or '*' is a living cell. Cells already alive in the game are left
+	 * alive, and the parts of the pattern that are not on the board are ignored.
+	 */
+	public static void readCells(ReadableByteChannel in, GameOfLife game, int left, int top) throws IOException {
+		BitBoard board = game.board;
+		ByteStream stream = new ByteStream(in);
+		int x = 0, y = 0, runStart = -1;
+		boolean comment = false, lineStart = true;
+		int c;
+		while ((c = stream.read()) != -1) {
+			if (lineStart && c == '!') comment = true;
+			lineStart = false;
+			if (c == '\n') {
+				if (!comment) {
+					if (runStart >= 0) board.setRun(top + y, left + runStart, left + x);
+					y++;
+				}
+				x = 0;
+				runStart = -1;
+				comment = false;
+				lineStart = true;
+			}
+			else if (comment || c == '\r') continue;
+			else if (c == 'O' || c == '*') {
+				if (runStart < 0) runStart = x;
+				x++;
+			}
+			else {
+				if (runStart >= 0) board.setRun(top + y, left + runStart, left + x);
+				runStart = -1;
+				x++;
+			}
+		}
+		if (runStart >= 0) board.setRun(top + y, left + runStart, left + x);
+		game.markAllChanged();
+	}
+
+	/*
+	 * Writes the given game as an RLE pattern. Runs of empty rows are merged into one "n$", dead cells at the end
+	 * of a row are left out, and lines are kept to at most 70 characters.
+	 */
+	public static void writeRLE(GameOfLife game, WritableByteChannel out) throws IOException {
+		BitBoard board = game.board;
+		int width = board.getWidth();
+		ByteSink sink = new ByteSink(out);
+		sink.write("x = " + width + ", y = " + board.getHeight() + ", rule = " + game.getRule() + "\n");
+		int pendingRows = 0;
+		for (int y = 0; y < board.getHeight(); y++) {
+			long[] row = board.getRow(y);
+			int x = nextAlive(row, 0, width);
+			if (x < width) {
+				if (pendingRows > 0) sink.writeRun(pendingRows, '$');
+				pendingRows = 0;
+			}
+			int deadStart = 0;
+			while (x < width) {
+				int end = nextDead(row, x, width);
+				if (x > deadStart) sink.writeRun(x - deadStart, 'b');
+				sink.writeRun(end - x, 'o');
+				deadStart = end;
+				x = nextAlive(row, end, width);
+			}
+			pendingRows++;
+		}
+		sink.write('!');
+		sink.write('\n');
+		sink.flush();
+	}
+
+	/*
+	 * Writes the given game as a plaintext pattern. Every row is written out in full, since plaintext has no other
+	 * way of saying how big the board is.
+	 */
+	public static void writeCells(GameOfLife game, WritableByteChannel out) throws IOException {
+		BitBoard board = game.board;
+		int width = board.getWidth();
+		ByteSink sink = new ByteSink(out);
+		sink.write("!Game Of Life pattern, " + width + " x " + board.getHeight() + "\n");
+		for (int y = 0; y < board.getHeight(); y++) {
+			long[] row = board.getRow(y);
+			int x = 0;
+			int alive = nextAlive(row, 0, width);
+			while (alive < width) {
+				for (; x < alive; x++) sink.write('.');
+				int end = nextDead(row, alive, width);
+				for (; x < end; x++) sink.write('O');
+				alive = nextAlive(row, end, width);
+			}
+			for (; x < width; x++) sink.write('.');
+			sink.write('\n');
+		}
+		sink.flush();
+	}
+
+	/*
+	 * Returns the column of the first living cell of the row at or after "from", or "width" if there is none.
+	 */
+	private static int nextAlive(long[] row, int from, int width) {
+		if (from >= width) return width;
+		int i = from >>> 6;
+		long word = row[i] & (-1L << from);
+		while (word == 0) {
+			if (++i == row.length) return width;
+			word = row[i];
+		}
+		return Math.min((i << 6) + Long.numberOfTrailingZeros(word), width);
+	}
+
+	/*
+	 * Returns the column of the first dead cell of the row at or after "from", or "width" if there is none.
+	 */
+	private static int nextDead(long[] row, int from, int width) {
+		if (from >= width) return width;
+		int i = from >>> 6;
+		long word = ~row[i] & (-1L << from);
+		while (word == 0) {
+			if (++i == row.length) return width;
+			word = ~row[i];
+		}
+		return Math.min((i << 6) + Long.numberOfTrailingZeros(word), width);
+	}
+
+	/*
+	 * What the "x = ..., y = ..., rule = ..." line of an RLE pattern gives. "rule" is null if it has no rule.
+	 */
+	private static class Header {
+		int width;
+		int height;
+		Rule rule;
+	}
+
+	/*
+	 * Reads a channel one byte at a time through a fixed size buffer.
+	 */
+	private static class ByteStream {
+		private final ReadableByteChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		ByteStream(ReadableByteChannel channel) {
+			this.channel = channel;
+			buffer.flip();
+		}
+
+		/*
+		 * Returns the next byte, or -1 at the end of the channel.
+		 */
+		int read() throws IOException {
+			if (!buffer.hasRemaining()) {
+				buffer.clear();
+				int count;
+				do {
+					count = channel.read(buffer);
+				} while (count == 0);
+				buffer.flip();
+				if (count < 0) return -1;
+			}
+			return buffer.get() & 0xff;
+		}
+
+		/*
+		 * Returns the next line without its line break, or null at the end of the channel.
+		 */
+		String readLine() throws IOException {
+			StringBuilder line = new StringBuilder();
+			int c = read();
+			if (c == -1) return null;
+			while (c != -1 && c != '\n') {
+				if (c != '\r') line.append((char) c);
+				c = read();
+			}
+			return line.toString();
+		}
+	}
+
+	/*
+	 * Writes to a channel through a fixed size buffer, keeping track of the length of the current line so RLE
+	 * lines can be wrapped.
+	 */
+	private static class ByteSink {
+		private final WritableByteChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private int lineLength;
+
+		ByteSink(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		void write(char c) throws IOException {
+			if (!buffer.hasRemaining()) flush();
+			buffer.put((byte) c);
+			lineLength = (c == '\n') ? 0 : lineLength + 1;
+		}
+
+		void write(String text) throws IOException {
+			for (int i = 0; i < text.length(); i++) write(text.charAt(i));
+		}
+
+		/*
+		 * Writes an RLE run such as "12o", starting a new line first if the run would not fit on this one.
+		 */
+		void writeRun(int count, char tag) throws IOException {
+			String run = (count == 1) ? "" : Integer.toString(count);
+			if (lineLength + run.length() + 1 > RLE_LINE_LENGTH) write('\n');
+			write(run);
+			write(tag);
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) channel.write(buffer);
+			buffer.clear();
+		}
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) throws IOException {
+		GameOfLife gun = new GameOfLife(12, 40);
+		int[][] cells = {{3, 7}, {3, 8}, {4, 7}, {4, 8}, {13, 7}, {13, 8}, {13, 9}, {14, 6}, {14, 10}, {15, 5}, {16, 5},
+				{15, 11}, {16, 11}, {17, 8}, {18, 6}, {18, 10}, {19, 7}, {19, 8}, {19, 9}, {20, 8}, {23, 7}, {23, 6},
+				{23, 5}, {24, 7}, {24, 6}, {24, 5}, {25, 4}, {25, 8}, {27, 4}, {27, 3}, {27, 9}, {27, 8}, {37, 5},
+				{37, 6}, {38, 5}, {38, 6}};
+		for (int i = 0; i < cells.length; i++) gun.setStatus(cells[i][0], cells[i][1], Cell.ALIVE);
+
+		Path rle = Paths.get(System.getProperty("java.io.tmpdir"), "glider_gun.rle");
+		Path plain = Paths.get(System.getProperty("java.io.tmpdir"), "glider_gun.cells");
+		write(gun, rle);
+		write(gun, plain);
+		System.out.println("The glider gun as RLE:\n" + new String(Files.readAllBytes(rle)));
+		System.out.println("Reading the RLE back gives the same board: " + read(rle).toString().equals(gun.toString()));
+		System.out.println("Reading the plaintext back gives the same board: " + read(plain).toString().equals(gun.toString()));
+		gun.setRule(Rule.parse("B36/S23"));
+		write(gun, rle);
+		System.out.println("Written under HighLife, the RLE is read back as " + read(rle).getRule() + " (should be B36/S23)");
+
+		GameOfLife big = new GameOfLife(4000, 4000);
+		Random random = new Random(10);
+		for (int y = 0; y < 4000; y++) {
+			for (int x = 0; x < 4000; x++) if (random.nextInt(3) == 0) big.setStatus(x, y, Cell.ALIVE);
+		}
+		Path bigFile = Paths.get(System.getProperty("java.io.tmpdir"), "soup.rle");
+		long start = System.nanoTime();
+		write(big, bigFile);
+		long written = System.nanoTime();
+		GameOfLife bigCopy = read(bigFile);
+		long readBack = System.nanoTime();
+		System.out.println("A 4000 x 4000 soup is " + Files.size(bigFile) / 1000 + " kB of RLE, written in "
+				+ (written - start) / 1000000 + " ms and read in " + (readBack - written) / 1000000 + " ms");
+		System.out.println("The soup read back has the same population: " + (bigCopy.board.population() == big.board.population()));
+	}
+
+}
@@ -0,0 +1,178 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PatternLibrary {
+
+	/*
+	 * This class holds the patterns that come with the game, such as the glider and the Gosper glider gun, and any
+	 * pattern files that have been loaded. Every pattern is kept as RLE text until it is first asked for, is then
+	 * read with PatternIO and compiled into a Pattern once, and the same Pattern is handed out from then on, so
+	 * stamping a pattern never reads or parses it again. The patterns that come with the game are looked up by
+	 * name, ignoring case. Loaded files are kept by their full path instead of their file name, so a file called
+	 * "glider" never hides or is hidden by the built-in glider, and two files with the same name in different
+	 * folders stay apart.
+	 *
+	 * There are tests run at the end.
+	 */
+	private static final LinkedHashMap<String, String> RLE = new LinkedHashMap<String, String>();
+	private static final ConcurrentHashMap<String, Pattern> compiled = new ConcurrentHashMap<String, Pattern>();
+	private static final ConcurrentHashMap<Path, Pattern> loaded = new ConcurrentHashMap<Path, Pattern>();
+
+	static {
+		RLE.put("block", "x = 2, y = 2\n2o$2o!");
+		RLE.put("beehive", "x = 4, y = 3\nb2o$o2bo$b2o!");
+		RLE.put("blinker", "x = 3, y = 1\n3o!");
+		RLE.put("pulsar", "x = 13, y = 13\n2b3o3b3o2$o4bobo4bo$o4bobo4bo$o4bobo4bo$2b3o3b3o2$2b3o3b3o$o4bobo4bo$o4bobo4bo$o4bobo4bo2$2b3o3b3o!");
+		RLE.put("glider", "x = 3, y = 3\nbo$2bo$3o!");
+		RLE.put("lwss", "x = 5, y = 4\nbo2bo$o$o3bo$4o!");
+		RLE.put("r-pentomino", "x = 3, y = 3\nb2o$2o$bo!");
+		RLE.put("acorn", "x = 7, y = 3\nbo$3bo$2o2b3o!");
+		RLE.put("diehard", "x = 8, y = 3\n6bo$2o$bo3b3o!");
+		RLE.put("gosper glider gun", "x = 36, y = 9\n24bo$22bobo$12b2o6b2o12b2o$11bo3bo4b2o12b2o$2o8bo5bo3b2o$2o8bo3bob2o4bobo$10bo5bo7bo$11bo3bo$12b2o!");
+	}
+
+	/*
+	 * This class only has static methods and is not meant to be instantiated.
+	 */
+	private PatternLibrary() {
+	}
+
+	/*
+	 * Returns the pattern with the given name, which is one of names(), or the path of a file given to load()
+	 * before.
+	 */
+	public static Pattern get(String name) {
+		String key = name.trim().toLowerCase();
+		String rle = RLE.get(key);
+		if (rle == null) {
+			Pattern pattern = null;
+			try {
+				pattern = loaded.get(fullPath(Paths.get(name)));
+			}
+			catch (InvalidPathException e) {
+				// Not a path either.
+			}
+			if (pattern == null) throw new IllegalArgumentException("Unknown pattern " + name + ", expected one of " + names() + " or a loaded file");
+			return pattern;
+		}
+		return compiled.computeIfAbsent(key, k -> {
+			try {
+				return Pattern.fromGame(k, PatternIO.readRLE(Channels.newChannel(new ByteArrayInputStream(rle.getBytes(StandardCharsets.US_ASCII)))));
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException("The pattern " + k + " could not be read", e);
+			}
+		});
+	}
+
+	/*
+	 * Reads the pattern in the given file (see PatternIO.read()) the first time it is asked for, and returns it.
+	 * The pattern is named after the file, and can be asked for again with get() by the file's path.
+	 */
+	public static Pattern load(Path path) throws IOException {
+		Path key = fullPath(path);
+		Pattern pattern = loaded.get(key);
+		if (pattern == null) {
+			pattern = Pattern.fromGame(key.getFileName().toString(), PatternIO.read(key));
+			Pattern earlier = loaded.putIfAbsent(key, pattern);
+			if (earlier != null) pattern = earlier;
+		}
+		return pattern;
+	}
+
+	/*
+	 * Returns the given path as an absolute path with no "." or ".." in it, which loaded files are kept by.
+	 */
+	private static Path fullPath(Path path) {
+		return path.toAbsolutePath().normalize();
+	}
+
+	/*
+	 * Returns the names of the patterns that come with the game.
+	 */
+	public static List<String> names() {
+		return new ArrayList<String>(RLE.keySet());
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) throws IOException {
+		for (String name : names()) {
+			Pattern pattern = get(name);
+			System.out.println(name + " is " + pattern.getWidth() + " x " + pattern.getHeight() + " with " + pattern.getPopulation() + " cells");
+		}
+		System.out.println("Asking again gives the same compiled pattern: " + (get("Glider") == get("glider")));
+
+		// The gun stamped at (3, 3) is the one the display used to place cell by cell.
+		int[][] gunCells = {{3, 7}, {3, 8}, {4, 7}, {4, 8}, {13, 7}, {13, 8}, {13, 9}, {14, 6}, {14, 10}, {15, 5}, {16, 5}, {15, 11},
+				{16, 11}, {17, 8}, {18, 6}, {18, 10}, {19, 7}, {19, 8}, {19, 9}, {20, 8}, {23, 7}, {23, 6}, {23, 5}, {24, 7}, {24, 6},
+				{24, 5}, {25, 4}, {25, 8}, {27, 4}, {27, 3}, {27, 9}, {27, 8}, {37, 5}, {37, 6}, {38, 5}, {38, 6}};
+		GameOfLife stamped = new GameOfLife(50);
+		GameOfLife set = new GameOfLife(50);
+		get("gosper glider gun").stamp(stamped, 3, 3);
+		for (int i = 0; i < gunCells.length; i++) set.setStatus(gunCells[i][0], gunCells[i][1], Cell.ALIVE);
+		System.out.println("The gun matches the display's old gun: " + stamped.toString().equals(set.toString()));
+
+		// The pulsar has period 3, and a glider turned any way still flies.
+		GameOfLife pulsar = new GameOfLife(20, 20);
+		get("pulsar").stamp(pulsar, 3, 3);
+		String start = pulsar.toString();
+		pulsar.nextGen();
+		boolean changed = !pulsar.toString().equals(start);
+		pulsar.nextGen();
+		pulsar.nextGen();
+		System.out.println("The pulsar comes back after 3 generations: " + (changed && pulsar.toString().equals(start)));
+		boolean flies = true;
+		for (int orientation = 0; orientation < 8; orientation++) {
+			GameOfLife game = new GameOfLife(20, 20);
+			Pattern glider = get("glider").oriented(orientation);
+			glider.stamp(game, 8, 8);
+			for (int i = 0; i < 4; i++) game.nextGen();
+			boolean moved = false;
+			for (int d = 0; d < 4; d++) {
+				GameOfLife shifted = new GameOfLife(20, 20);
+				glider.stamp(shifted, 8 + ((d & 1) * 2 - 1), 8 + ((d & 2) - 1));
+				moved |= shifted.toString().equals(game.toString());
+			}
+			flies &= moved;
+		}
+		System.out.println("A glider in each of the 8 orientations has moved one cell diagonally after 4 generations: " + flies);
+		try {
+			get("nothing");
+			System.out.println("The pattern \"nothing\" should not have been found!");
+		}
+		catch (IllegalArgumentException e) {
+			System.out.println("An unknown pattern is rejected: " + e.getMessage());
+		}
+
+		// A file called "glider" does not get mixed up with the built-in glider, nor with another file of the
+		// same name.
+		Path folder = Files.createTempDirectory("patterns");
+		Path first = Files.createDirectory(folder.resolve("a")).resolve("glider");
+		Path second = Files.createDirectory(folder.resolve("b")).resolve("glider");
+		Files.write(first, "OO\nOO\n".getBytes(StandardCharsets.US_ASCII));
+		Files.write(second, "OOO\n".getBytes(StandardCharsets.US_ASCII));
+		Pattern firstLoaded = load(first), secondLoaded = load(second);
+		System.out.println("Two files called glider load as " + firstLoaded.getPopulation() + " and " + secondLoaded.getPopulation()
+				+ " cells (should be 4 and 3), the built-in glider still has " + get("glider").getPopulation() + " (should be 5), and get() by path gives the same patterns: "
+				+ (get(first.toString()) == firstLoaded && get(second.toString()) == secondLoaded));
+		Files.delete(first);
+		Files.delete(second);
+		Files.delete(first.getParent());
+		Files.delete(second.getParent());
+		Files.delete(folder);
+	}
+
+}
@@ -0,0 +1,191 @@
+public class Rule {
+
+	/*
+	 * This class is a life-like rule, written as a rulestring such as "B3/S23": a dead cell with a number of living
+	 * neighbors listed after the B is born, a living cell with a number listed after the S survives, and every
+	 * other cell is dead in the next generation. Conway's Game Of Life is B3/S23, HighLife is B36/S23, Seeds is B2/S
+	 * and Day & Night is B3678/S34678. The older form that lists the survival counts first, "23/3", is read as well.
+	 *
+	 * A Rule is worked out once, when it is parsed, into a table of the next state of a cell for every one of the
+	 * 512 ways its 3 x 3 neighborhood can be filled, so a single cell is a single lookup. LifeKernel reads the birth
+	 * and survival counts instead, to work out 64 cells at once. A Rule never changes, so switching a game to a
+	 * different one is just handing it another object.
+	 *
+	 * There are tests run at the end.
+	 */
+	public static final Rule CONWAY = parse("B3/S23");
+
+	private final int birthMask;
+	private final int survivalMask;
+	private final boolean[] table = new boolean[512];
+
+	/*
+	 * Constructs a Rule from its birth and survival counts, where bit n of each mask is set if a count of n
+	 * living neighbors is listed.
+	 */
+	private Rule(int birthMask, int survivalMask) {
+		this.birthMask = birthMask;
+		this.survivalMask = survivalMask;
+		for (int neighborhood = 0; neighborhood < 512; neighborhood++) {
+			int count = Integer.bitCount(neighborhood & ~(1 << 4));
+			if ((neighborhood & (1 << 4)) != 0) table[neighborhood] = survives(count);
+			else table[neighborhood] = isBorn(count);
+		}
+	}
+
+	/*
+	 * Returns the Rule for the given rulestring, in the "B3/S23" form (upper or lower case, with or without the
+	 * slash, in either order) or the "23/3" form.
+	 */
+	public static Rule parse(String rulestring) {
+		String text = rulestring.trim().toUpperCase();
+		int birthMask = 0, survivalMask = 0;
+		if (text.indexOf('B') >= 0 || text.indexOf('S') >= 0) {
+			int mask = -1;
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c == 'B') mask = 0;
+				else if (c == 'S') mask = 1;
+				else if (c == '/') continue;
+				else if (mask >= 0 && c >= '0' && c <= '8') {
+					if (mask == 0) birthMask |= 1 << (c - '0');
+					else survivalMask |= 1 << (c - '0');
+				}
+				else throw new IllegalArgumentException("Not a rulestring: " + rulestring);
+			}
+		}
+		else {
+			String[] parts = text.split("/", -1);
+			if (parts.length != 2) throw new IllegalArgumentException("Not a rulestring: " + rulestring);
+			survivalMask = countsOf(parts[0], rulestring);
+			birthMask = countsOf(parts[1], rulestring);
+		}
+		return new Rule(birthMask, survivalMask);
+	}
+
+	/*
+	 * Returns the Rule with the given birth and survival masks (see getBirthMask() and getSurvivalMask()), as
+	 * stored in a file.
+	 */
+	public static Rule fromMasks(int birthMask, int survivalMask) {
+		if ((birthMask & ~0x1FF) != 0 || (survivalMask & ~0x1FF) != 0) {
+			throw new IllegalArgumentException("Not a birth and survival mask: " + birthMask + ", " + survivalMask);
+		}
+		return new Rule(birthMask, survivalMask);
+	}
+
+	/*
+	 * Returns the mask of the neighbor counts listed in the given digits, for parse().
+	 */
+	private static int countsOf(String digits, String rulestring) {
+		int mask = 0;
+		for (int i = 0; i < digits.length(); i++) {
+			char c = digits.charAt(i);
+			if (c < '0' || c > '8') throw new IllegalArgumentException("Not a rulestring: " + rulestring);
+			mask |= 1 << (c - '0');
+		}
+		return mask;
+	}
+
+	/*
+	 * Returns whether the center cell of the given neighborhood is alive in the next generation. Bit
+	 * (dy + 1) * 3 + (dx + 1) of "neighborhood" is the cell at (x + dx, y + dy), so bit 4 is the cell itself.
+	 */
+	public boolean next(int neighborhood) {
+		return table[neighborhood];
+	}
+
+	/*
+	 * Returns whether a dead cell with the given number of living neighbors is born.
+	 */
+	public boolean isBorn(int count) {
+		return ((birthMask >>> count) & 1) != 0;
+	}
+
+	/*
+	 * Returns whether a living cell with the given number of living neighbors survives.
+	 */
+	public boolean survives(int count) {
+		return ((survivalMask >>> count) & 1) != 0;
+	}
+
+	/*
+	 * Returns the birth counts as a mask, where bit n is set if a dead cell with n living neighbors is born.
+	 */
+	public int getBirthMask() {
+		return birthMask;
+	}
+
+	/*
+	 * Returns the survival counts as a mask, where bit n is set if a living cell with n living neighbors survives.
+	 */
+	public int getSurvivalMask() {
+		return survivalMask;
+	}
+
+	/*
+	 * Returns whether this is Conway's B3/S23, which LifeKernel has a faster way of working out.
+	 */
+	public boolean isConway() {
+		return birthMask == (1 << 3) && survivalMask == ((1 << 2) | (1 << 3));
+	}
+
+	/*
+	 * Returns whether dead cells with no living neighbors are born, so that empty space does not stay empty.
+	 */
+	public boolean isBornFromNothing() {
+		return (birthMask & 1) != 0;
+	}
+
+	/*
+	 * Returns the rulestring in the "B3/S23" form.
+	 */
+	public String toString() {
+		StringBuilder result = new StringBuilder("B");
+		for (int n = 0; n <= 8; n++) {
+			if (isBorn(n)) result.append(n);
+		}
+		result.append("/S");
+		for (int n = 0; n <= 8; n++) {
+			if (survives(n)) result.append(n);
+		}
+		return result.toString();
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof Rule)) return false;
+		Rule rule = (Rule) other;
+		return birthMask == rule.birthMask && survivalMask == rule.survivalMask;
+	}
+
+	public int hashCode() {
+		return birthMask * 512 + survivalMask;
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) {
+		System.out.println("B36/S23 reads as " + parse("B36/S23") + ", b3678s34678 as " + parse("b3678s34678") + ", 23/3 as "
+				+ parse("23/3") + ", S23/B36 as " + parse("S23/B36") + " and B2/S as " + parse("B2/S"));
+		System.out.println("B3/S23 is Conway: " + parse("B3/S23").isConway() + ", and equals CONWAY: " + parse("s23/b3").equals(CONWAY));
+		try {
+			parse("B39/S23");
+			System.out.println("B39/S23 should not have been read!");
+		}
+		catch (IllegalArgumentException e) {
+			System.out.println("B39/S23 is rejected: " + e.getMessage());
+		}
+
+		// The table agrees with the old nested comparisons of GameOfLife.willLive() for every neighborhood.
+		boolean same = true;
+		for (int neighborhood = 0; neighborhood < 512; neighborhood++) {
+			int count = Integer.bitCount(neighborhood & ~(1 << 4));
+			boolean isAlive = (neighborhood & (1 << 4)) != 0;
+			boolean expected = isAlive ? !(count >= 4 || count <= 1) : !(count >= 4 || count <= 1 || count == 2);
+			if (CONWAY.next(neighborhood) != expected) same = false;
+		}
+		System.out.println("The B3/S23 table matches Conway's rules everywhere: " + same);
+	}
+
+}
@@ -0,0 +1,291 @@
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class Simulation {
+
+	/*
+	 * This class runs a GameOfLife on its own thread, so that stepping never happens on the Swing event dispatch
+	 * thread and a slow generation cannot freeze the window. The game belongs to the simulation thread: anything
+	 * else that wants to change it (drawing with the mouse, randomizing, clearing) hands the change over with
+	 * submit(), and it is run on the simulation thread between generations.
+	 *
+	 * The simulation either runs as fast as it can or aims for a target number of generations per second. After a
+	 * generation it publishes a copy of the board as a Frame for the display to paint. There are three frames: the
+	 * one the simulation fills in, the one the display is painting, and the latest published one in between, which
+	 * each side swaps its own frame with. Nothing waits on anything and nothing is allocated. If the display is
+	 * still busy with the last frame, the simulation does not copy the board at all and just keeps stepping, so
+	 * the display always paints the newest generation and skips the ones in between.
+	 */
+	private GameOfLife game;
+	private Thread thread;
+	private LinkedBlockingQueue<Runnable> commands = new LinkedBlockingQueue<Runnable>();
+	private volatile boolean running;
+	private volatile boolean closed;
+	private volatile double targetRate;
+	private volatile int publishedGenNum;
+	private volatile Runnable frameListener;
+	private volatile boolean densityWanted;
+	private Frame back;
+	private Frame front;
+	private AtomicReference<Frame> middle;
+
+	/*
+	 * A copy of the board at one generation, for the display to paint, with the counts of its cells in blocks
+	 * for a zoomed out view if the display asked for them.
+	 */
+	static class Frame {
+		BitBoard cells;
+		int genNum;
+		DensityPyramid pyramid;
+		boolean pyramidBuilt;
+		volatile boolean fresh;
+
+		Frame(GameOfLife game) {
+			cells = new BitBoard(game.getHeight(), game.getWidth());
+			cells.copyFrom(game.board);
+			genNum = game.getGenNum();
+		}
+	}
+
+	/*
+	 * Constructs a Simulation of the given game and starts its thread, which waits for start() or for changes to
+	 * be submitted. The game should not be touched by any other thread from now on.
+	 */
+	public Simulation(GameOfLife game) {
+		this.game = game;
+		back = new Frame(game);
+		front = new Frame(game);
+		middle = new AtomicReference<Frame>(new Frame(game));
+		publishedGenNum = game.getGenNum();
+		thread = new Thread(this::runLoop, "Simulation");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/*
+	 * Runs on the simulation thread: carries out submitted changes and, while running, steps the game and
+	 * publishes frames.
+	 */
+	private void runLoop() {
+		long nextStep = System.nanoTime();
+		Runnable command = null;
+		try {
+			while (!closed) {
+				boolean changed = false;
+				if (command != null) {
+					command.run();
+					changed = true;
+				}
+				while ((command = commands.poll()) != null) {
+					command.run();
+					changed = true;
+				}
+				if (!running) {
+					if (changed) publish(true);
+					// Sleep until there is something to do.
+					command = commands.take();
+					nextStep = System.nanoTime();
+					continue;
+				}
+				double rate = targetRate;
+				if (rate > 0) {
+					long now = System.nanoTime();
+					if (nextStep - now > 0) {
+						if (changed) publish(true);
+						// A submitted change wakes the thread early; it is run before the step.
+						command = commands.poll(nextStep - now, TimeUnit.NANOSECONDS);
+						continue;
+					}
+					long period = (long) (1e9 / rate);
+					nextStep = Math.max(nextStep + period, now - period);
+				}
+				game.nextGen();
+				publish(changed);
+			}
+		}
+		catch (InterruptedException e) {
+			// close() interrupts the thread to stop it.
+		}
+	}
+
+	/*
+	 * Copies the board into the simulation's frame and swaps it in as the latest one, unless the display has not
+	 * taken the last one yet (which is skipped when "force" is true, for changes that must be shown).
+	 */
+	private void publish(boolean force) {
+		if (!force && middle.get().fresh) return;
+		back.cells.copyFrom(game.board);
+		back.genNum = game.getGenNum();
+		back.pyramidBuilt = false;
+		if (densityWanted) {
+			if (back.pyramid == null) back.pyramid = new DensityPyramid(back.cells);
+			back.pyramid.build();
+			back.pyramidBuilt = true;
+		}
+		back.fresh = true;
+		back = middle.getAndSet(back);
+		publishedGenNum = game.getGenNum();
+		Runnable listener = frameListener;
+		if (listener != null) listener.run();
+	}
+
+	/*
+	 * Returns the newest frame that has been published. The frame can be read until the next call, which may hand
+	 * it back to the simulation. This must only be called from one thread (the one painting the frames).
+	 */
+	Frame takeFrame() {
+		if (middle.get().fresh) {
+			front = middle.getAndSet(front);
+			front.fresh = false;
+		}
+		return front;
+	}
+
+	/*
+	 * Hands a change to the game over to the simulation thread, which runs it before the next generation.
+	 */
+	public void submit(Runnable change) {
+		commands.add(change);
+	}
+
+	/*
+	 * Starts stepping the game.
+	 */
+	public void start() {
+		submit(() -> running = true);
+	}
+
+	/*
+	 * Stops stepping the game. The last generation stepped is published.
+	 */
+	public void stop() {
+		submit(() -> running = false);
+	}
+
+	/*
+	 * Steps the game by one generation, whether or not it is running.
+	 */
+	public void step() {
+		submit(() -> game.nextGen());
+	}
+
+	/*
+	 * Returns whether the game is being stepped.
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/*
+	 * Sets the number of generations per second to aim for. Zero or less means as fast as possible.
+	 */
+	public void setTargetRate(double gensPerSecond) {
+		targetRate = gensPerSecond;
+		submit(() -> { });
+	}
+
+	/*
+	 * Returns the number of generations per second aimed for, or 0 for as fast as possible.
+	 */
+	public double getTargetRate() {
+		return Math.max(0, targetRate);
+	}
+
+	/*
+	 * Sets something to run on the simulation thread each time a frame is published, usually to ask the display
+	 * to repaint. It should be quick and must not touch the game.
+	 */
+	public void setFrameListener(Runnable listener) {
+		frameListener = listener;
+	}
+
+	/*
+	 * Sets whether each frame should come with a DensityPyramid of its cells, which the display needs when it is
+	 * zoomed out. Counting the cells here keeps that work off the display's thread.
+	 */
+	public void setDensityWanted(boolean wanted) {
+		densityWanted = wanted;
+	}
+
+	/*
+	 * Returns the generation number of the latest frame published.
+	 */
+	public int getPublishedGenNum() {
+		return publishedGenNum;
+	}
+
+	/*
+	 * Returns the height of the game.
+	 */
+	public int getHeight() {
+		return game.getHeight();
+	}
+
+	/*
+	 * Returns the width of the game.
+	 */
+	public int getWidth() {
+		return game.getWidth();
+	}
+
+	/*
+	 * Stops the simulation thread and waits for it to finish. The game can be used by other threads again
+	 * afterwards.
+	 */
+	public void close() throws InterruptedException {
+		closed = true;
+		thread.interrupt();
+		thread.join();
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		GameOfLife game = new GameOfLife(500, 500);
+		java.util.Random random = new java.util.Random(14);
+		for (int y = 0; y < 500; y++) {
+			for (int x = 0; x < 500; x++) if (random.nextBoolean()) game.setStatus(x, y, Cell.ALIVE);
+		}
+		Simulation simulation = new Simulation(game);
+		int[] published = new int[1];
+		simulation.setFrameListener(() -> published[0]++);
+		simulation.start();
+		Thread.sleep(1000);
+		// Pretend to be a display that paints a frame every 16 ms.
+		int lastGen = 0, painted = 0;
+		boolean increasing = true;
+		long end = System.nanoTime() + 1000000000L;
+		while (System.nanoTime() < end) {
+			Frame frame = simulation.takeFrame();
+			if (frame.genNum < lastGen) increasing = false;
+			lastGen = frame.genNum;
+			painted++;
+			Thread.sleep(16);
+		}
+		simulation.stop();
+		simulation.setTargetRate(50);
+		simulation.start();
+		Thread.sleep(1000);
+		// The frame waiting from before the sleep is old, so take it and wait for a new one.
+		simulation.takeFrame();
+		Thread.sleep(40);
+		int before = simulation.takeFrame().genNum;
+		for (int i = 0; i < 50; i++) {
+			simulation.takeFrame();
+			Thread.sleep(20);
+		}
+		int rateGens = simulation.takeFrame().genNum - before;
+		simulation.stop();
+		simulation.submit(() -> game.clear());
+		Thread.sleep(100);
+		Frame cleared = simulation.takeFrame();
+		simulation.close();
+		System.out.println("Ran flat out to generation " + lastGen + ", painting " + painted + " frames of " + published[0]
+				+ " published, always newer: " + increasing);
+		System.out.println("At a target of 50 gens/sec it ran " + rateGens + " in a second");
+		System.out.println("After a submitted clear the frame has a population of " + cleared.cells.population());
+	}
+
+}
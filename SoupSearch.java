@@ -0,0 +1,541 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SoupSearch {
+
+	/*
+	 * This class runs large numbers of random soups and counts the objects they settle into: the still lifes,
+	 * oscillators and spaceships left over once the soup has burned out. A soup is a SOUP_SIZE x SOUP_SIZE square
+	 * where every cell is alive with a chance of one half, filled from a SplittableRandom seeded with the search's
+	 * seed and the soup's number, so any soup can be run again on its own. Each soup is run in a SparseUniverse,
+	 * so the gliders it sends out fly away instead of crashing into an edge.
+	 *
+	 * A soup is taken to have settled once its population has repeated with some period of up to MAX_PERIOD for
+	 * the last HISTORY generations. Its living cells are then split into objects. Cells that touch are always in
+	 * the same object. Two groups of touching cells that come within 2 cells of each other (close enough to share
+	 * a neighbor) are put in the same object only if they interact: if running the two together, for one period
+	 * of the pair or MAX_PERIOD generations, ever gives anything but the two of them run apart. So two blinkers end
+	 * to end with 1 cell between them are two blinkers. Each object is then run on its own until it comes back to
+	 * the same shape, which tells its period and whether it moves. An object that does not come back within
+	 * MAX_PERIOD generations (say three groups that only interact all together) is counted as "unidentified".
+	 *
+	 * Objects are named the way other soup searchers name them (apgcodes): "xs" and the population for a still
+	 * life, "xp" and the period for an oscillator, "xq" and the period for a spaceship, then "_" and the object's
+	 * cells in the extended Wechsler format. That format cuts the object into strips 5 cells tall and writes each
+	 * column of a strip as one base-32 digit, with the strips separated by "z" and runs of empty columns
+	 * shortened. Of every phase of the object in each of its 8 orientations, the shortest code is used (the first
+	 * in alphabetical order among the shortest), so the same object always gets the same name: a block is xs4_33,
+	 * a blinker xp2_7 and a glider xq4_153.
+	 *
+	 * The soups are shared out between threads, which each take the next soup number until there are none left.
+	 * The census of every object found goes into a ConcurrentHashMap of LongAdders, which threads can add to at the
+	 * same time without waiting for each other, and the name found for each object's shape is remembered so that
+	 * the common objects are only run on their own once.
+	 *
+	 * It is run as "java SoupSearch soups=10000 threads=8 seed=1 rule=B3/S23 top=20", where every option can be
+	 * left out.
+	 */
+	public static final int SOUP_SIZE = 16;
+	public static final int MAX_GENS = 30000;
+	public static final int MAX_PERIOD = 60;
+	public static final int HISTORY = 4 * MAX_PERIOD;
+	public static final String UNIDENTIFIED = "unidentified";
+	private static final String DIGITS = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+	private final long seed;
+	private final Rule rule;
+	private final ConcurrentHashMap<String, LongAdder> census = new ConcurrentHashMap<String, LongAdder>();
+	private final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<String, String>();
+	private final AtomicLong nextSoup = new AtomicLong();
+	private final LongAdder soupCount = new LongAdder();
+	private final LongAdder unsettledCount = new LongAdder();
+
+	/*
+	 * Constructs a SoupSearch under the given Rule, with soups made from the given seed.
+	 */
+	public SoupSearch(long seed, Rule rule) {
+		if (rule.isBornFromNothing()) throw new IllegalArgumentException("Soups cannot be run under " + rule + ", where empty cells are born");
+		this.seed = seed;
+		this.rule = rule;
+	}
+
+	/*
+	 * Runs the given number of soups on the given number of threads, following on from the soups already run, and
+	 * returns once they are all done.
+	 */
+	public void run(long soups, int threads) throws InterruptedException {
+		long last = nextSoup.get() + soups;
+		ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+			Thread thread = new Thread(task, "Soup search");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+		for (int t = 0; t < threads; t++) {
+			results.add(pool.submit(() -> {
+				SparseUniverse soup = new SparseUniverse();
+				soup.setRule(rule);
+				SparseUniverse[] universes = universes(rule);
+				long[] populations = new long[HISTORY];
+				long index;
+				while ((index = nextSoup.getAndIncrement()) < last) runSoup(index, soup, universes, populations);
+				return null;
+			}));
+		}
+		pool.shutdown();
+		try {
+			for (int t = 0; t < threads; t++) results.get(t).get();
+		}
+		catch (ExecutionException e) {
+			pool.shutdownNow();
+			throw new IllegalStateException("A soup could not be run", e.getCause());
+		}
+		pool.awaitTermination(1, TimeUnit.MINUTES);
+		nextSoup.set(last);
+	}
+
+	/*
+	 * Returns the three universes under the given Rule that separate() and name() run objects in.
+	 */
+	private static SparseUniverse[] universes(Rule rule) {
+		SparseUniverse[] universes = new SparseUniverse[3];
+		for (int i = 0; i < universes.length; i++) {
+			universes[i] = new SparseUniverse();
+			universes[i].setRule(rule);
+		}
+		return universes;
+	}
+
+	/*
+	 * Runs the soup with the given number until it settles and adds its objects to the census. "soup" and
+	 * "universes" are the thread's own universes for the soup and for running objects apart, and "populations"
+	 * its own array for the soup's last populations.
+	 */
+	private void runSoup(long index, SparseUniverse soup, SparseUniverse[] universes, long[] populations) {
+		soup.clear();
+		SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + index);
+		for (int y = 0; y < SOUP_SIZE; y++) {
+			int bits = random.nextInt();
+			for (int x = 0; x < SOUP_SIZE; x++) {
+				if ((bits >>> x & 1) != 0) soup.setStatus(x, y, Cell.ALIVE);
+			}
+		}
+		soupCount.increment();
+		if (!settle(soup, populations)) {
+			unsettledCount.increment();
+			return;
+		}
+		addObjects(soup.getLivingCells(), universes);
+	}
+
+	/*
+	 * Splits the given living cells (x and y one after the other) of a settled soup into objects and adds them to
+	 * the census.
+	 */
+	void addObjects(long[] cells, SparseUniverse[] universes) {
+		ArrayList<long[]> objects = separate(cells, universes);
+		for (int i = 0; i < objects.size(); i++) {
+			census.computeIfAbsent(name(objects.get(i), universes[0]), key -> new LongAdder()).increment();
+		}
+	}
+
+	/*
+	 * Runs the soup until its population has repeated with a period of up to MAX_PERIOD for the last HISTORY
+	 * generations, or it has died out. Returns false if that has not happened after MAX_GENS generations.
+	 */
+	private static boolean settle(SparseUniverse soup, long[] populations) {
+		for (int gen = 0; gen < MAX_GENS; gen++) {
+			long population = soup.getPopulation();
+			if (population == 0) return true;
+			populations[gen % HISTORY] = population;
+			if (gen >= HISTORY && gen % MAX_PERIOD == 0 && repeats(populations, gen)) return true;
+			soup.nextGen();
+		}
+		return false;
+	}
+
+	/*
+	 * Returns whether the populations of the last HISTORY generations, up to the given one, repeat with some
+	 * period of up to MAX_PERIOD.
+	 */
+	private static boolean repeats(long[] populations, int gen) {
+		for (int period = 1; period <= MAX_PERIOD; period++) {
+			boolean same = true;
+			for (int back = 0; back + period < HISTORY && same; back++) {
+				same = populations[(gen - back) % HISTORY] == populations[(gen - back - period) % HISTORY];
+			}
+			if (same) return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Splits the given living cells (x and y one after the other) into objects: the groups of touching cells,
+	 * with every two groups that come within 2 cells of each other and interact() put together. "universes" are
+	 * three universes under the search's Rule to run the groups in.
+	 */
+	static ArrayList<long[]> separate(long[] cells, SparseUniverse[] universes) {
+		ArrayList<long[]> groups = group(cells);
+		int count = groups.size();
+		if (count < 2) return groups;
+		HashMap<Long, Integer> owner = new HashMap<Long, Integer>(cells.length);
+		for (int g = 0; g < count; g++) {
+			long[] group = groups.get(g);
+			for (int i = 0; i < group.length; i += 2) owner.put(key(group[i], group[i + 1]), g);
+		}
+		int[] parent = new int[count];
+		for (int g = 0; g < count; g++) parent[g] = g;
+		HashSet<Long> tried = new HashSet<Long>();
+		for (int g = 0; g < count; g++) {
+			long[] group = groups.get(g);
+			for (int i = 0; i < group.length; i += 2) {
+				for (int dy = -2; dy <= 2; dy++) {
+					for (int dx = -2; dx <= 2; dx++) {
+						Integer other = owner.get(key(group[i] + dx, group[i + 1] + dy));
+						if (other == null || other <= g || !tried.add((long) g * count + other)) continue;
+						int a = root(parent, g), b = root(parent, other);
+						if (a != b && interact(group, groups.get(other), universes)) parent[b] = a;
+					}
+				}
+			}
+		}
+		HashMap<Integer, ArrayList<long[]>> together = new HashMap<Integer, ArrayList<long[]>>();
+		ArrayList<long[]> objects = new ArrayList<long[]>();
+		for (int g = 0; g < count; g++) together.computeIfAbsent(root(parent, g), key -> new ArrayList<long[]>()).add(groups.get(g));
+		for (ArrayList<long[]> parts : together.values()) {
+			int length = 0;
+			for (int i = 0; i < parts.size(); i++) length += parts.get(i).length;
+			long[] object = new long[length];
+			int n = 0;
+			for (int i = 0; i < parts.size(); i++) {
+				System.arraycopy(parts.get(i), 0, object, n, parts.get(i).length);
+				n += parts.get(i).length;
+			}
+			objects.add(object);
+		}
+		return objects;
+	}
+
+	/*
+	 * Returns the group the given group has been put together with, following "parent" until it ends.
+	 */
+	private static int root(int[] parent, int group) {
+		while (parent[group] != group) group = parent[group];
+		return group;
+	}
+
+	/*
+	 * Returns whether the two given groups of cells interact: whether running them together ever gives anything
+	 * but the two of them run apart, before the pair comes back to the same shape or MAX_PERIOD generations have
+	 * gone by.
+	 */
+	private static boolean interact(long[] first, long[] second, SparseUniverse[] universes) {
+		SparseUniverse both = universes[0], one = universes[1], other = universes[2];
+		both.clear();
+		one.clear();
+		other.clear();
+		for (int i = 0; i < first.length; i += 2) {
+			both.setStatus(first[i], first[i + 1], Cell.ALIVE);
+			one.setStatus(first[i], first[i + 1], Cell.ALIVE);
+		}
+		for (int i = 0; i < second.length; i += 2) {
+			both.setStatus(second[i], second[i + 1], Cell.ALIVE);
+			other.setStatus(second[i], second[i + 1], Cell.ALIVE);
+		}
+		String shape = code(both.getLivingCells(), 0);
+		for (int gen = 1; gen <= MAX_PERIOD; gen++) {
+			both.nextGen();
+			one.nextGen();
+			other.nextGen();
+			long population = both.getPopulation();
+			if (population != one.getPopulation() + other.getPopulation()) return true;
+			if (!allAlive(one.getLivingCells(), both) || !allAlive(other.getLivingCells(), both)) return true;
+			if (population == 0 || code(both.getLivingCells(), 0).equals(shape)) return false;
+		}
+		return false;
+	}
+
+	/*
+	 * Returns whether every one of the given cells (x and y one after the other) is alive in the given universe.
+	 */
+	private static boolean allAlive(long[] cells, SparseUniverse universe) {
+		for (int i = 0; i < cells.length; i += 2) {
+			if (universe.getStatus(cells[i], cells[i + 1]) != Cell.ALIVE) return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Splits the given living cells (x and y one after the other) into groups of touching cells, each made of the
+	 * cells that are next to another cell of it across, down or diagonally.
+	 */
+	private static ArrayList<long[]> group(long[] cells) {
+		int count = cells.length / 2;
+		HashMap<Long, Integer> at = new HashMap<Long, Integer>(count * 2);
+		for (int i = 0; i < count; i++) at.put(key(cells[2 * i], cells[2 * i + 1]), i);
+		boolean[] taken = new boolean[count];
+		int[] queue = new int[count];
+		ArrayList<long[]> objects = new ArrayList<long[]>();
+		for (int i = 0; i < count; i++) {
+			if (taken[i]) continue;
+			taken[i] = true;
+			int head = 0, tail = 0;
+			queue[tail++] = i;
+			while (head < tail) {
+				int cell = queue[head++];
+				long x = cells[2 * cell], y = cells[2 * cell + 1];
+				for (int dy = -1; dy <= 1; dy++) {
+					for (int dx = -1; dx <= 1; dx++) {
+						Integer other = at.get(key(x + dx, y + dy));
+						if (other == null || taken[other]) continue;
+						taken[other] = true;
+						queue[tail++] = other;
+					}
+				}
+			}
+			long[] object = new long[tail * 2];
+			for (int j = 0; j < tail; j++) {
+				object[2 * j] = cells[2 * queue[j]];
+				object[2 * j + 1] = cells[2 * queue[j] + 1];
+			}
+			objects.add(object);
+		}
+		return objects;
+	}
+
+	/*
+	 * Returns the hash map key of the cell at the given location.
+	 */
+	private static long key(long x, long y) {
+		return (y << 32) | (x & 0xffffffffL);
+	}
+
+	/*
+	 * Returns the name of the given object (x and y of its cells one after the other), running it on its own in
+	 * "alone" to find its period the first time its shape is seen.
+	 */
+	private String name(long[] object, SparseUniverse alone) {
+		String shape = code(object, 0);
+		String known = names.get(shape);
+		if (known != null) return known;
+		alone.clear();
+		for (int i = 0; i < object.length; i += 2) alone.setStatus(object[i], object[i + 1], Cell.ALIVE);
+		ArrayList<long[]> phases = new ArrayList<long[]>();
+		phases.add(object);
+		String result = UNIDENTIFIED;
+		for (int gen = 1; gen <= MAX_PERIOD; gen++) {
+			alone.nextGen();
+			long[] cells = alone.getLivingCells();
+			if (cells.length == 0) break;
+			if (code(cells, 0).equals(shape)) {
+				String prefix;
+				if (min(cells, 0) != min(object, 0) || min(cells, 1) != min(object, 1)) prefix = "xq" + gen;
+				else if (gen == 1) prefix = "xs" + (object.length / 2);
+				else prefix = "xp" + gen;
+				result = prefix + "_" + canonicalCode(phases);
+				break;
+			}
+			phases.add(cells);
+		}
+		names.put(shape, result);
+		return result;
+	}
+
+	/*
+	 * Returns the shortest code, and the first in alphabetical order of the shortest, of the given phases of an
+	 * object in each of the 8 orientations.
+	 */
+	static String canonicalCode(List<long[]> phases) {
+		String best = null;
+		for (int i = 0; i < phases.size(); i++) {
+			for (int orientation = 0; orientation < 8; orientation++) {
+				String code = code(phases.get(i), orientation);
+				if (best == null || code.length() < best.length() || (code.length() == best.length() && code.compareTo(best) < 0)) best = code;
+			}
+		}
+		return best;
+	}
+
+	/*
+	 * Returns the code in the extended Wechsler format of the given cells (x and y one after the other), turned
+	 * and flipped as the given orientation from 0 to 7 says: bit 0 flips x, bit 1 flips y and bit 2 swaps x and y.
+	 */
+	static String code(long[] cells, int orientation) {
+		int count = cells.length / 2;
+		long[] xs = new long[count], ys = new long[count];
+		for (int i = 0; i < count; i++) {
+			long x = cells[2 * i], y = cells[2 * i + 1];
+			if ((orientation & 1) != 0) x = -x;
+			if ((orientation & 2) != 0) y = -y;
+			if ((orientation & 4) != 0) {
+				long temp = x;
+				x = y;
+				y = temp;
+			}
+			xs[i] = x;
+			ys[i] = y;
+		}
+		long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		int width = (int) (maxX - minX + 1);
+		int strips = (int) (maxY - minY) / 5 + 1;
+		int[][] columns = new int[strips][width];
+		for (int i = 0; i < count; i++) {
+			int y = (int) (ys[i] - minY);
+			columns[y / 5][(int) (xs[i] - minX)] |= 1 << (y % 5);
+		}
+		StringBuilder code = new StringBuilder();
+		for (int s = 0; s < strips; s++) {
+			if (s > 0) code.append('z');
+			int end = width;
+			while (end > 0 && columns[s][end - 1] == 0) end--;
+			int zeros = 0;
+			for (int x = 0; x < end; x++) {
+				if (columns[s][x] == 0) {
+					zeros++;
+					continue;
+				}
+				appendZeros(code, zeros);
+				zeros = 0;
+				code.append(DIGITS.charAt(columns[s][x]));
+			}
+		}
+		return code.toString();
+	}
+
+	/*
+	 * Appends a run of the given number of empty columns: "w" for 2, "x" for 3, and "y" followed by a digit for 4
+	 * to 39.
+	 */
+	private static void appendZeros(StringBuilder code, int zeros) {
+		while (zeros >= 4) {
+			int run = Math.min(zeros, 39);
+			code.append('y').append(DIGITS.charAt(run - 4));
+			zeros -= run;
+		}
+		if (zeros == 3) code.append('x');
+		else if (zeros == 2) code.append('w');
+		else if (zeros == 1) code.append('0');
+	}
+
+	/*
+	 * Returns the smallest x (if "axis" is 0) or y (if it is 1) of the given cells.
+	 */
+	private static long min(long[] cells, int axis) {
+		long result = Long.MAX_VALUE;
+		for (int i = axis; i < cells.length; i += 2) result = Math.min(result, cells[i]);
+		return result;
+	}
+
+	/*
+	 * Returns how many of the given object have been found.
+	 */
+	public long getCount(String name) {
+		LongAdder count = census.get(name);
+		return (count == null) ? 0 : count.sum();
+	}
+
+	/*
+	 * Returns the census as object names and counts, the most common first.
+	 */
+	public List<Map.Entry<String, Long>> getCensus() {
+		ArrayList<Map.Entry<String, Long>> result = new ArrayList<Map.Entry<String, Long>>();
+		for (Map.Entry<String, LongAdder> entry : census.entrySet()) {
+			result.add(new java.util.AbstractMap.SimpleEntry<String, Long>(entry.getKey(), entry.getValue().sum()));
+		}
+		Collections.sort(result, (a, b) -> (a.getValue().equals(b.getValue())) ? a.getKey().compareTo(b.getKey()) : Long.compare(b.getValue(), a.getValue()));
+		return result;
+	}
+
+	/*
+	 * Returns the number of soups run.
+	 */
+	public long getSoupCount() {
+		return soupCount.sum();
+	}
+
+	/*
+	 * Returns the number of soups that had not settled after MAX_GENS generations, which are left out of the
+	 * census.
+	 */
+	public long getUnsettledCount() {
+		return unsettledCount.sum();
+	}
+
+	/*
+	 * Some tests, then a soup search with the options given on the command line, which prints the most common
+	 * objects found and the number of soups run per second.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		long[] block = {0, 0, 1, 0, 0, 1, 1, 1};
+		long[] blinker = {0, 0, 1, 0, 2, 0};
+		long[] glider = {1, 0, 2, 1, 0, 2, 1, 2, 2, 2};
+		SparseUniverse[] universes = universes(Rule.CONWAY);
+		ArrayList<long[]> phases = new ArrayList<long[]>();
+		universes[0].clear();
+		for (int i = 0; i < glider.length; i += 2) universes[0].setStatus(glider[i], glider[i + 1], Cell.ALIVE);
+		for (int gen = 0; gen < 4; gen++) {
+			phases.add(universes[0].getLivingCells());
+			universes[0].nextGen();
+		}
+		System.out.println("A block's code is " + code(block, 0) + " (should be 33), a blinker's is " + canonicalCode(Collections.singletonList(blinker))
+				+ " (should be 7) and a glider's is " + canonicalCode(phases) + " (should be 153)");
+
+		long[] cells = {0, 0, 1, 0, 0, 1, 1, 1, 11, 0, 12, 1, 10, 2, 11, 2, 12, 2, 20, 0, 21, 0, 22, 0, 24, 0, 25, 0, 26, 0};
+		SoupSearch test = new SoupSearch(1, Rule.CONWAY);
+		test.addObjects(cells, universes);
+		System.out.println("A block, a glider and two blinkers with 1 cell between them are " + test.getCount("xs4_33") + " xs4_33, "
+				+ test.getCount("xq4_153") + " xq4_153 and " + test.getCount("xp2_7") + " xp2_7 (should be 1, 1 and 2)");
+		long[] crashing = {0, 0, 1, 0, 2, 0, 0, 2, 1, 2, 2, 2};
+		System.out.println("Two blinkers that crash into each other are " + separate(crashing, universes).size() + " object(s) (should be 1)");
+
+		long soups = 10000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long seed = 1;
+		Rule rule = Rule.CONWAY;
+		int top = 20;
+		for (int i = 0; i < args.length; i++) {
+			String[] parts = args[i].split("=", 2);
+			if (parts.length != 2) throw new IllegalArgumentException("Expected key=value but got " + args[i]);
+			String key = parts[0], value = parts[1];
+			if (key.equals("soups")) soups = Long.parseLong(value);
+			else if (key.equals("threads")) threads = Integer.parseInt(value);
+			else if (key.equals("seed")) seed = Long.parseLong(value);
+			else if (key.equals("rule")) rule = Rule.parse(value);
+			else if (key.equals("top")) top = Integer.parseInt(value);
+			else throw new IllegalArgumentException("Unknown option " + key);
+		}
+		SoupSearch search = new SoupSearch(seed, rule);
+		System.out.println("Running " + soups + " soups of " + SOUP_SIZE + " x " + SOUP_SIZE + " under " + rule + " on " + threads + " thread(s)");
+		long start = System.nanoTime();
+		search.run(soups, threads);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		List<Map.Entry<String, Long>> census = search.getCensus();
+		for (int i = 0; i < Math.min(top, census.size()); i++) {
+			System.out.println(String.format("%12d  %s", census.get(i).getValue(), census.get(i).getKey()));
+		}
+		System.out.println(census.size() + " different objects; " + search.getUnsettledCount() + " soup(s) had not settled after " + MAX_GENS
+				+ " generations");
+		System.out.println("Ran " + search.getSoupCount() + " soups in " + String.format("%.3f", seconds) + " s (" + String.format("%.1f", search.getSoupCount() / seconds)
+				+ " soups/sec)");
+	}
+
+}
@@ -0,0 +1,445 @@
+import java.util.ArrayList;
+
+public class SparseUniverse {
+
+	/*
+	 * This class is an unbounded universe for the Game Of Life. Instead of a board with a fixed height and width,
+	 * the plane is cut into tiles of 64 x 64 cells (each row of a tile is one long, bit x holding column x), and only
+	 * the tiles that have living cells in them are kept, in a hash map keyed by the tile's coordinates. A tile is
+	 * made as soon as a pattern could grow into it and is thrown away as soon as it is empty, so the memory used
+	 * follows the number of living cells rather than the area they are spread over, and a glider can fly forever.
+	 *
+	 * Coordinates are longs and can be negative. Cell (x, y) lives in tile (x >> 6, y >> 6).
+	 *
+	 * Any Rule can be used except one where empty cells are born (B0), since then empty space would not stay empty.
+	 *
+	 * There are tests run at the end.
+	 */
+	private TileMap tiles = new TileMap();
+	private ArrayList<Tile> work = new ArrayList<Tile>();
+	private long genNum = 1;
+	private Rule rule = Rule.CONWAY;
+
+	/*
+	 * Constructs an empty SparseUniverse.
+	 */
+	public SparseUniverse() {
+	}
+
+	/*
+	 * Constructs a SparseUniverse holding the living cells of the given GameOfLife, starting at its generation
+	 * number. Cell (x, y) of the game becomes cell (x, y) of the universe.
+	 */
+	public SparseUniverse(GameOfLife game) {
+		for (int y = 0; y < game.getHeight(); y++) {
+			for (int x = 0; x < game.getWidth(); x++) {
+				if (game.getStatus(x, y) == Cell.ALIVE) setStatus(x, y, Cell.ALIVE);
+			}
+		}
+		genNum = game.getGenNum();
+		setRule(game.getRule());
+	}
+
+	/*
+	 * Returns the status (Cell.ALIVE or Cell.DEAD) of the cell at the given location.
+	 */
+	public int getStatus(long x, long y) {
+		Tile tile = tiles.get(key((int) (x >> 6), (int) (y >> 6)));
+		if (tile == null) return Cell.DEAD;
+		return (int) (tile.cells[(int) (y & 63)] >>> x) & 1;
+	}
+
+	/*
+	 * Sets the status of the cell at the given location. Any status other than Cell.DEAD is stored as Cell.ALIVE.
+	 */
+	public void setStatus(long x, long y, int status) {
+		int tx = (int) (x >> 6), ty = (int) (y >> 6);
+		Tile tile = tiles.get(key(tx, ty));
+		if (tile == null) {
+			if (status == Cell.DEAD) return;
+			tile = new Tile(tx, ty);
+			tiles.put(key(tx, ty), tile);
+		}
+		if (status == Cell.DEAD) tile.cells[(int) (y & 63)] &= ~(1L << x);
+		else tile.cells[(int) (y & 63)] |= 1L << x;
+		if (tile.isEmpty()) tiles.remove(key(tx, ty));
+	}
+
+	/*
+	 * Updates the universe to the next generation and increases "genNum" by 1. First every tile that a living
+	 * cell on the edge of its tile could grow into is made, then every tile works out its next generation from
+	 * itself and the 8 tiles around it, and finally the tiles that ended up empty are thrown away.
+	 */
+	public void nextGen() {
+		genNum++;
+		work.clear();
+		tiles.values(work);
+		int existing = work.size();
+		for (int i = 0; i < existing; i++) {
+			addNeighbors(work.get(i));
+		}
+		work.clear();
+		tiles.values(work);
+		for (int i = 0; i < work.size(); i++) {
+			nextTile(work.get(i));
+		}
+		for (int i = 0; i < work.size(); i++) {
+			Tile tile = work.get(i);
+			long[] temp = tile.cells;
+			tile.cells = tile.next;
+			tile.next = temp;
+			if (tile.isEmpty()) tiles.remove(key(tile.tx, tile.ty));
+		}
+	}
+
+	/*
+	 * Makes any missing tiles next to the given tile that its living edge cells could grow into.
+	 */
+	private void addNeighbors(Tile tile) {
+		long top = tile.cells[0], bottom = tile.cells[63];
+		long columns = 0;
+		for (int r = 0; r < 64; r++) {
+			columns |= tile.cells[r];
+		}
+		boolean west = (columns & 1L) != 0, east = (columns >>> 63) != 0;
+		boolean north = top != 0, south = bottom != 0;
+		if (north) addTile(tile.tx, tile.ty - 1);
+		if (south) addTile(tile.tx, tile.ty + 1);
+		if (west) addTile(tile.tx - 1, tile.ty);
+		if (east) addTile(tile.tx + 1, tile.ty);
+		if ((top & 1L) != 0) addTile(tile.tx - 1, tile.ty - 1);
+		if ((top >>> 63) != 0) addTile(tile.tx + 1, tile.ty - 1);
+		if ((bottom & 1L) != 0) addTile(tile.tx - 1, tile.ty + 1);
+		if ((bottom >>> 63) != 0) addTile(tile.tx + 1, tile.ty + 1);
+	}
+
+	/*
+	 * Makes an empty tile at the given tile coordinates if there is not one there already.
+	 */
+	private void addTile(int tx, int ty) {
+		long key = key(tx, ty);
+		if (tiles.get(key) == null) tiles.put(key, new Tile(tx, ty));
+	}
+
+	/*
+	 * Works out the next generation of the given tile into its "next" array.
+	 */
+	private void nextTile(Tile tile) {
+		long[] c = tile.cells;
+		long[] n = cellsOf(tile.tx, tile.ty - 1);
+		long[] s = cellsOf(tile.tx, tile.ty + 1);
+		long[] w = cellsOf(tile.tx - 1, tile.ty);
+		long[] e = cellsOf(tile.tx + 1, tile.ty);
+		long[] nw = cellsOf(tile.tx - 1, tile.ty - 1);
+		long[] ne = cellsOf(tile.tx + 1, tile.ty - 1);
+		long[] sw = cellsOf(tile.tx - 1, tile.ty + 1);
+		long[] se = cellsOf(tile.tx + 1, tile.ty + 1);
+		Rule rule = this.rule;
+		for (int r = 0; r < 64; r++) {
+			long up, upWest, upEast, down, downWest, downEast;
+			if (r > 0) {
+				up = c[r - 1];
+				upWest = w[r - 1];
+				upEast = e[r - 1];
+			}
+			else {
+				up = n[63];
+				upWest = nw[63];
+				upEast = ne[63];
+			}
+			if (r < 63) {
+				down = c[r + 1];
+				downWest = w[r + 1];
+				downEast = e[r + 1];
+			}
+			else {
+				down = s[0];
+				downWest = sw[0];
+				downEast = se[0];
+			}
+			tile.next[r] = LifeKernel.nextRow(rule, up, upWest, upEast, c[r], w[r], e[r], down, downWest, downEast);
+		}
+	}
+
+	/*
+	 * Returns the cells of the tile at the given tile coordinates, or an all-dead tile if there is none.
+	 */
+	private long[] cellsOf(int tx, int ty) {
+		Tile tile = tiles.get(key(tx, ty));
+		if (tile == null) return Tile.EMPTY;
+		return tile.cells;
+	}
+
+	/*
+	 * Copies the living cells of the universe that fall on the given game's board into it, after clearing it.
+	 */
+	public void writeTo(GameOfLife game) {
+		game.clear();
+		work.clear();
+		tiles.values(work);
+		for (int i = 0; i < work.size(); i++) {
+			Tile tile = work.get(i);
+			for (int r = 0; r < 64; r++) {
+				long bits = tile.cells[r];
+				while (bits != 0) {
+					int bit = Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					long x = ((long) tile.tx << 6) + bit, y = ((long) tile.ty << 6) + r;
+					if (x >= 0 && y >= 0 && x < game.getWidth() && y < game.getHeight()) game.setStatus((int) x, (int) y, Cell.ALIVE);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Sets every cell of the universe to dead and sets "genNum" back to 1.
+	 */
+	public void clear() {
+		tiles = new TileMap();
+		genNum = 1;
+	}
+
+	/*
+	 * Returns the number of living cells in the universe.
+	 */
+	public long getPopulation() {
+		work.clear();
+		tiles.values(work);
+		long count = 0;
+		for (int i = 0; i < work.size(); i++) {
+			long[] cells = work.get(i).cells;
+			for (int r = 0; r < 64; r++) {
+				count += Long.bitCount(cells[r]);
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * Returns the coordinates of every living cell in the universe, as x and y one after the other, in no
+	 * particular order.
+	 */
+	public long[] getLivingCells() {
+		long[] result = new long[(int) getPopulation() * 2];
+		int n = 0;
+		work.clear();
+		tiles.values(work);
+		for (int i = 0; i < work.size(); i++) {
+			Tile tile = work.get(i);
+			for (int r = 0; r < 64; r++) {
+				long bits = tile.cells[r];
+				while (bits != 0) {
+					int bit = Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					result[n++] = ((long) tile.tx << 6) + bit;
+					result[n++] = ((long) tile.ty << 6) + r;
+				}
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Sets the Rule the universe is worked out with, which cannot be one where empty cells are born (B0).
+	 */
+	public void setRule(Rule rule) {
+		if (rule.isBornFromNothing()) throw new IllegalArgumentException("A SparseUniverse cannot run " + rule + ", where empty cells are born");
+		this.rule = rule;
+	}
+
+	/*
+	 * Returns the Rule the universe is worked out with.
+	 */
+	public Rule getRule() {
+		return rule;
+	}
+
+	/*
+	 * Returns the number of tiles currently kept.
+	 */
+	public int getTileCount() {
+		return tiles.size();
+	}
+
+	/*
+	 * Returns the value of "genNum".
+	 */
+	public long getGenNum() {
+		return genNum;
+	}
+
+	/*
+	 * Returns the hash map key of the tile at the given tile coordinates.
+	 */
+	private static long key(int tx, int ty) {
+		return ((long) ty << 32) | (tx & 0xffffffffL);
+	}
+
+	/*
+	 * A 64 x 64 square of cells, with a second array for working out its next generation.
+	 */
+	private static class Tile {
+		static final long[] EMPTY = new long[64];
+
+		final int tx;
+		final int ty;
+		long[] cells = new long[64];
+		long[] next = new long[64];
+
+		Tile(int tx, int ty) {
+			this.tx = tx;
+			this.ty = ty;
+		}
+
+		/*
+		 * Returns whether every cell of the tile is dead.
+		 */
+		boolean isEmpty() {
+			for (int r = 0; r < 64; r++) {
+				if (cells[r] != 0) return false;
+			}
+			return true;
+		}
+	}
+
+	/*
+	 * A hash map from long keys to Tiles using open addressing, so that looking up a tile does not box its key
+	 * or allocate an entry. The table size is always a power of two and is kept at most half full.
+	 */
+	private static class TileMap {
+		private long[] keys = new long[16];
+		private Tile[] values = new Tile[16];
+		private int size;
+
+		/*
+		 * Returns the slot the given key starts probing from.
+		 */
+		private int slot(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h >>> 32) & (keys.length - 1);
+		}
+
+		/*
+		 * Returns the Tile stored for the given key, or null if there is none.
+		 */
+		Tile get(long key) {
+			int mask = keys.length - 1;
+			for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+				if (keys[i] == key) return values[i];
+			}
+			return null;
+		}
+
+		/*
+		 * Stores the given Tile for the given key, replacing any Tile already stored for it.
+		 */
+		void put(long key, Tile tile) {
+			if ((size + 1) * 2 > keys.length) resize(keys.length * 2);
+			int mask = keys.length - 1;
+			int i = slot(key);
+			while (values[i] != null) {
+				if (keys[i] == key) {
+					values[i] = tile;
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			keys[i] = key;
+			values[i] = tile;
+			size++;
+		}
+
+		/*
+		 * Removes the Tile stored for the given key, if any. The entries after it are shifted back so that
+		 * lookups never need to skip over deleted slots.
+		 */
+		void remove(long key) {
+			int mask = keys.length - 1;
+			int i = slot(key);
+			while (values[i] != null && keys[i] != key) i = (i + 1) & mask;
+			if (values[i] == null) return;
+			values[i] = null;
+			size--;
+			for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+				int home = slot(keys[j]);
+				if (((j - home) & mask) >= ((j - i) & mask)) {
+					keys[i] = keys[j];
+					values[i] = values[j];
+					values[j] = null;
+					i = j;
+				}
+			}
+		}
+
+		/*
+		 * Adds every stored Tile to the given list.
+		 */
+		void values(ArrayList<Tile> result) {
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] != null) result.add(values[i]);
+			}
+		}
+
+		/*
+		 * Returns the number of stored Tiles.
+		 */
+		int size() {
+			return size;
+		}
+
+		/*
+		 * Moves every entry into a new table of the given size.
+		 */
+		private void resize(int capacity) {
+			long[] oldKeys = keys;
+			Tile[] oldValues = values;
+			keys = new long[capacity];
+			values = new Tile[capacity];
+			size = 0;
+			for (int i = 0; i < oldValues.length; i++) {
+				if (oldValues[i] != null) put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	/*
+	 * Some tests:
+	 */
+	public static void main(String[] args) {
+		SparseUniverse universe = new SparseUniverse();
+		universe.setStatus(1, 0, Cell.ALIVE);
+		universe.setStatus(2, 1, Cell.ALIVE);
+		universe.setStatus(0, 2, Cell.ALIVE);
+		universe.setStatus(1, 2, Cell.ALIVE);
+		universe.setStatus(2, 2, Cell.ALIVE);
+		for (int i = 0; i < 4000; i++) universe.nextGen();
+		System.out.println("After 4000 generations the glider still has " + universe.getPopulation() + " cells, using "
+				+ universe.getTileCount() + " tiles");
+		System.out.println("The glider has moved 1000 cells down and to the right: " + (universe.getStatus(1001, 1002) == Cell.ALIVE));
+
+		SparseUniverse negative = new SparseUniverse();
+		negative.setStatus(-1, -1, Cell.ALIVE);
+		negative.setStatus(0, -1, Cell.ALIVE);
+		negative.setStatus(1, -1, Cell.ALIVE);
+		negative.nextGen();
+		System.out.println("A blinker across the origin turns vertical: " + (negative.getStatus(0, -2) == Cell.ALIVE
+				&& negative.getStatus(0, 0) == Cell.ALIVE && negative.getStatus(-1, -1) == Cell.DEAD));
+
+		// Under Seeds (B2/S) every cell dies each generation, and a domino still grows without bound.
+		SparseUniverse seeds = new SparseUniverse();
+		seeds.setRule(Rule.parse("B2/S"));
+		seeds.setStatus(0, 0, Cell.ALIVE);
+		seeds.setStatus(0, 1, Cell.ALIVE);
+		seeds.nextGen();
+		System.out.println("Under " + seeds.getRule() + " a domino becomes " + seeds.getPopulation() + " cells (should be 4), with none of the old: "
+				+ (seeds.getStatus(0, 0) == Cell.DEAD && seeds.getStatus(0, 1) == Cell.DEAD));
+		try {
+			seeds.setRule(Rule.parse("B0/S8"));
+			System.out.println("B0/S8 should not have been allowed!");
+		}
+		catch (IllegalArgumentException e) {
+			System.out.println("B0/S8 is refused: " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,30 @@
+public enum Topology {
+
+	/*
+	 * The ways the edges of a GameOfLife board can meet. With DEAD the board is surrounded by cells that are always
+	 * dead, which is how the game has always worked. With TORUS the left edge is joined to the right edge and the
+	 * top edge to the bottom edge, so a glider that flies off one side comes back on the other. A KLEIN_BOTTLE joins
+	 * the left and right edges the same way, but the top and bottom edges are joined mirrored, so something that
+	 * leaves at the top near the left edge comes back at the bottom near the right edge.
+	 */
+	DEAD, TORUS, KLEIN_BOTTLE;
+
+	/*
+	 * Returns the Topology with the given name, ignoring case: "dead", "torus" or "klein" (or "klein_bottle").
+	 */
+	public static Topology parse(String name) {
+		String text = name.trim().toLowerCase();
+		if (text.equals("dead")) return DEAD;
+		if (text.equals("torus")) return TORUS;
+		if (text.equals("klein") || text.equals("klein_bottle")) return KLEIN_BOTTLE;
+		throw new IllegalArgumentException("Unknown topology " + name + ", expected dead, torus or klein");
+	}
+
+	/*
+	 * Returns whether cells past the edges are the cells of the opposite edge, rather than dead.
+	 */
+	public boolean wraps() {
+		return this != DEAD;
+	}
+
+}
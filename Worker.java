@@ -0,0 +1,310 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class Worker {
+
+	/*
+	 * This class is one worker of a Game Of Life spread over several processes by a Coordinator. The board is cut
+	 * into stripes of whole rows, and each worker owns one stripe: it keeps the rows of its stripe, plus one row
+	 * above and one below, which are the halo rows copied from the workers owning the stripes next to it.
+	 *
+	 * Every generation, a worker sends its top row to the worker above and its bottom row to the worker below, and
+	 * gets their edge rows back as its halo rows. The sending happens on a background thread while the worker works
+	 * out every row of its stripe that does not touch a halo row, and the halo rows are only read after that, so
+	 * the time the rows spend on the network is hidden behind the work on the rest of the stripe. Only the top and
+	 * bottom rows of the stripe wait for the halo rows.
+	 *
+	 * A worker talks to the Coordinator and to the workers next to it over TCP sockets on the local machine, and is
+	 * started as "java Worker HOST PORT", where HOST and PORT are where the Coordinator is listening.
+	 *
+	 * The rows are worked out with LifeKernel under the game's Rule and Topology, so the result is exactly what
+	 * GameOfLife.nextGen() would give for the whole board.
+	 */
+	static final int STEP = 1;
+	static final int COLLECT = 2;
+	static final int QUIT = 3;
+
+	private Link coordinator;
+	private Link up;
+	private Link down;
+	private int index;
+	private int workers;
+	private int width;
+	private int rowCount;
+	private Rule rule;
+	private Topology topology;
+	private long[][] rows;
+	private long[][] next;
+	private long[] mirrored;
+	private long lastWordMask;
+	private ExecutorService sender;
+
+	/*
+	 * Connects to the Coordinator at the given address, gets the worker's stripe of the board and connects to the
+	 * workers next to it.
+	 */
+	public Worker(String host, int port) throws IOException {
+		coordinator = new Link(SocketChannel.open(new InetSocketAddress(host, port)));
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(host, 0));
+		coordinator.writeInt(((InetSocketAddress) server.getLocalAddress()).getPort());
+		coordinator.flush();
+
+		index = coordinator.readInt();
+		workers = coordinator.readInt();
+		width = coordinator.readInt();
+		rowCount = coordinator.readInt();
+		rule = Rule.parse(coordinator.readString());
+		topology = Topology.values()[coordinator.readInt()];
+		int upPort = coordinator.readInt();
+		boolean hasDown = coordinator.readInt() != 0;
+		int wordsPerRow = (width + 63) >>> 6;
+		lastWordMask = -1L >>> (wordsPerRow * 64 - width);
+		rows = new long[rowCount + 2][wordsPerRow];
+		next = new long[rowCount + 2][wordsPerRow];
+		mirrored = new long[wordsPerRow];
+		for (int i = 1; i <= rowCount; i++) coordinator.readRow(rows[i]);
+
+		// Each worker connects to the one above and takes the connection from the one below.
+		if (upPort >= 0) up = new Link(SocketChannel.open(new InetSocketAddress(host, upPort)));
+		if (hasDown) down = new Link(server.accept());
+		server.close();
+		sender = Executors.newSingleThreadExecutor(task -> {
+			Thread thread = new Thread(task, "Halo sender " + index);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/*
+	 * Carries out the Coordinator's commands until it says to quit.
+	 */
+	public void run() throws IOException {
+		try {
+			while (true) {
+				int command = coordinator.readInt();
+				if (command == STEP) {
+					int generations = coordinator.readInt();
+					for (int i = 0; i < generations; i++) nextGen();
+					coordinator.writeLong(population());
+					coordinator.flush();
+				}
+				else if (command == COLLECT) {
+					for (int i = 1; i <= rowCount; i++) coordinator.writeRow(rows[i]);
+					coordinator.flush();
+				}
+				else break;
+			}
+		}
+		finally {
+			sender.shutdownNow();
+			coordinator.close();
+			if (up != null) up.close();
+			if (down != null) down.close();
+		}
+	}
+
+	/*
+	 * Works out the next generation of the stripe: sends the edge rows on the background thread, works out the
+	 * rows in the middle, gets the halo rows and then works out the top and bottom rows.
+	 */
+	private void nextGen() throws IOException {
+		Future<?> sent = null;
+		if (up != null || down != null) sent = sender.submit(() -> {
+			if (up != null) up.writeRow(rows[1]);
+			if (down != null) down.writeRow(rows[rowCount]);
+			if (up != null) up.flush();
+			if (down != null) down.flush();
+			return null;
+		});
+		for (int i = 2; i < rowCount; i++) nextRow(i);
+		receiveHalo();
+		nextRow(1);
+		if (rowCount > 1) nextRow(rowCount);
+		if (sent != null) {
+			try {
+				sent.get();
+			}
+			catch (InterruptedException e) {
+				throw new IOException("Interrupted while sending the halo rows", e);
+			}
+			catch (ExecutionException e) {
+				throw new IOException("Could not send the halo rows", e.getCause());
+			}
+		}
+		long[][] temp = rows;
+		rows = next;
+		next = temp;
+	}
+
+	/*
+	 * Fills in the halo rows: from the workers above and below, from the worker's own edge rows if it is the only
+	 * worker on a wrapping board, or with dead cells past the edge of a board with dead edges. The rows that come
+	 * across the joined top and bottom edges of a Klein bottle are mirrored.
+	 */
+	private void receiveHalo() throws IOException {
+		boolean wraps = topology.wraps();
+		if (up != null) up.readRow(rows[0]);
+		else if (wraps) System.arraycopy(rows[rowCount], 0, rows[0], 0, rows[0].length);
+		else java.util.Arrays.fill(rows[0], 0);
+		if (down != null) down.readRow(rows[rowCount + 1]);
+		else if (wraps) System.arraycopy(rows[1], 0, rows[rowCount + 1], 0, rows[0].length);
+		else java.util.Arrays.fill(rows[rowCount + 1], 0);
+		if (topology == Topology.KLEIN_BOTTLE) {
+			if (index == 0) mirror(rows[0]);
+			if (index == workers - 1) mirror(rows[rowCount + 1]);
+		}
+	}
+
+	/*
+	 * Mirrors the given row in place, so column x becomes column width - 1 - x.
+	 */
+	private void mirror(long[] row) {
+		BitBoard.reverse(row, width, mirrored);
+		System.arraycopy(mirrored, 0, row, 0, row.length);
+	}
+
+	/*
+	 * Works out the next generation of row i of "rows" into "next".
+	 */
+	private void nextRow(int i) {
+		long[] above = rows[i - 1], row = rows[i], below = rows[i + 1], into = next[i];
+		int lastWord = row.length - 1;
+		boolean wraps = topology.wraps();
+		for (int k = 0; k <= lastWord; k++) {
+			long word;
+			if (wraps) word = LifeKernel.nextWrappedWord(rule, above, row, below, k, width);
+			else word = LifeKernel.nextWord(rule, above, row, below, k);
+			into[k] = (k == lastWord) ? word & lastWordMask : word;
+		}
+	}
+
+	/*
+	 * Returns the number of living cells in the stripe.
+	 */
+	private long population() {
+		long count = 0;
+		for (int i = 1; i <= rowCount; i++) {
+			for (int k = 0; k < rows[i].length; k++) count += Long.bitCount(rows[i][k]);
+		}
+		return count;
+	}
+
+	/*
+	 * A socket to another process, with a buffer for what is sent and one for what is received. Rows of packed
+	 * words go through the buffers a buffer at a time, with no copying into objects along the way.
+	 */
+	static class Link {
+		private static final int BUFFER_SIZE = 1 << 16;
+
+		private final SocketChannel channel;
+		private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		Link(SocketChannel channel) throws IOException {
+			this.channel = channel;
+			channel.socket().setTcpNoDelay(true);
+			in.flip();
+		}
+
+		/*
+		 * Makes sure there are at least the given number of bytes (no more than the buffer holds) waiting in "in".
+		 */
+		private void fill(int bytes) throws IOException {
+			if (in.remaining() >= bytes) return;
+			in.compact();
+			while (in.position() < bytes) {
+				if (channel.read(in) < 0) throw new IOException("The connection was closed");
+			}
+			in.flip();
+		}
+
+		/*
+		 * Makes room for at least the given number of bytes in "out", sending what is in it if it has to.
+		 */
+		private void room(int bytes) throws IOException {
+			if (out.remaining() < bytes) flush();
+		}
+
+		/*
+		 * Sends everything written so far.
+		 */
+		void flush() throws IOException {
+			out.flip();
+			while (out.hasRemaining()) channel.write(out);
+			out.clear();
+		}
+
+		void writeInt(int value) throws IOException {
+			room(4);
+			out.putInt(value);
+		}
+
+		void writeLong(long value) throws IOException {
+			room(8);
+			out.putLong(value);
+		}
+
+		void writeString(String value) throws IOException {
+			byte[] bytes = value.getBytes("UTF-8");
+			writeInt(bytes.length);
+			room(bytes.length);
+			out.put(bytes);
+		}
+
+		void writeRow(long[] row) throws IOException {
+			for (int k = 0; k < row.length; k++) {
+				room(8);
+				out.putLong(row[k]);
+			}
+		}
+
+		int readInt() throws IOException {
+			fill(4);
+			return in.getInt();
+		}
+
+		long readLong() throws IOException {
+			fill(8);
+			return in.getLong();
+		}
+
+		String readString() throws IOException {
+			int length = readInt();
+			fill(length);
+			byte[] bytes = new byte[length];
+			in.get(bytes);
+			return new String(bytes, "UTF-8");
+		}
+
+		void readRow(long[] row) throws IOException {
+			for (int k = 0; k < row.length; k++) {
+				fill(8);
+				row[k] = in.getLong();
+			}
+		}
+
+		void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/*
+	 * Runs a worker for the Coordinator listening at the address given as "HOST PORT".
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: java Worker HOST PORT");
+			System.exit(1);
+		}
+		new Worker(args[0], Integer.parseInt(args[1])).run();
+	}
+
+}